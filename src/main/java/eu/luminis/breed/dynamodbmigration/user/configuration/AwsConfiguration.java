@@ -1,39 +1,87 @@
 package eu.luminis.breed.dynamodbmigration.user.configuration;
 
+import eu.luminis.breed.dynamodbmigration.user.repository.RepositoryImplementation;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK1HighLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK1LowLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK2HighLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK2LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.BlockingScheduler;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.CoalescingUserAsyncRepository;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK1HighLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK1LowLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK2HighLevelImpl;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK2LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.cache.ReadThroughCache;
+import eu.luminis.breed.dynamodbmigration.user.repository.client.DynamoDbClientOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.client.DynamoDbClientRegistry;
+import eu.luminis.breed.dynamodbmigration.user.repository.microbatch.PointReadBatcher;
+import eu.luminis.breed.dynamodbmigration.user.repository.writebehind.WriteBehindFlusher;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static eu.luminis.breed.dynamodbmigration.user.repository.RepositoryImplementation.*;
 
 @Configuration
 @Profile("!local")
 public class AwsConfiguration {
 
+    //closed after the beans that depend on it, among which the write behind flusher that still writes on shutdown
+    @Bean(destroyMethod = "close")
+    public DynamoDbClientRegistry dynamoDbClientRegistry(DynamoDbClientOptions dynamoDbClientOptions) {
+        return new DynamoDbClientRegistry(dynamoDbClientOptions);
+    }
+
     @Bean
-    public List<UserRepository> userRepositories(@Value("${cloud.aws.dynamodb.tablename.user}") String tableName) {
-        return List.of(new UserRepositoryDynamoDBSDK1LowLevelImpl(tableName),
-                new UserRepositoryDynamoDBSDK1HighLevelImpl(tableName),
-                new UserRepositoryDynamoDBSDK2LowLevelImpl(tableName),
-                new UserRepositoryDynamoDBSDK2HighLevelImpl(tableName));
+    public List<UserRepository> userRepositories(@Value("${cloud.aws.dynamodb.tablename.user}") String tableName,
+                                                 DynamoDbClientRegistry dynamoDbClientRegistry,
+                                                 BatchGetOptions batchGetOptions,
+                                                 BatchWriteOptions batchWriteOptions,
+                                                 WriteBehindFlusher writeBehindFlusher,
+                                                 PointReadBatcher pointReadBatcher,
+                                                 ReadThroughCache readThroughCache,
+                                                 @Value("${cloud.aws.dynamodb.repositories}") List<String> repositories) {
+        //the cache is outside the write behind, so a cache miss flushes the pending writes before loading the user,
+        //and cache misses are read in batches
+        return RepositoryImplementation.create(RepositoryImplementation.select(repositories), Map.<RepositoryImplementation, Supplier<UserRepository>>of(
+                SDK1_LOW_LEVEL, () -> new UserRepositoryDynamoDBSDK1LowLevelImpl(tableName, dynamoDbClientRegistry.amazonDynamoDB(), batchGetOptions, batchWriteOptions),
+                SDK1_HIGH_LEVEL, () -> new UserRepositoryDynamoDBSDK1HighLevelImpl(tableName, dynamoDbClientRegistry.amazonDynamoDB(), batchGetOptions, batchWriteOptions),
+                SDK2_LOW_LEVEL, () -> new UserRepositoryDynamoDBSDK2LowLevelImpl(tableName, dynamoDbClientRegistry.dynamoDbClient(), batchGetOptions, batchWriteOptions),
+                SDK2_HIGH_LEVEL, () -> new UserRepositoryDynamoDBSDK2HighLevelImpl(tableName, dynamoDbClientRegistry.dynamoDbClient(), batchGetOptions, batchWriteOptions)))
+                .map(writeBehindFlusher::decorate)
+                .map(pointReadBatcher::decorate)
+                .map(readThroughCache::decorate)
+                .collect(Collectors.toList());
     }
 
     @Bean
-    public List<UserAsyncRepository> userAsyncRepositories(@Value("${cloud.aws.dynamodb.tablename.user}") String tableName) {
-        return List.of(new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(tableName),
-                new UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(tableName),
-                new UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(tableName),
-                new UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(tableName));
+    public List<UserAsyncRepository> userAsyncRepositories(@Value("${cloud.aws.dynamodb.tablename.user}") String tableName,
+                                                           DynamoDbClientRegistry dynamoDbClientRegistry,
+                                                           BlockingScheduler blockingScheduler,
+                                                           BatchGetOptions batchGetOptions,
+                                                           BatchWriteOptions batchWriteOptions,
+                                                           WriteBehindFlusher writeBehindFlusher,
+                                                           PointReadBatcher pointReadBatcher,
+                                                           @Value("${cloud.aws.dynamodb.page.prefetch}") int pagePrefetch,
+                                                           @Value("${cloud.aws.dynamodb.repositories}") List<String> repositories) {
+        return RepositoryImplementation.create(RepositoryImplementation.select(repositories), Map.<RepositoryImplementation, Supplier<UserAsyncRepository>>of(
+                SDK1_LOW_LEVEL, () -> new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(tableName, dynamoDbClientRegistry.amazonDynamoDB(), blockingScheduler.scheduler(), batchGetOptions, batchWriteOptions),
+                SDK1_HIGH_LEVEL, () -> new UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(tableName, dynamoDbClientRegistry.amazonDynamoDB(), blockingScheduler.scheduler(), batchGetOptions, batchWriteOptions),
+                SDK2_LOW_LEVEL, () -> new UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(tableName, dynamoDbClientRegistry.dynamoDbAsyncClient(), batchGetOptions, batchWriteOptions, pagePrefetch),
+                SDK2_HIGH_LEVEL, () -> new UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(tableName, dynamoDbClientRegistry.dynamoDbAsyncClient(), batchGetOptions, batchWriteOptions, pagePrefetch)))
+                .map(writeBehindFlusher::decorate)
+                .map(pointReadBatcher::decorate)
+                .map(CoalescingUserAsyncRepository::new)
+                .collect(Collectors.toList());
     }
 }
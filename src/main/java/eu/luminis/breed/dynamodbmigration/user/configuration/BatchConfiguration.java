@@ -0,0 +1,43 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.microbatch.MicroBatchOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.microbatch.PointReadBatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+@Configuration
+public class BatchConfiguration {
+
+    @Bean
+    public BatchGetOptions batchGetOptions(@Value("${cloud.aws.dynamodb.batch-get.concurrency}") int concurrency,
+                                           @Value("${cloud.aws.dynamodb.batch-get.keep-request-order}") boolean keepRequestOrder,
+                                           @Value("${cloud.aws.dynamodb.batch-get.prefetch}") int prefetch) {
+        return BatchGetOptions.builder()
+                .concurrency(concurrency)
+                .keepRequestOrder(keepRequestOrder)
+                .prefetch(prefetch)
+                .build();
+    }
+
+    @Bean
+    public BatchWriteOptions batchWriteOptions(@Value("${cloud.aws.dynamodb.batch-write.concurrency}") int concurrency) {
+        return BatchWriteOptions.builder()
+                .concurrency(concurrency)
+                .build();
+    }
+
+    @Bean
+    public PointReadBatcher pointReadBatcher(@Value("${cloud.aws.dynamodb.micro-batch.enabled}") boolean enabled,
+                                             @Value("${cloud.aws.dynamodb.micro-batch.max-wait}") Duration maxWait,
+                                             @Value("${cloud.aws.dynamodb.micro-batch.max-batch-size}") int maxBatchSize) {
+        return new PointReadBatcher(MicroBatchOptions.builder()
+                .enabled(enabled)
+                .maxWait(maxWait)
+                .maxBatchSize(maxBatchSize)
+                .build());
+    }
+}
@@ -0,0 +1,26 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.repository.cache.ReadThroughCache;
+import eu.luminis.breed.dynamodbmigration.user.repository.cache.UserCacheOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CacheConfiguration {
+
+    @Bean
+    public ReadThroughCache readThroughCache(@Value("${cloud.aws.dynamodb.cache.enabled}") boolean enabled,
+                                             @Value("${cloud.aws.dynamodb.cache.maximum-size}") long maximumSize,
+                                             @Value("${cloud.aws.dynamodb.cache.ttl}") Duration ttl,
+                                             @Value("${cloud.aws.dynamodb.cache.negative-ttl}") Duration negativeTtl) {
+        return new ReadThroughCache(UserCacheOptions.builder()
+                .enabled(enabled)
+                .maximumSize(maximumSize)
+                .ttl(ttl)
+                .negativeTtl(negativeTtl)
+                .build());
+    }
+}
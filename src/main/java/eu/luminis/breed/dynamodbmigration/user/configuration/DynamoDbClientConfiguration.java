@@ -0,0 +1,45 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.repository.async.BlockingScheduler;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.BlockingSchedulerOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.client.DynamoDbClientOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class DynamoDbClientConfiguration {
+
+    @Bean
+    public DynamoDbClientOptions dynamoDbClientOptions(@Value("${cloud.aws.dynamodb.client.max-connections}") int maxConnections,
+                                                       @Value("${cloud.aws.dynamodb.client.max-concurrency}") int maxConcurrency,
+                                                       @Value("${cloud.aws.dynamodb.client.max-pending-connection-acquires}") int maxPendingConnectionAcquires,
+                                                       @Value("${cloud.aws.dynamodb.client.connection-timeout}") Duration connectionTimeout,
+                                                       @Value("${cloud.aws.dynamodb.client.socket-timeout}") Duration socketTimeout,
+                                                       @Value("${cloud.aws.dynamodb.client.connection-acquisition-timeout}") Duration connectionAcquisitionTimeout,
+                                                       @Value("${cloud.aws.dynamodb.client.connection-max-idle-time}") Duration connectionMaxIdleTime,
+                                                       @Value("${cloud.aws.dynamodb.client.tcp-keep-alive}") boolean tcpKeepAlive) {
+        return DynamoDbClientOptions.builder()
+                .maxConnections(maxConnections)
+                .maxConcurrency(maxConcurrency)
+                .maxPendingConnectionAcquires(maxPendingConnectionAcquires)
+                .connectionTimeout(connectionTimeout)
+                .socketTimeout(socketTimeout)
+                .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                .connectionMaxIdleTime(connectionMaxIdleTime)
+                .tcpKeepAlive(tcpKeepAlive)
+                .build();
+    }
+
+    //closed after the beans that depend on it, among which the write behind flusher that still writes on shutdown
+    @Bean(destroyMethod = "close")
+    public BlockingScheduler blockingScheduler(@Value("${cloud.aws.dynamodb.blocking-scheduler.threads}") int threads,
+                                               @Value("${cloud.aws.dynamodb.blocking-scheduler.queue-size}") int queueSize) {
+        return new BlockingScheduler(BlockingSchedulerOptions.builder()
+                .threads(threads)
+                .queueSize(queueSize)
+                .build());
+    }
+}
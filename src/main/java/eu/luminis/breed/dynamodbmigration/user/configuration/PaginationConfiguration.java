@@ -0,0 +1,26 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.controller.PageTokenCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+@Slf4j
+@Configuration
+public class PaginationConfiguration {
+
+    @Bean
+    public PageTokenCodec pageTokenCodec(@Value("${cloud.aws.dynamodb.page.token-secret:}") String tokenSecret) {
+        if (tokenSecret.isEmpty()) {
+            log.warn("No cloud.aws.dynamodb.page.token-secret configured, page tokens only work on this instance until it restarts");
+            final byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            return new PageTokenCodec(secret);
+        }
+        return new PageTokenCodec(tokenSecret.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.repository.RepositoryImplementation;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.warmup.RepositoryWarmUp;
+import eu.luminis.breed.dynamodbmigration.user.repository.warmup.WarmUpOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class WarmUpConfiguration {
+
+    @Bean
+    public RepositoryWarmUp repositoryWarmUp(@Value("${cloud.aws.dynamodb.warm-up.enabled}") boolean enabled,
+                                             @Value("${cloud.aws.dynamodb.warm-up.iterations}") int iterations,
+                                             @Value("${cloud.aws.dynamodb.warm-up.page-size}") int pageSize) {
+        return new RepositoryWarmUp(WarmUpOptions.builder()
+                .enabled(enabled)
+                .iterations(iterations)
+                .pageSize(pageSize)
+                .build());
+    }
+
+    //runners are called before the application is ready, so the readiness state only accepts traffic once warmed up
+    @Bean
+    public ApplicationRunner repositoryWarmUpRunner(RepositoryWarmUp repositoryWarmUp,
+                                                    List<UserRepository> userRepositories,
+                                                    List<UserAsyncRepository> userAsyncRepositories,
+                                                    @Value("${cloud.aws.dynamodb.repositories}") List<String> repositories) {
+        return args -> repositoryWarmUp.warmUp(RepositoryImplementation.select(repositories), userRepositories, userAsyncRepositories);
+    }
+}
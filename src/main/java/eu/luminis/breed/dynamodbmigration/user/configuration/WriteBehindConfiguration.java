@@ -0,0 +1,40 @@
+package eu.luminis.breed.dynamodbmigration.user.configuration;
+
+import eu.luminis.breed.dynamodbmigration.user.repository.writebehind.DroppedWriteListener;
+import eu.luminis.breed.dynamodbmigration.user.repository.writebehind.WriteBehindFlusher;
+import eu.luminis.breed.dynamodbmigration.user.repository.writebehind.WriteBehindOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import java.time.Duration;
+
+@Configuration
+public class WriteBehindConfiguration {
+
+    //the repositories only hold the clients and the scheduler, so the flusher has to depend on them itself to be closed
+    //before them and still flush the pending writes
+    @Bean(destroyMethod = "close")
+    @DependsOn({"dynamoDbClientRegistry", "blockingScheduler"})
+    public WriteBehindFlusher writeBehindFlusher(@Value("${cloud.aws.dynamodb.write-behind.enabled}") boolean enabled,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.window}") Duration window,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.max-staleness}") Duration maxStaleness,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.flush-on-shutdown}") boolean flushOnShutdown,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.max-pending-users}") int maxPendingUsers,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.concurrency}") int concurrency,
+                                                 @Value("${cloud.aws.dynamodb.write-behind.max-flush-attempts}") int maxFlushAttempts,
+                                                 ObjectProvider<DroppedWriteListener> droppedWriteListener) {
+        return new WriteBehindFlusher(WriteBehindOptions.builder()
+                .enabled(enabled)
+                .window(window)
+                .maxStaleness(maxStaleness)
+                .flushOnShutdown(flushOnShutdown)
+                .maxPendingUsers(maxPendingUsers)
+                .concurrency(concurrency)
+                .maxFlushAttempts(maxFlushAttempts)
+                .build(), droppedWriteListener.getIfAvailable(() -> (user, replace, cause) -> {
+        }));
+    }
+}
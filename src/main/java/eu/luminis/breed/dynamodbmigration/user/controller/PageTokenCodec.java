@@ -0,0 +1,90 @@
+package eu.luminis.breed.dynamodbmigration.user.controller;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Turns the id of the last user of a page into the token of the next page and back. The token is URL safe base64 of
+ * a version, the id and a truncated HMAC-SHA256 over both and the query, so a token that was changed, or that belongs
+ * to another query, is rejected instead of starting the next page somewhere else.
+ * <p>
+ * Any repository can continue the page of another one, as the id is all of the LastEvaluatedKey that is not already in
+ * the request itself.
+ */
+public class PageTokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int ID_LENGTH = 16;
+    private static final int MAC_LENGTH = 12;
+    private static final int TOKEN_LENGTH = 1 + ID_LENGTH + MAC_LENGTH;
+
+    private final SecretKeySpec key;
+
+    public PageTokenCodec(byte[] secret) {
+        if (secret.length < 16) {
+            throw UserException.error("The page token secret should have at least 16 bytes, but had {}", secret.length);
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    /**
+     * @param query what was paged, such as the last name that was queried
+     * @return the token, or {@code null} when there is no next page
+     */
+    public String encode(String query, UUID lastEvaluatedId) {
+        if (lastEvaluatedId == null) {
+            return null;
+        }
+        final ByteBuffer token = ByteBuffer.allocate(TOKEN_LENGTH)
+                .put(VERSION)
+                .putLong(lastEvaluatedId.getMostSignificantBits())
+                .putLong(lastEvaluatedId.getLeastSignificantBits());
+        token.put(mac(query, token.array()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+    }
+
+    /**
+     * @return the id of the last user of the previous page, or {@code null} for the first page
+     */
+    public UUID decode(String query, String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return null;
+        }
+        final byte[] token;
+        try {
+            token = Base64.getUrlDecoder().decode(pageToken);
+        } catch (IllegalArgumentException e) {
+            throw UserException.clientError("Invalid page token");
+        }
+        if (token.length != TOKEN_LENGTH || token[0] != VERSION
+                || !MessageDigest.isEqual(mac(query, token), Arrays.copyOfRange(token, 1 + ID_LENGTH, TOKEN_LENGTH))) {
+            throw UserException.clientError("Invalid page token");
+        }
+        final ByteBuffer id = ByteBuffer.wrap(token, 1, ID_LENGTH);
+        return new UUID(id.getLong(), id.getLong());
+    }
+
+    //over the version and id at the start of the token
+    private byte[] mac(String query, byte[] token) {
+        try {
+            //not thread safe, and cheap to create compared to the page it is for
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(token, 0, 1 + ID_LENGTH);
+            mac.update(query.getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw UserException.error("Could not sign page token", e);
+        }
+    }
+}
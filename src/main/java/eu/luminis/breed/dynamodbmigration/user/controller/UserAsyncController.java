@@ -1,8 +1,12 @@
 package eu.luminis.breed.dynamodbmigration.user.controller;
 
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.PagedUsers;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
 import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -25,9 +29,18 @@ import java.util.UUID;
 public class UserAsyncController {
 
     private final List<UserAsyncRepository> userAsyncRepositories;
+    private final int scanTotalSegments;
+    private final PageTokenCodec pageTokenCodec;
+    private final int maxPageSize;
 
-    public UserAsyncController(List<UserAsyncRepository> userAsyncRepositories) {
+    public UserAsyncController(List<UserAsyncRepository> userAsyncRepositories,
+                               @Value("${cloud.aws.dynamodb.scan.total-segments:1}") int scanTotalSegments,
+                               PageTokenCodec pageTokenCodec,
+                               @Value("${cloud.aws.dynamodb.page.max-size:1000}") int maxPageSize) {
         this.userAsyncRepositories = userAsyncRepositories;
+        this.scanTotalSegments = scanTotalSegments;
+        this.pageTokenCodec = pageTokenCodec;
+        this.maxPageSize = maxPageSize;
     }
 
     @PostMapping
@@ -39,19 +52,45 @@ public class UserAsyncController {
     }
 
     @GetMapping("/{id}")
-    public Mono<User> getUser(@PathVariable("id") UUID id) {
-        return getRandomRepositoryImpl().getUserById(id);
+    public Mono<User> getUser(@PathVariable("id") UUID id,
+                              @RequestParam(required = false) List<String> fields) {
+        return getRandomRepositoryImpl().getUserById(id, Projection.of(fields));
     }
 
     @GetMapping("/")
     public Flux<User> getUsers(@RequestParam(required = false) String lastName,
-                               @RequestParam(required = false) List<UUID> ids) {
+                               @RequestParam(required = false) List<UUID> ids,
+                               @RequestParam(required = false) List<String> fields) {
+        final Projection projection = Projection.of(fields);
         if (lastName != null) {
-            return getRandomRepositoryImpl().findByLastName(lastName);
+            return getRandomRepositoryImpl().findByLastName(lastName, projection);
         } else if (ids != null) {
-            return getRandomRepositoryImpl().findByIds(ids);
+            return getRandomRepositoryImpl().findByIds(ids, projection);
+        } else if (scanTotalSegments > 1) {
+            return getRandomRepositoryImpl().findAll(scanTotalSegments, projection);
         }
-        return getRandomRepositoryImpl().findAll();
+        return getRandomRepositoryImpl().findAll(projection);
+    }
+
+    /**
+     * One page of all users, or of the users with the last name. The next page is requested with the nextPageToken of
+     * this one, which is null on the last page.
+     */
+    @GetMapping(value = "/", params = "pageSize")
+    public Mono<PagedUsers> getUsersPage(@RequestParam(required = false) String lastName,
+                                         @RequestParam int pageSize,
+                                         @RequestParam(required = false) String pageToken,
+                                         @RequestParam(required = false) List<String> fields) {
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw UserException.clientError("Page size should be between 1 and {}, but was {}", maxPageSize, pageSize);
+        }
+        final Projection projection = Projection.of(fields);
+        final String query = lastName != null ? "lastName:" + lastName : "scan";
+        final UUID exclusiveStartId = pageTokenCodec.decode(query, pageToken);
+        final Mono<UserPage> userPage = lastName != null ?
+                getRandomRepositoryImpl().findPageByLastName(lastName, pageSize, exclusiveStartId, projection) :
+                getRandomRepositoryImpl().findPage(pageSize, exclusiveStartId, projection);
+        return userPage.map(page -> PagedUsers.of(page.getUsers(), pageTokenCodec.encode(query, page.getLastEvaluatedId())));
     }
 
     @PutMapping("/{id}")
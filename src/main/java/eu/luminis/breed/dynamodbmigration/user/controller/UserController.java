@@ -1,9 +1,16 @@
 package eu.luminis.breed.dynamodbmigration.user.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserNotFoundException;
+import eu.luminis.breed.dynamodbmigration.user.model.PagedUsers;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
 import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -14,19 +21,37 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/user")
 public class UserController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final byte[] NEW_LINE = {'\n'};
+
     private final List<UserRepository> userRepositories;
+    private final int scanTotalSegments;
+    private final ObjectMapper objectMapper;
+    private final PageTokenCodec pageTokenCodec;
+    private final int maxPageSize;
 
-    public UserController(List<UserRepository> userRepositories) {
+    public UserController(List<UserRepository> userRepositories,
+                          @Value("${cloud.aws.dynamodb.scan.total-segments:1}") int scanTotalSegments,
+                          ObjectMapper objectMapper,
+                          PageTokenCodec pageTokenCodec,
+                          @Value("${cloud.aws.dynamodb.page.max-size:1000}") int maxPageSize) {
         this.userRepositories = userRepositories;
+        this.scanTotalSegments = scanTotalSegments;
+        this.objectMapper = objectMapper;
+        this.pageTokenCodec = pageTokenCodec;
+        this.maxPageSize = maxPageSize;
     }
 
     @PostMapping
@@ -38,19 +63,64 @@ public class UserController {
     }
 
     @GetMapping("/{id}")
-    public User getUser(@PathVariable("id") UUID id) {
-        return getRandomRepositoryImpl().getUserById(id).orElseThrow(UserNotFoundException::new);
+    public User getUser(@PathVariable("id") UUID id,
+                        @RequestParam(required = false) List<String> fields) {
+        return getRandomRepositoryImpl().getUserById(id, Projection.of(fields)).orElseThrow(UserNotFoundException::new);
     }
 
     @GetMapping("/")
     public List<User> getUsers(@RequestParam(required = false) String lastName,
-                               @RequestParam(required = false) List<UUID> ids) {
+                               @RequestParam(required = false) List<UUID> ids,
+                               @RequestParam(required = false) List<String> fields) {
+        final Projection projection = Projection.of(fields);
         if (lastName != null) {
-            return getRandomRepositoryImpl().findByLastName(lastName);
+            return getRandomRepositoryImpl().findByLastName(lastName, projection);
         } else if (ids != null) {
-            return getRandomRepositoryImpl().findByIds(ids);
+            return getRandomRepositoryImpl().findByIds(ids, projection);
+        } else if (scanTotalSegments > 1) {
+            return getRandomRepositoryImpl().findAll(scanTotalSegments, projection);
+        }
+        return getRandomRepositoryImpl().findAll(projection);
+    }
+
+    /**
+     * One page of all users, or of the users with the last name. The next page is requested with the nextPageToken of
+     * this one, which is null on the last page.
+     */
+    @GetMapping(value = "/", params = "pageSize")
+    public PagedUsers getUsersPage(@RequestParam(required = false) String lastName,
+                                   @RequestParam int pageSize,
+                                   @RequestParam(required = false) String pageToken,
+                                   @RequestParam(required = false) List<String> fields) {
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw UserException.clientError("Page size should be between 1 and {}, but was {}", maxPageSize, pageSize);
         }
-        return getRandomRepositoryImpl().findAll();
+        final Projection projection = Projection.of(fields);
+        final String query = lastName != null ? "lastName:" + lastName : "scan";
+        final UUID exclusiveStartId = pageTokenCodec.decode(query, pageToken);
+        final UserPage userPage = lastName != null ?
+                getRandomRepositoryImpl().findPageByLastName(lastName, pageSize, exclusiveStartId, projection) :
+                getRandomRepositoryImpl().findPage(pageSize, exclusiveStartId, projection);
+        return PagedUsers.of(userPage.getUsers(), pageTokenCodec.encode(query, userPage.getLastEvaluatedId()));
+    }
+
+    /**
+     * Streams all users as newline delimited json, so that memory usage does not depend on the size of the table.
+     */
+    @GetMapping(value = "/", params = {"!lastName", "!ids", "!pageSize"}, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        final UserRepository userRepository = getRandomRepositoryImpl();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(outputStream -> {
+                    try (Stream<User> users = userRepository.streamAll()) {
+                        final Iterator<User> iterator = users.iterator();
+                        while (iterator.hasNext()) {
+                            outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                            outputStream.write(NEW_LINE);
+                        }
+                    }
+                });
     }
 
     @PutMapping("/{id}")
@@ -0,0 +1,35 @@
+package eu.luminis.breed.dynamodbmigration.user.controller;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Answers a {@link UserException} of an invalid request, such as an unknown field or an invalid page token, with a 400
+ * and its message. Other user exceptions are a 500, without the message as it may tell about the internals.
+ */
+@Slf4j
+@RestControllerAdvice
+public class UserExceptionHandler {
+
+    @ExceptionHandler(UserException.class)
+    public ResponseEntity<Map<String, Object>> handleUserException(UserException e) {
+        if (e.isClientError()) {
+            return body(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        log.error("Unable to handle the request", e);
+        return body(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase());
+    }
+
+    private static ResponseEntity<Map<String, Object>> body(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of(
+                "status", status.value(),
+                "error", status.getReasonPhrase(),
+                "message", message));
+    }
+}
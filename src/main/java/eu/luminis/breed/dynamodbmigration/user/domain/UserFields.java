@@ -13,6 +13,9 @@ public final class UserFields {
     public static final String ADDRESS_ZIPCODE_FIELD = "zipcode";
     public static final String ADDRESS_CITY_FIELD = "city";
     public static final String EDUCATION_FIELD = "education";
+    public static final String EDUCATION_PRIMARY_SCHOOL_FIELD = "primarySchool";
+    public static final String EDUCATION_SECONDARY_SCHOOL_FIELD = "secondarySchool";
+    public static final String EDUCATION_UNIVERSITY_FIELD = "university";
     public static final String IS_ADMIN_FIELD = "isAdmin";
     public static final String GENDER_FIELD = "gender";
     public static final String LAST_MODIFIED_FIELD = "lastModified";
@@ -1,28 +1,44 @@
 package eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverter;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.EducationCodec;
 
-import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
-
-public class EducationConverter implements DynamoDBTypeConverter<String, Education> {
+/**
+ * Stores the education as a map, like the low-level mapper does, see {@link EducationCodec}.
+ */
+public class EducationConverter implements DynamoDBTypeConverter<AttributeValue, Education> {
 
     @Override
-    public String convert(Education education) {
-        try {
-            return OBJECT_MAPPER.writeValueAsString(education);
-        } catch (JsonProcessingException e) {
-            throw UserException.error("Cannot convert to string {}", education);
-        }
+    public AttributeValue convert(Education education) {
+        final eu.luminis.breed.dynamodbmigration.user.model.Education modelEducation = eu.luminis.breed.dynamodbmigration.user.model.Education.builder()
+                .primarySchool(toModelAddress(education.getPrimarySchool()))
+                .secondarySchool(toModelAddress(education.getSecondarySchool()))
+                .university(toModelAddress(education.getUniversity()))
+                .build();
+        return EducationCodec.encode(modelEducation);
     }
 
     @Override
-    public Education unconvert(String object) {
-        try {
-            return OBJECT_MAPPER.readValue(object, Education.class);
-        } catch (JsonProcessingException e) {
-            throw UserException.error("Cannot convert to address {}", object);
+    public Education unconvert(AttributeValue object) {
+        final eu.luminis.breed.dynamodbmigration.user.model.Education modelEducation = EducationCodec.decode(object);
+        if (modelEducation == null) {
+            return null;
         }
+        final Education education = new Education();
+        education.setPrimarySchool(toAddress(modelEducation.getPrimarySchool()));
+        education.setSecondarySchool(toAddress(modelEducation.getSecondarySchool()));
+        education.setUniversity(toAddress(modelEducation.getUniversity()));
+        return education;
+    }
+
+    private static eu.luminis.breed.dynamodbmigration.user.model.Address toModelAddress(Address address) {
+        return address == null ? null : new eu.luminis.breed.dynamodbmigration.user.model.Address(address.getCountry(), address.getProvince(),
+                address.getCity(), address.getStreet(), address.getNumber(), address.getZipCode());
+    }
+
+    private static Address toAddress(eu.luminis.breed.dynamodbmigration.user.model.Address address) {
+        return address == null ? null : new Address(address.getCountry(), address.getProvince(), address.getStreet(),
+                address.getNumber(), address.getZipCode(), address.getCity());
     }
 }
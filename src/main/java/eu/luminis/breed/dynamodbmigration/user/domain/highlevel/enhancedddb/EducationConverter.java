@@ -1,39 +1,40 @@
 package eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import lombok.extern.slf4j.Slf4j;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.EducationCodec;
 import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
 import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
 import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
-import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
-
-@Slf4j
+/**
+ * Stores the education as a map, like the low-level mapper does, see {@link EducationCodec}.
+ */
 public class EducationConverter implements AttributeConverter<Education> {
 
     @Override
     public AttributeValue transformFrom(Education object) {
         if (object != null) {
-            try {
-                return AttributeValue.builder().s(OBJECT_MAPPER.writeValueAsString(object)).build();
-            } catch (JsonProcessingException e) {
-                log.error("Could not map object for teaser to attribute", e);
-            }
+            //the schools are model addresses already
+            return EducationCodec.encode(eu.luminis.breed.dynamodbmigration.user.model.Education.builder()
+                    .primarySchool(object.getPrimarySchool())
+                    .secondarySchool(object.getSecondarySchool())
+                    .university(object.getUniversity())
+                    .build());
         }
         return AttributeValue.builder().nul(true).build();
     }
 
     @Override
     public Education transformTo(AttributeValue input) {
-        if (input != null && input.s() != null) {
-            try {
-                return OBJECT_MAPPER.readValue(input.s(), Education.class);
-            } catch (JsonProcessingException e) {
-                log.error("Could not map '{}' for teaser to object", input.s(), e);
-            }
+        final eu.luminis.breed.dynamodbmigration.user.model.Education modelEducation = EducationCodec.decode(input);
+        if (modelEducation == null) {
+            return null;
         }
-        return null;
+        final Education education = new Education();
+        education.setPrimarySchool(modelEducation.getPrimarySchool());
+        education.setSecondarySchool(modelEducation.getSecondarySchool());
+        education.setUniversity(modelEducation.getUniversity());
+        return education;
     }
 
     @Override
@@ -43,6 +44,6 @@ public class EducationConverter implements AttributeConverter<Education> {
 
     @Override
     public AttributeValueType attributeValueType() {
-        return AttributeValueType.S;
+        return AttributeValueType.M;
     }
 }
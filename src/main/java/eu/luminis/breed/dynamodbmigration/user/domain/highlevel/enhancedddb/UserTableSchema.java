@@ -0,0 +1,83 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Gender;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.internal.converter.attribute.LocalDateTimeAttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.*;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondaryPartitionKey;
+
+/**
+ * The schema of {@link User} built by hand, which maps to the same item as {@code TableSchema.fromBean(User.class)},
+ * but without introspecting the bean and generating accessors when the schema is created, and with plain method
+ * references instead of reflection based ones when an item is mapped.
+ */
+public final class UserTableSchema {
+
+    //the bean schema names the attributes of an address after its properties, so zipCode and not ADDRESS_ZIPCODE_FIELD
+    private static final TableSchema<Address> ADDRESS_SCHEMA = StaticTableSchema.builder(Address.class)
+            .newItemSupplier(Address::new)
+            .addAttribute(String.class, attribute -> attribute.name(ADDRESS_COUNTRY_FIELD)
+                    .getter(Address::getCountry)
+                    .setter(Address::setCountry))
+            .addAttribute(String.class, attribute -> attribute.name(ADDRESS_PROVINCE_FIELD)
+                    .getter(Address::getProvince)
+                    .setter(Address::setProvince))
+            .addAttribute(String.class, attribute -> attribute.name(ADDRESS_STREET_FIELD)
+                    .getter(Address::getStreet)
+                    .setter(Address::setStreet))
+            .addAttribute(Integer.class, attribute -> attribute.name(ADDRESS_NUMBER_FIELD)
+                    .getter(Address::getNumber)
+                    .setter(Address::setNumber))
+            .addAttribute(String.class, attribute -> attribute.name("zipCode")
+                    .getter(Address::getZipCode)
+                    .setter(Address::setZipCode))
+            .addAttribute(String.class, attribute -> attribute.name(ADDRESS_CITY_FIELD)
+                    .getter(Address::getCity)
+                    .setter(Address::setCity))
+            .build();
+
+    public static final TableSchema<User> USER_SCHEMA = StaticTableSchema.builder(User.class)
+            .newItemSupplier(User::new)
+            .addAttribute(UUID.class, attribute -> attribute.name(ID_FIELD)
+                    .getter(User::getId)
+                    .setter(User::setId)
+                    .tags(primaryPartitionKey()))
+            .addAttribute(String.class, attribute -> attribute.name(FIRST_NAME_FIELD)
+                    .getter(User::getFirstName)
+                    .setter(User::setFirstName))
+            .addAttribute(String.class, attribute -> attribute.name(LAST_NAME_FIELD)
+                    .getter(User::getLastName)
+                    .setter(User::setLastName)
+                    .tags(secondaryPartitionKey("lastNameIndex")))
+            .addAttribute(Integer.class, attribute -> attribute.name(AGE_FIELD)
+                    .getter(User::getAge)
+                    .setter(User::setAge))
+            .addAttribute(EnhancedType.documentOf(Address.class, ADDRESS_SCHEMA), attribute -> attribute.name(ADDRESS_FIELD)
+                    .getter(User::getAddress)
+                    .setter(User::setAddress))
+            .addAttribute(Education.class, attribute -> attribute.name(EDUCATION_FIELD)
+                    .getter(User::getEducation)
+                    .setter(User::setEducation)
+                    .attributeConverter(new EducationConverter()))
+            .addAttribute(Boolean.class, attribute -> attribute.name(IS_ADMIN_FIELD)
+                    .getter(User::getIsAdmin)
+                    .setter(User::setIsAdmin))
+            .addAttribute(Gender.class, attribute -> attribute.name(GENDER_FIELD)
+                    .getter(User::getGender)
+                    .setter(User::setGender))
+            .addAttribute(LocalDateTime.class, attribute -> attribute.name(LAST_MODIFIED_FIELD)
+                    .getter(User::getLastModified)
+                    .setter(User::setLastModified)
+                    .attributeConverter(LocalDateTimeAttributeConverter.create()))
+            .build();
+
+    private UserTableSchema() {
+    }
+}
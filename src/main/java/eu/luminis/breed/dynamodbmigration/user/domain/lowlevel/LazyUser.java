@@ -0,0 +1,262 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import eu.luminis.breed.dynamodbmigration.user.model.Gender;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.AGE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.FIRST_NAME_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.GENDER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.IS_ADMIN_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
+/**
+ * A user backed by the item it was read from, that decodes an attribute the first time its field is read, and keeps the
+ * decoded value. A user that is only passed on, or of which only some fields are read, does not pay for decoding the
+ * others. A field that is set is not decoded anymore. Once every field is decoded or set, the item is let go.
+ * <p>
+ * A user can be read by more threads, for example from a cache, without locks: a decoded value is written to its field
+ * before the bit of the field is set in the volatile bitmask, and threads that decode the same field at the same time
+ * write the same value. Setting a field while another thread reads it for the first time is not safe, as for any user.
+ *
+ * @param <V> the AttributeValue of the SDK
+ */
+public abstract class LazyUser<V> extends User {
+
+    //per attribute: type, and for documents the length of the map or list
+    protected static final int DOCUMENT_OVERHEAD = 3;
+
+    private static final int ID = 1;
+    private static final int FIRST_NAME = 1 << 1;
+    private static final int LAST_NAME = 1 << 2;
+    private static final int AGE = 1 << 3;
+    private static final int ADDRESS = 1 << 4;
+    private static final int EDUCATION = 1 << 5;
+    private static final int IS_ADMIN = 1 << 6;
+    private static final int GENDER = 1 << 7;
+    private static final int ALL = (1 << 8) - 1;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<LazyUser> DECODED = AtomicIntegerFieldUpdater.newUpdater(LazyUser.class, "decoded");
+
+    //null once every field is decoded or set
+    private volatile Map<String, V> item;
+    //the fields that were decoded or set
+    private volatile int decoded;
+    //negative until it is estimated
+    private volatile long itemSize = -1;
+
+    protected LazyUser(Map<String, V> item) {
+        this.item = item;
+    }
+
+    protected abstract UUID decodeId(V value);
+
+    protected abstract String decodeString(V value);
+
+    protected abstract Integer decodeInteger(V value);
+
+    protected abstract Address decodeAddress(V value);
+
+    protected abstract Education decodeEducation(V value);
+
+    protected abstract Boolean decodeBoolean(V value);
+
+    protected abstract Gender decodeGender(V value);
+
+    /**
+     * Estimate of the size of the value in DynamoDB, see {@link #itemSize()}.
+     */
+    protected abstract long size(V value);
+
+    /**
+     * Estimate of the size of the item in DynamoDB, the names of the attributes count as well. It is taken from the item
+     * without decoding it, not a getter so it is not serialized with the user.
+     */
+    public long itemSize() {
+        long size = itemSize;
+        if (size < 0) {
+            final Map<String, V> current = item;
+            //the item is only let go after its size is estimated
+            if (current == null) {
+                return itemSize;
+            }
+            size = 0;
+            for (Map.Entry<String, V> attribute : current.entrySet()) {
+                size += attribute.getKey().length() + size(attribute.getValue());
+            }
+            itemSize = size;
+        }
+        return size;
+    }
+
+    @Override
+    public UUID getId() {
+        if (!isDecoded(ID)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setId(decodeId(current.get(ID_FIELD)));
+                decoded(ID);
+            }
+        }
+        return super.getId();
+    }
+
+    @Override
+    public String getFirstName() {
+        if (!isDecoded(FIRST_NAME)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setFirstName(decodeString(current.get(FIRST_NAME_FIELD)));
+                decoded(FIRST_NAME);
+            }
+        }
+        return super.getFirstName();
+    }
+
+    @Override
+    public String getLastName() {
+        if (!isDecoded(LAST_NAME)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setLastName(decodeString(current.get(LAST_NAME_FIELD)));
+                decoded(LAST_NAME);
+            }
+        }
+        return super.getLastName();
+    }
+
+    @Override
+    public Integer getAge() {
+        if (!isDecoded(AGE)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setAge(decodeInteger(current.get(AGE_FIELD)));
+                decoded(AGE);
+            }
+        }
+        return super.getAge();
+    }
+
+    @Override
+    public Address getAddress() {
+        if (!isDecoded(ADDRESS)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setAddress(decodeAddress(current.get(ADDRESS_FIELD)));
+                decoded(ADDRESS);
+            }
+        }
+        return super.getAddress();
+    }
+
+    @Override
+    public Education getEducation() {
+        if (!isDecoded(EDUCATION)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setEducation(decodeEducation(current.get(EDUCATION_FIELD)));
+                decoded(EDUCATION);
+            }
+        }
+        return super.getEducation();
+    }
+
+    @Override
+    public Boolean getIsAdmin() {
+        if (!isDecoded(IS_ADMIN)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setIsAdmin(decodeBoolean(current.get(IS_ADMIN_FIELD)));
+                decoded(IS_ADMIN);
+            }
+        }
+        return super.getIsAdmin();
+    }
+
+    @Override
+    public Gender getGender() {
+        if (!isDecoded(GENDER)) {
+            final Map<String, V> current = item;
+            //when the item is let go every field is decoded already
+            if (current != null) {
+                super.setGender(decodeGender(current.get(GENDER_FIELD)));
+                decoded(GENDER);
+            }
+        }
+        return super.getGender();
+    }
+
+    @Override
+    public void setId(UUID id) {
+        super.setId(id);
+        decoded(ID);
+    }
+
+    @Override
+    public void setFirstName(String firstName) {
+        super.setFirstName(firstName);
+        decoded(FIRST_NAME);
+    }
+
+    @Override
+    public void setLastName(String lastName) {
+        super.setLastName(lastName);
+        decoded(LAST_NAME);
+    }
+
+    @Override
+    public void setAge(Integer age) {
+        super.setAge(age);
+        decoded(AGE);
+    }
+
+    @Override
+    public void setAddress(Address address) {
+        super.setAddress(address);
+        decoded(ADDRESS);
+    }
+
+    @Override
+    public void setEducation(Education education) {
+        super.setEducation(education);
+        decoded(EDUCATION);
+    }
+
+    @Override
+    public void setIsAdmin(Boolean isAdmin) {
+        super.setIsAdmin(isAdmin);
+        decoded(IS_ADMIN);
+    }
+
+    @Override
+    public void setGender(Gender gender) {
+        super.setGender(gender);
+        decoded(GENDER);
+    }
+
+    private boolean isDecoded(int field) {
+        return (decoded & field) != 0;
+    }
+
+    private void decoded(int field) {
+        if (DECODED.accumulateAndGet(this, field, (current, bit) -> current | bit) == ALL && item != null) {
+            itemSize();
+            item = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel;
+
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * An UpdateExpression with its ExpressionAttributeValues.
+ *
+ * @param <V> the AttributeValue of the SDK
+ */
+@Value(staticConstructor = "of")
+public class UpdateExpression<V> {
+    String expression;
+    Map<String, V> values;
+}
@@ -0,0 +1,66 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.AGE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.FIRST_NAME_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.GENDER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.IS_ADMIN_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_MODIFIED_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
+/**
+ * The SET expressions of updates of a user, one for every combination of fields that are not null, built once instead
+ * of on every update. A combination is a mask of the bits of its fields. lastModified is always set.
+ */
+public final class UpdateExpressionTemplates {
+
+    public static final int FIRST_NAME = 1;
+    public static final int LAST_NAME = 1 << 1;
+    public static final int AGE = 1 << 2;
+    public static final int ADDRESS = 1 << 3;
+    public static final int EDUCATION = 1 << 4;
+    public static final int IS_ADMIN = 1 << 5;
+    public static final int GENDER = 1 << 6;
+
+    //placeholders of the values in the expressions
+    public static final String FIRST_NAME_VALUE = ":" + FIRST_NAME_FIELD;
+    public static final String LAST_NAME_VALUE = ":" + LAST_NAME_FIELD;
+    public static final String AGE_VALUE = ":" + AGE_FIELD;
+    public static final String ADDRESS_VALUE = ":" + ADDRESS_FIELD;
+    public static final String EDUCATION_VALUE = ":" + EDUCATION_FIELD;
+    public static final String IS_ADMIN_VALUE = ":" + IS_ADMIN_FIELD;
+    public static final String GENDER_VALUE = ":" + GENDER_FIELD;
+    public static final String LAST_MODIFIED_VALUE = ":" + LAST_MODIFIED_FIELD;
+
+    //in the order of their bits
+    private static final List<String> FIELDS = List.of(FIRST_NAME_FIELD, LAST_NAME_FIELD, AGE_FIELD, ADDRESS_FIELD, EDUCATION_FIELD,
+            IS_ADMIN_FIELD, GENDER_FIELD);
+    private static final String[] EXPRESSIONS = new String[1 << FIELDS.size()];
+
+    static {
+        for (int fields = 0; fields < EXPRESSIONS.length; fields++) {
+            final StringJoiner expression = new StringJoiner(", ", "SET ", "");
+            for (int i = 0; i < FIELDS.size(); i++) {
+                if ((fields & (1 << i)) != 0) {
+                    expression.add(FIELDS.get(i) + "=:" + FIELDS.get(i));
+                }
+            }
+            expression.add(LAST_MODIFIED_FIELD + "=" + LAST_MODIFIED_VALUE);
+            EXPRESSIONS[fields] = expression.toString();
+        }
+    }
+
+    private UpdateExpressionTemplates() {
+    }
+
+    /**
+     * @param fields mask of the fields that are set
+     */
+    public static String updateExpression(int fields) {
+        return EXPRESSIONS[fields];
+    }
+}
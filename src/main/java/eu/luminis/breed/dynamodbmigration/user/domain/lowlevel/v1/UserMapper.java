@@ -2,7 +2,9 @@ package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.LazyUser;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpression;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpressionTemplates;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.model.Address;
 import eu.luminis.breed.dynamodbmigration.user.model.Education;
@@ -15,11 +17,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.*;
-import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
-import static java.util.Map.entry;
+import static eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpressionTemplates.*;
 
 public class UserMapper {
     private UserMapper() {
@@ -32,9 +32,9 @@ public class UserMapper {
         final UpdateItemRequest updateItemRequest = new UpdateItemRequest()
                 .withTableName(tableName)
                 .addKeyEntry(ID_FIELD, new AttributeValue(SafeConversionUtil.safelyConvertToString(user.getId())));
-        final Map<String, AttributeValue> attributeUpdates = attributeValueUpdates(user);
-        updateItemRequest.setExpressionAttributeValues(attributeUpdates);
-        updateItemRequest.setUpdateExpression(getUpdateExpression(user));
+        final UpdateExpression<AttributeValue> updateExpression = updateExpression(user);
+        updateItemRequest.setExpressionAttributeValues(updateExpression.getValues());
+        updateItemRequest.setUpdateExpression(updateExpression.getExpression());
         //The following is easier, but deprecated (and not possible to combine with conditional expressions):
         //updateItemRequest.withAttributeUpdates(attributeUpdates);
         return updateItemRequest;
@@ -49,7 +49,7 @@ public class UserMapper {
         Optional.ofNullable(user.getLastName()).ifPresent(value -> item.put(LAST_NAME_FIELD, new AttributeValue(value)));
         Optional.ofNullable(user.getAge()).ifPresent(value -> item.put(AGE_FIELD, new AttributeValue().withN(String.valueOf(value))));
         Optional.ofNullable(user.getAddress()).ifPresent(value -> item.put(ADDRESS_FIELD, new AttributeValue().withM(safelyConvertToMap(value))));
-        Optional.ofNullable(user.getEducation()).ifPresent(value -> item.put(EDUCATION_FIELD, new AttributeValue(safelyConvertToString(value))));
+        Optional.ofNullable(user.getEducation()).ifPresent(value -> item.put(EDUCATION_FIELD, EducationCodec.encode(value)));
         Optional.ofNullable(user.getIsAdmin()).ifPresent(value -> item.put(IS_ADMIN_FIELD, new AttributeValue().withBOOL(value)));
         Optional.ofNullable(user.getGender()).ifPresent(value -> item.put(GENDER_FIELD, new AttributeValue(String.valueOf(value))));
         //as this method is always used for saving/updating, always change last modified to now
@@ -57,42 +57,70 @@ public class UserMapper {
         return item;
     }
 
-    public static User mapToUser(Map<String, AttributeValue> item) {
-        final Address address = mapToAddress(item);
-        final Education education = mapToEducation(item.get(EDUCATION_FIELD));
-        return User.builder()
-                .id(safelyConvertToUUID(item.get(ID_FIELD)))
-                .firstName(safelyConvertToString(item.get(FIRST_NAME_FIELD)))
-                .lastName(safelyConvertToString(item.get(LAST_NAME_FIELD)))
-                .age(safelyConvertToInteger(item.get(AGE_FIELD)))
-                .address(address)
-                .education(education)
-                .isAdmin(safelyConvertToBoolean(item.get(IS_ADMIN_FIELD)))
-                .gender(safelyConvertToGender(item.get(GENDER_FIELD)))
-                .build();
+    /**
+     * The key to continue a scan after the user with the id, or {@code null} to start at the beginning of the table.
+     */
+    public static Map<String, AttributeValue> exclusiveStartKey(UUID id) {
+        return id == null ? null : Map.of(ID_FIELD, new AttributeValue(id.toString()));
+    }
 
+    //a key of the last name index also has the key of the table
+    public static Map<String, AttributeValue> exclusiveStartKey(UUID id, String lastName) {
+        return id == null ? null : Map.of(ID_FIELD, new AttributeValue(id.toString()), LAST_NAME_FIELD, new AttributeValue(lastName));
     }
 
-    private static Map<String, AttributeValue> attributeValueUpdates(User user) {
-        return mapToItem(user, false)
-                .entrySet()
-                .stream()
-                .map(entry -> entry(":" + entry.getKey(), entry.getValue()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    public static UUID lastEvaluatedId(Map<String, AttributeValue> lastEvaluatedKey) {
+        return lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : UUID.fromString(lastEvaluatedKey.get(ID_FIELD).getS());
     }
 
-    private static String getUpdateExpression(User user) {
-        final Map<String, AttributeValue> attributeUpdates = mapToItem(user, false);
-        final StringBuilder updateExpression = new StringBuilder();
-        updateExpression.append("SET ");
-        for (Map.Entry<String, AttributeValue> stringAttributeValueUpdateEntry : attributeUpdates.entrySet()) {
-            updateExpression.append(stringAttributeValueUpdateEntry.getKey()).append("=:").append(stringAttributeValueUpdateEntry.getKey()).append(", ");
+    /**
+     * A user that decodes the attributes of the item when they are read, see {@link LazyUser}.
+     */
+    public static User mapToUser(Map<String, AttributeValue> item) {
+        return new ItemUser(item);
+    }
+
+    /**
+     * The SET expression and its values that update the fields of the user that are not null, and lastModified, in one
+     * pass over the user.
+     */
+    private static UpdateExpression<AttributeValue> updateExpression(User user) {
+        final Map<String, AttributeValue> values = new HashMap<>();
+        int fields = 0;
+        if (user.getFirstName() != null) {
+            fields |= UpdateExpressionTemplates.FIRST_NAME;
+            values.put(FIRST_NAME_VALUE, new AttributeValue(user.getFirstName()));
+        }
+        if (user.getLastName() != null) {
+            fields |= UpdateExpressionTemplates.LAST_NAME;
+            values.put(LAST_NAME_VALUE, new AttributeValue(user.getLastName()));
+        }
+        if (user.getAge() != null) {
+            fields |= UpdateExpressionTemplates.AGE;
+            values.put(AGE_VALUE, new AttributeValue().withN(String.valueOf(user.getAge())));
+        }
+        if (user.getAddress() != null) {
+            fields |= UpdateExpressionTemplates.ADDRESS;
+            values.put(ADDRESS_VALUE, new AttributeValue().withM(safelyConvertToMap(user.getAddress())));
         }
-        updateExpression.deleteCharAt(updateExpression.lastIndexOf(","));
-        return updateExpression.toString();
+        if (user.getEducation() != null) {
+            fields |= UpdateExpressionTemplates.EDUCATION;
+            values.put(EDUCATION_VALUE, EducationCodec.encode(user.getEducation()));
+        }
+        if (user.getIsAdmin() != null) {
+            fields |= UpdateExpressionTemplates.IS_ADMIN;
+            values.put(IS_ADMIN_VALUE, new AttributeValue().withBOOL(user.getIsAdmin()));
+        }
+        if (user.getGender() != null) {
+            fields |= UpdateExpressionTemplates.GENDER;
+            values.put(GENDER_VALUE, new AttributeValue(String.valueOf(user.getGender())));
+        }
+        //as an update always changes last modified to now
+        values.put(LAST_MODIFIED_VALUE, new AttributeValue(String.valueOf(TimeMachine.now())));
+        return UpdateExpression.of(UpdateExpressionTemplates.updateExpression(fields), values);
     }
 
-    private static Map<String, AttributeValue> safelyConvertToMap(Address address) {
+    static Map<String, AttributeValue> safelyConvertToMap(Address address) {
         Map<String, AttributeValue> attributeValueMap = new HashMap<>();
         Optional.ofNullable(address.getCountry()).ifPresent(value -> attributeValueMap.put(ADDRESS_COUNTRY_FIELD, new AttributeValue(value)));
         Optional.ofNullable(address.getProvince()).ifPresent(value -> attributeValueMap.put(ADDRESS_PROVINCE_FIELD, new AttributeValue(value)));
@@ -103,19 +131,7 @@ public class UserMapper {
         return attributeValueMap;
     }
 
-    private static String safelyConvertToString(Education education) {
-        if (education != null) {
-            try {
-                return OBJECT_MAPPER.writeValueAsString(education);
-            } catch (JsonProcessingException e) {
-                throw UserException.error("Could not convert {} to String.", EDUCATION_FIELD, e);
-            }
-        }
-        return null;
-    }
-
-    private static Address mapToAddress(Map<String, AttributeValue> item) {
-        final AttributeValue attributeValue = item.get(ADDRESS_FIELD);
+    static Address mapToAddress(AttributeValue attributeValue) {
         if (attributeValue != null && attributeValue.getM() != null) {
             final Map<String, AttributeValue> attributeValueM = attributeValue.getM();
             return Address.builder()
@@ -130,17 +146,6 @@ public class UserMapper {
         return null;
     }
 
-    private static Education mapToEducation(AttributeValue attributeValue) {
-        if (attributeValue != null && attributeValue.getS() != null) {
-            try {
-                OBJECT_MAPPER.readValue(attributeValue.getS(), Education.class);
-            } catch (JsonProcessingException e) {
-                throw UserException.error("Could not read property {}", EDUCATION_FIELD, e);
-            }
-        }
-        return null;
-    }
-
     private static Boolean safelyConvertToBoolean(AttributeValue value) {
         return isNull(value) ? null : value.getBOOL();
     }
@@ -164,4 +169,67 @@ public class UserMapper {
     private static boolean isNull(AttributeValue attributeValue) {
         return attributeValue == null || (attributeValue.isNULL() != null && attributeValue.isNULL());
     }
+
+    private static final class ItemUser extends LazyUser<AttributeValue> {
+
+        private ItemUser(Map<String, AttributeValue> item) {
+            super(item);
+        }
+
+        @Override
+        protected UUID decodeId(AttributeValue value) {
+            return safelyConvertToUUID(value);
+        }
+
+        @Override
+        protected String decodeString(AttributeValue value) {
+            return safelyConvertToString(value);
+        }
+
+        @Override
+        protected Integer decodeInteger(AttributeValue value) {
+            return safelyConvertToInteger(value);
+        }
+
+        @Override
+        protected Address decodeAddress(AttributeValue value) {
+            return mapToAddress(value);
+        }
+
+        @Override
+        protected Education decodeEducation(AttributeValue value) {
+            return EducationCodec.decode(value);
+        }
+
+        @Override
+        protected Boolean decodeBoolean(AttributeValue value) {
+            return safelyConvertToBoolean(value);
+        }
+
+        @Override
+        protected Gender decodeGender(AttributeValue value) {
+            return safelyConvertToGender(value);
+        }
+        @Override
+        protected long size(AttributeValue value) {
+            if (value.getS() != null) {
+                return value.getS().length();
+            }
+            if (value.getN() != null) {
+                return value.getN().length();
+            }
+            if (value.getM() != null) {
+                long size = DOCUMENT_OVERHEAD;
+                for (Map.Entry<String, AttributeValue> attribute : value.getM().entrySet()) {
+                    size += attribute.getKey().length() + size(attribute.getValue());
+                }
+                return size;
+            }
+            if (value.getL() != null) {
+                return DOCUMENT_OVERHEAD + value.getL().stream().mapToLong(this::size).sum();
+            }
+            //a boolean or null
+            return 1;
+        }
+    }
 }
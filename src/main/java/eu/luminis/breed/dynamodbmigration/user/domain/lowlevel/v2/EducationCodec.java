@@ -0,0 +1,58 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_PRIMARY_SCHOOL_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_SECONDARY_SCHOOL_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_UNIVERSITY_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
+
+/**
+ * Encodes an education as a map of its schools, each encoded like the address of a user, instead of as a JSON string.
+ * That saves a Jackson round trip on every write and read, and lets a projection select a school. Items that were
+ * written with the JSON string still decode.
+ */
+public final class EducationCodec {
+
+    private EducationCodec() {
+    }
+
+    public static AttributeValue encode(Education education) {
+        final Map<String, AttributeValue> schools = new HashMap<>();
+        Optional.ofNullable(education.getPrimarySchool()).ifPresent(value -> schools.put(EDUCATION_PRIMARY_SCHOOL_FIELD, AttributeValue.builder().m(UserMapper.safelyConvertToMap(value)).build()));
+        Optional.ofNullable(education.getSecondarySchool()).ifPresent(value -> schools.put(EDUCATION_SECONDARY_SCHOOL_FIELD, AttributeValue.builder().m(UserMapper.safelyConvertToMap(value)).build()));
+        Optional.ofNullable(education.getUniversity()).ifPresent(value -> schools.put(EDUCATION_UNIVERSITY_FIELD, AttributeValue.builder().m(UserMapper.safelyConvertToMap(value)).build()));
+        return AttributeValue.builder().m(schools).build();
+    }
+
+    public static Education decode(AttributeValue attributeValue) {
+        if (attributeValue == null) {
+            return null;
+        }
+        if (attributeValue.hasM()) {
+            final Map<String, AttributeValue> schools = attributeValue.m();
+            return Education.builder()
+                    .primarySchool(UserMapper.mapToAddress(schools.get(EDUCATION_PRIMARY_SCHOOL_FIELD)))
+                    .secondarySchool(UserMapper.mapToAddress(schools.get(EDUCATION_SECONDARY_SCHOOL_FIELD)))
+                    .university(UserMapper.mapToAddress(schools.get(EDUCATION_UNIVERSITY_FIELD)))
+                    .build();
+        }
+        //written before the education was a map
+        if (attributeValue.s() != null) {
+            try {
+                return OBJECT_MAPPER.readValue(attributeValue.s(), Education.class);
+            } catch (JsonProcessingException e) {
+                throw UserException.error("Could not read property {}", EDUCATION_FIELD, e);
+            }
+        }
+        return null;
+    }
+}
@@ -1,7 +1,8 @@
 package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.LazyUser;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpression;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpressionTemplates;
 import eu.luminis.breed.dynamodbmigration.user.model.Address;
 import eu.luminis.breed.dynamodbmigration.user.model.Education;
 import eu.luminis.breed.dynamodbmigration.user.model.Gender;
@@ -19,7 +20,7 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.*;
-import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
+import static eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpressionTemplates.*;
 import static java.util.Map.entry;
 
 public class UserMapper {
@@ -36,7 +37,7 @@ public class UserMapper {
         Optional.ofNullable(user.getLastName()).ifPresent(value -> item.put(LAST_NAME_FIELD, AttributeValue.builder().s(value).build()));
         Optional.ofNullable(user.getAge()).ifPresent(value -> item.put(AGE_FIELD, AttributeValue.builder().n(String.valueOf(value)).build()));
         Optional.ofNullable(user.getAddress()).ifPresent(value -> item.put(ADDRESS_FIELD, AttributeValue.builder().m(safelyConvertToMap(value)).build()));
-        Optional.ofNullable(user.getEducation()).ifPresent(value -> item.put(EDUCATION_FIELD, AttributeValue.builder().s(safelyConvertToString(value)).build()));
+        Optional.ofNullable(user.getEducation()).ifPresent(value -> item.put(EDUCATION_FIELD, EducationCodec.encode(value)));
         Optional.ofNullable(user.getIsAdmin()).ifPresent(value -> item.put(IS_ADMIN_FIELD, AttributeValue.builder().bool(value).build()));
         Optional.ofNullable(user.getGender()).ifPresent(value -> item.put(GENDER_FIELD, AttributeValue.builder().s(String.valueOf(value)).build()));
         //as this method is always used for saving/updating, always change last modified to now
@@ -52,23 +53,44 @@ public class UserMapper {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    public static Map<String, AttributeValue> attributeValue(User user) {
-        return mapToItem(user, false)
-                .entrySet()
-                .stream()
-                .map(entry -> entry(":" + entry.getKey(), entry.getValue()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-    }
-
-    public static String getUpdateExpression(User user) {
-        final Map<String, AttributeValue> attributeUpdates = mapToItem(user, false);
-        final StringBuilder updateExpression = new StringBuilder();
-        updateExpression.append("SET ");
-        for (Map.Entry<String, AttributeValue> stringAttributeValueUpdateEntry : attributeUpdates.entrySet()) {
-            updateExpression.append(stringAttributeValueUpdateEntry.getKey()).append("=:").append(stringAttributeValueUpdateEntry.getKey()).append(", ");
+    /**
+     * The SET expression and its values that update the fields of the user that are not null, and lastModified, in one
+     * pass over the user.
+     */
+    public static UpdateExpression<AttributeValue> updateExpression(User user) {
+        final Map<String, AttributeValue> values = new HashMap<>();
+        int fields = 0;
+        if (user.getFirstName() != null) {
+            fields |= UpdateExpressionTemplates.FIRST_NAME;
+            values.put(FIRST_NAME_VALUE, AttributeValue.builder().s(user.getFirstName()).build());
+        }
+        if (user.getLastName() != null) {
+            fields |= UpdateExpressionTemplates.LAST_NAME;
+            values.put(LAST_NAME_VALUE, AttributeValue.builder().s(user.getLastName()).build());
         }
-        updateExpression.deleteCharAt(updateExpression.lastIndexOf(","));
-        return updateExpression.toString();
+        if (user.getAge() != null) {
+            fields |= UpdateExpressionTemplates.AGE;
+            values.put(AGE_VALUE, AttributeValue.builder().n(String.valueOf(user.getAge())).build());
+        }
+        if (user.getAddress() != null) {
+            fields |= UpdateExpressionTemplates.ADDRESS;
+            values.put(ADDRESS_VALUE, AttributeValue.builder().m(safelyConvertToMap(user.getAddress())).build());
+        }
+        if (user.getEducation() != null) {
+            fields |= UpdateExpressionTemplates.EDUCATION;
+            values.put(EDUCATION_VALUE, EducationCodec.encode(user.getEducation()));
+        }
+        if (user.getIsAdmin() != null) {
+            fields |= UpdateExpressionTemplates.IS_ADMIN;
+            values.put(IS_ADMIN_VALUE, AttributeValue.builder().bool(user.getIsAdmin()).build());
+        }
+        if (user.getGender() != null) {
+            fields |= UpdateExpressionTemplates.GENDER;
+            values.put(GENDER_VALUE, AttributeValue.builder().s(String.valueOf(user.getGender())).build());
+        }
+        //as an update always changes last modified to now
+        values.put(LAST_MODIFIED_VALUE, AttributeValue.builder().s(String.valueOf(TimeMachine.now())).build());
+        return UpdateExpression.of(UpdateExpressionTemplates.updateExpression(fields), values);
     }
 
     public static User mapToUser(GetItemResponse response) {
@@ -79,20 +101,30 @@ public class UserMapper {
         return mapToUser(item);
     }
 
+    /**
+     * The key to continue a scan after the user with the id, or {@code null} to start at the beginning of the table.
+     */
+    public static Map<String, AttributeValue> exclusiveStartKey(UUID id) {
+        return id == null ? null : Map.of(ID_FIELD, AttributeValue.builder().s(id.toString()).build());
+    }
+
+    //a key of the last name index also has the key of the table
+    public static Map<String, AttributeValue> exclusiveStartKey(UUID id, String lastName) {
+        return id == null ? null : Map.of(ID_FIELD, AttributeValue.builder().s(id.toString()).build(), LAST_NAME_FIELD, AttributeValue.builder().s(lastName).build());
+    }
+
+    public static UUID lastEvaluatedId(Map<String, AttributeValue> lastEvaluatedKey) {
+        return lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : UUID.fromString(lastEvaluatedKey.get(ID_FIELD).s());
+    }
+
+    /**
+     * A user that decodes the attributes of the item when they are read, see {@link LazyUser}.
+     */
     public static User mapToUser(Map<String, AttributeValue> item) {
-        return User.builder()
-                .id(safelyConvertToUUID(item.get(ID_FIELD)))
-                .firstName(safelyConvertToString(item.get(FIRST_NAME_FIELD)))
-                .lastName(safelyConvertToString(item.get(LAST_NAME_FIELD)))
-                .age(safelyConvertToInteger(item.get(AGE_FIELD)))
-                .address(mapToAddress(item))
-                .education(mapToEducation(item.get(EDUCATION_FIELD)))
-                .isAdmin(safelyConvertToBoolean(item.get(IS_ADMIN_FIELD)))
-                .gender(safelyConvertToGender(item.get(GENDER_FIELD)))
-                .build();
-    }
-
-    private static Map<String, AttributeValue> safelyConvertToMap(Address address) {
+        return new ItemUser(item);
+    }
+
+    static Map<String, AttributeValue> safelyConvertToMap(Address address) {
         Map<String, AttributeValue> attributeValueMap = new HashMap<>();
         Optional.ofNullable(address.getCountry()).ifPresent(value -> attributeValueMap.put(ADDRESS_COUNTRY_FIELD, AttributeValue.builder().s(value).build()));
         Optional.ofNullable(address.getProvince()).ifPresent(value -> attributeValueMap.put(ADDRESS_PROVINCE_FIELD, AttributeValue.builder().s(value).build()));
@@ -103,8 +135,7 @@ public class UserMapper {
         return attributeValueMap;
     }
 
-    private static Address mapToAddress(Map<String, AttributeValue> item) {
-        final AttributeValue attributeValue = item.get(ADDRESS_FIELD);
+    static Address mapToAddress(AttributeValue attributeValue) {
         if (attributeValue != null && attributeValue.m() != null) {
             final Map<String, AttributeValue> attributeValueM = attributeValue.m();
             return Address.builder()
@@ -119,28 +150,6 @@ public class UserMapper {
         return null;
     }
 
-    private static Education mapToEducation(AttributeValue attributeValue) {
-        if (attributeValue != null && attributeValue.s() != null) {
-            try {
-                OBJECT_MAPPER.readValue(attributeValue.s(), Education.class);
-            } catch (JsonProcessingException e) {
-                throw UserException.error("Could not read property {}", EDUCATION_FIELD, e);
-            }
-        }
-        return null;
-    }
-
-    private static String safelyConvertToString(Education education) {
-        if (education != null) {
-            try {
-                return OBJECT_MAPPER.writeValueAsString(education);
-            } catch (JsonProcessingException e) {
-                throw UserException.error("Could not convert {} to String.", EDUCATION_FIELD, e);
-            }
-        }
-        return null;
-    }
-
     private static Boolean safelyConvertToBoolean(AttributeValue value) {
         return isNull(value) ? null : value.bool();
     }
@@ -164,4 +173,67 @@ public class UserMapper {
     private static boolean isNull(AttributeValue attributeValue) {
         return attributeValue == null || (attributeValue.nul() != null && attributeValue.nul());
     }
+
+    private static final class ItemUser extends LazyUser<AttributeValue> {
+
+        private ItemUser(Map<String, AttributeValue> item) {
+            super(item);
+        }
+
+        @Override
+        protected UUID decodeId(AttributeValue value) {
+            return safelyConvertToUUID(value);
+        }
+
+        @Override
+        protected String decodeString(AttributeValue value) {
+            return safelyConvertToString(value);
+        }
+
+        @Override
+        protected Integer decodeInteger(AttributeValue value) {
+            return safelyConvertToInteger(value);
+        }
+
+        @Override
+        protected Address decodeAddress(AttributeValue value) {
+            return mapToAddress(value);
+        }
+
+        @Override
+        protected Education decodeEducation(AttributeValue value) {
+            return EducationCodec.decode(value);
+        }
+
+        @Override
+        protected Boolean decodeBoolean(AttributeValue value) {
+            return safelyConvertToBoolean(value);
+        }
+
+        @Override
+        protected Gender decodeGender(AttributeValue value) {
+            return safelyConvertToGender(value);
+        }
+        @Override
+        protected long size(AttributeValue value) {
+            if (value.s() != null) {
+                return value.s().length();
+            }
+            if (value.n() != null) {
+                return value.n().length();
+            }
+            if (value.hasM()) {
+                long size = DOCUMENT_OVERHEAD;
+                for (Map.Entry<String, AttributeValue> attribute : value.m().entrySet()) {
+                    size += attribute.getKey().length() + size(attribute.getValue());
+                }
+                return size;
+            }
+            if (value.hasL()) {
+                return DOCUMENT_OVERHEAD + value.l().stream().mapToLong(this::size).sum();
+            }
+            //a boolean or null
+            return 1;
+        }
+    }
 }
@@ -30,6 +30,13 @@ public class UserException extends RuntimeException {
         }
     }
 
+    /**
+     * Whether the request of the client was invalid, rather than the application failing to handle it.
+     */
+    public boolean isClientError() {
+        return isClientError;
+    }
+
     public static UserException errorIdIsNull(){
         return new UserException("Id of user may not be null");
     }
@@ -58,7 +65,7 @@ public class UserException extends RuntimeException {
         if(replacingObjects != null && replacingObjects.length > 0) {
             var stringToReturn = originalMessage;
             for (var i = 0; i < replacingObjects.length; i++) {
-                stringToReturn = originalMessage.replaceFirst("\\{}", "{" + i + "}");
+                stringToReturn = stringToReturn.replaceFirst("\\{}", "{" + i + "}");
             }
             return MessageFormat.format(stringToReturn, replacingObjects);
         }
@@ -0,0 +1,12 @@
+package eu.luminis.breed.dynamodbmigration.user.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value(staticConstructor = "of")
+public class PagedUsers {
+    List<User> users;
+    //null on the last page
+    String nextPageToken;
+}
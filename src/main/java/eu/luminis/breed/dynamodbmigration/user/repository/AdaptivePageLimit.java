@@ -0,0 +1,137 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.LazyUser;
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_CITY_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_COUNTRY_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_NUMBER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_PROVINCE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_STREET_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_ZIPCODE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.AGE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_PRIMARY_SCHOOL_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_SECONDARY_SCHOOL_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_UNIVERSITY_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.FIRST_NAME_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.GENDER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.IS_ADMIN_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
+/**
+ * Chooses the Limit of the pages of one scan or query, so a read that is cut short does not read, and pay for, pages of
+ * 1 MB it does not need. The first page is small and every next page twice as large, but never larger than the users
+ * the subscriber still asked for. Once the pages would hold more users than fit in 1 MB at the average size of the
+ * users read so far, the Limit is left out, as DynamoDB then ends the page anyway.
+ * <p>
+ * One instance per read, it keeps track of what that read asked for and got.
+ */
+public final class AdaptivePageLimit {
+
+    //small enough for a first page that is cut short, large enough to not need many round trips to grow
+    static final int INITIAL_LIMIT = 100;
+    //fewer users per page only adds round trips
+    static final int MIN_LIMIT = 25;
+    //DynamoDB ends a page at 1 MB of evaluated items, whatever the Limit
+    static final long MAX_PAGE_BYTES = 1024 * 1024;
+    //per attribute: type, and for documents the length of the map or list
+    private static final int ATTRIBUTE_OVERHEAD = 3;
+
+    private long growthLimit = INITIAL_LIMIT;
+    //users the subscriber asked for and were not read yet, negative while it did not ask for any
+    private long demand = -1;
+    private long users;
+    private long userBytes;
+
+    /**
+     * Adds to the number of users the subscriber asks for, as in {@link org.reactivestreams.Subscription#request}.
+     * Without any request only the page growth limits the pages, as for a {@link java.util.stream.Stream}.
+     */
+    public synchronized void requested(long n) {
+        final long current = Math.max(demand, 0);
+        demand = n > Long.MAX_VALUE - current ? Long.MAX_VALUE : current + n;
+    }
+
+    /**
+     * @return the Limit of the next page, or {@code null} for as many users as fit in a page
+     */
+    public synchronized Integer next() {
+        long limit = growthLimit;
+        if (demand >= 0) {
+            limit = Math.min(limit, Math.max(demand, MIN_LIMIT));
+        }
+        if (users > 0 && limit * ((double) userBytes / users) >= MAX_PAGE_BYTES) {
+            return null;
+        }
+        return (int) limit;
+    }
+
+    /**
+     * Takes the users of a page into account for the next Limit.
+     *
+     * @return the page
+     */
+    public synchronized UserPage read(UserPage page) {
+        users += page.getUsers().size();
+        for (User user : page.getUsers()) {
+            userBytes += size(user);
+        }
+        if (demand > 0 && demand != Long.MAX_VALUE) {
+            demand = Math.max(demand - page.getUsers().size(), 0);
+        }
+        growthLimit = Math.min(growthLimit * 2, Integer.MAX_VALUE);
+        return page;
+    }
+
+    //estimate of the size of the item in DynamoDB, the names of the attributes count as well
+    static long size(User user) {
+        //taken from the item of a lazy user, as reading its fields would decode all of them
+        if (user instanceof LazyUser) {
+            return ((LazyUser<?>) user).itemSize();
+        }
+        return size(ID_FIELD, user.getId() == null ? null : 36)
+                + size(FIRST_NAME_FIELD, user.getFirstName())
+                + size(LAST_NAME_FIELD, user.getLastName())
+                + size(AGE_FIELD, user.getAge() == null ? null : String.valueOf(user.getAge()))
+                + size(ADDRESS_FIELD, user.getAddress())
+                + size(EDUCATION_FIELD, user.getEducation())
+                + size(IS_ADMIN_FIELD, user.getIsAdmin() == null ? null : 1)
+                + size(GENDER_FIELD, user.getGender() == null ? null : user.getGender().name());
+    }
+
+    private static long size(String name, Education education) {
+        if (education == null) {
+            return 0;
+        }
+        return name.length() + ATTRIBUTE_OVERHEAD
+                + size(EDUCATION_PRIMARY_SCHOOL_FIELD, education.getPrimarySchool())
+                + size(EDUCATION_SECONDARY_SCHOOL_FIELD, education.getSecondarySchool())
+                + size(EDUCATION_UNIVERSITY_FIELD, education.getUniversity());
+    }
+
+    private static long size(String name, Address address) {
+        if (address == null) {
+            return 0;
+        }
+        return name.length() + ATTRIBUTE_OVERHEAD
+                + size(ADDRESS_COUNTRY_FIELD, address.getCountry())
+                + size(ADDRESS_PROVINCE_FIELD, address.getProvince())
+                + size(ADDRESS_CITY_FIELD, address.getCity())
+                + size(ADDRESS_STREET_FIELD, address.getStreet())
+                + size(ADDRESS_NUMBER_FIELD, address.getNumber() == null ? null : String.valueOf(address.getNumber()))
+                + size(ADDRESS_ZIPCODE_FIELD, address.getZipCode());
+    }
+
+    private static long size(String name, String value) {
+        return value == null ? 0 : size(name, value.length());
+    }
+
+    private static long size(String name, Integer valueBytes) {
+        return valueBytes == null ? 0 : name.length() + valueBytes;
+    }
+}
@@ -0,0 +1,44 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Creates a {@link Stream} of pages that only fetches a page when the stream needs it, starting at the first page.
+ */
+final class LazyPages {
+
+    private LazyPages() {
+    }
+
+    /**
+     * @param firstPage fetches the first page
+     * @param nextPage  fetches the page after the given one, or returns null when there are no more pages
+     */
+    static <P> Stream<P> stream(Supplier<P> firstPage, UnaryOperator<P> nextPage) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<P>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private P currentPage;
+            private boolean started;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super P> action) {
+                if (!started) {
+                    started = true;
+                    currentPage = firstPage.get();
+                } else if (currentPage != null) {
+                    currentPage = nextPage.apply(currentPage);
+                }
+                if (currentPage == null) {
+                    return false;
+                }
+                action.accept(currentPage);
+                return true;
+            }
+        }, false);
+    }
+}
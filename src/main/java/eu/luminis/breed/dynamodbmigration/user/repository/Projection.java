@@ -0,0 +1,96 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.AGE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.FIRST_NAME_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.GENDER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.IS_ADMIN_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
+/**
+ * The top level fields of the users a read returns. DynamoDB only sends these attributes back, so the other fields of
+ * the users are null. The id is always part of it, as reads by id match the users they get back on it.
+ */
+@EqualsAndHashCode
+@ToString
+public final class Projection {
+
+    //in the order of the user, so the same fields always give the same expression
+    private static final List<String> FIELDS = List.of(ID_FIELD, FIRST_NAME_FIELD, LAST_NAME_FIELD, AGE_FIELD, ADDRESS_FIELD,
+            EDUCATION_FIELD, IS_ADMIN_FIELD, GENDER_FIELD);
+    private static final Projection ALL = new Projection(List.of());
+
+    //empty for all attributes
+    private final List<String> fields;
+
+    private Projection(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public static Projection all() {
+        return ALL;
+    }
+
+    /**
+     * @param fields names of the fields of the user, all fields when there are none
+     */
+    public static Projection of(Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return ALL;
+        }
+        final List<String> unknownFields = fields.stream()
+                .filter(field -> !FIELDS.contains(field))
+                .collect(Collectors.toList());
+        if (!unknownFields.isEmpty()) {
+            throw UserException.clientError("Unknown fields {}, should be one of {}", unknownFields, FIELDS);
+        }
+        return new Projection(FIELDS.stream()
+                .filter(field -> ID_FIELD.equals(field) || fields.contains(field))
+                .collect(Collectors.toList()));
+    }
+
+    public boolean isAll() {
+        return fields.isEmpty();
+    }
+
+    /**
+     * The attributes to project, or {@code null} for all of them.
+     */
+    public List<String> getAttributes() {
+        return isAll() ? null : fields;
+    }
+
+    /**
+     * The ProjectionExpression, or {@code null} for all attributes. It only has placeholders, as some fields may be
+     * reserved words.
+     */
+    public String getExpression() {
+        return isAll() ? null : fields.stream()
+                .map(Projection::placeholder)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * The ExpressionAttributeNames of the placeholders in the expression, or {@code null} for all attributes.
+     */
+    public Map<String, String> getExpressionAttributeNames() {
+        return isAll() ? null : fields.stream()
+                .collect(Collectors.toMap(Projection::placeholder, Function.identity()));
+    }
+
+    private static String placeholder(String field) {
+        return "#" + field;
+    }
+}
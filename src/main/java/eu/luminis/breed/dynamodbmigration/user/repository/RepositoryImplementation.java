@@ -0,0 +1,57 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The implementations of the synchronous and async repositories, by the SDK and API they use. Only the selected
+ * implementations are created, so the clients, HTTP stacks and mapper metadata of the others are never built.
+ */
+public enum RepositoryImplementation {
+    SDK1_LOW_LEVEL("sdk1-low-level"),
+    SDK1_HIGH_LEVEL("sdk1-high-level"),
+    SDK2_LOW_LEVEL("sdk2-low-level"),
+    SDK2_HIGH_LEVEL("sdk2-high-level");
+
+    private final String name;
+
+    RepositoryImplementation(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static Set<RepositoryImplementation> select(List<String> names) {
+        final Set<RepositoryImplementation> implementations = EnumSet.noneOf(RepositoryImplementation.class);
+        for (String name : names) {
+            implementations.add(Arrays.stream(values())
+                    .filter(implementation -> implementation.name.equals(name.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> UserException.error("Unknown repository implementation {}, expected one of {}", name,
+                            Arrays.stream(values()).map(RepositoryImplementation::getName).collect(Collectors.toList()))));
+        }
+        if (implementations.isEmpty()) {
+            throw UserException.error("No repository implementation selected");
+        }
+        return implementations;
+    }
+
+    /**
+     * Creates the repositories of the selected implementations in the order of this enum, the factories of the other
+     * implementations are not called.
+     */
+    public static <T> Stream<T> create(Set<RepositoryImplementation> implementations, Map<RepositoryImplementation, Supplier<T>> factories) {
+        return implementations.stream()
+                .map(implementation -> factories.get(implementation).get());
+    }
+}
@@ -0,0 +1,82 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the segments of a parallel scan (see Segment/TotalSegments of the Scan API) on a bounded worker pool that is shared
+ * by all sync repositories. Segments beyond the pool size are queued, so a high segment count never results in more
+ * concurrent requests than the pool allows.
+ */
+final class SegmentedScan {
+
+    //maximum allowed by AWS for TotalSegments
+    static final int MAX_TOTAL_SEGMENTS = 1_000_000;
+    private static final int MAX_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final ExecutorService WORKERS = createWorkers();
+
+    private SegmentedScan() {
+    }
+
+    static <T> List<T> scan(int totalSegments, IntFunction<List<T>> segmentScanner) {
+        if (totalSegments < 1 || totalSegments > MAX_TOTAL_SEGMENTS) {
+            throw UserException.clientError("Total segments should be between 1 and {}, but was {}", MAX_TOTAL_SEGMENTS, totalSegments);
+        }
+        if (totalSegments == 1) {
+            return segmentScanner.apply(0);
+        }
+        final List<Future<List<T>>> segments = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            final int currentSegment = segment;
+            segments.add(WORKERS.submit(() -> segmentScanner.apply(currentSegment)));
+        }
+        final List<T> results = new ArrayList<>();
+        try {
+            for (int segment = 0; segment < totalSegments; segment++) {
+                results.addAll(getSegment(segments.get(segment), segment, totalSegments));
+            }
+            return results;
+        } finally {
+            //when one segment failed, there is no point in letting the others continue
+            segments.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static <T> List<T> getSegment(Future<List<T>> future, int segment, int totalSegments) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw UserException.error("Interrupted while scanning segment {} of {}", segment, totalSegments, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UserException) {
+                throw (UserException) e.getCause();
+            }
+            throw UserException.error("Something went wrong when scanning segment {} of {}", segment, totalSegments, e.getCause());
+        }
+    }
+
+    private static ExecutorService createWorkers() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "dynamodb-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,17 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import lombok.Value;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The users of one Scan or Query call, and the id of the last user it evaluated when there may be more users.
+ */
+@Value(staticConstructor = "of")
+public class UserPage {
+    List<User> users;
+    //null on the last page
+    UUID lastEvaluatedId;
+}
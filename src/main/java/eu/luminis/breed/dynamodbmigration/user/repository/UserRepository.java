@@ -5,17 +5,64 @@ import eu.luminis.breed.dynamodbmigration.user.model.User;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface UserRepository {
     User createOrUpdateUser(User user);
 
-    Optional<User> getUserById(UUID id);
+    /**
+     * Writes the users in batches, users without an id get a new one. Of users with the same id only the last one is written.
+     */
+    List<User> createOrUpdateUsers(List<User> users);
 
-    List<User> findAll();
+    default Optional<User> getUserById(UUID id) {
+        return getUserById(id, Projection.all());
+    }
 
-    List<User> findByIds(List<UUID> ids);
+    /**
+     * Only reads the fields of the projection, the other fields of the user are null. Same for the other reads with a projection.
+     */
+    Optional<User> getUserById(UUID id, Projection projection);
 
-    List<User> findByLastName(String lastName);
+    default List<User> findAll() {
+        return findAll(Projection.all());
+    }
+
+    List<User> findAll(Projection projection);
+
+    default List<User> findAll(int totalSegments) {
+        return findAll(totalSegments, Projection.all());
+    }
+
+    List<User> findAll(int totalSegments, Projection projection);
+
+    /**
+     * Scans a single page of at most the page size, so that its latency does not depend on the size of the table. The
+     * page starts after the user with the exclusive start id, or at the start of the table when that is null.
+     */
+    UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection);
+
+    /**
+     * Lazily scans all users; a page is only fetched when the stream reaches it. The stream should be closed after use.
+     */
+    Stream<User> streamAll();
+
+    default List<User> findByIds(List<UUID> ids) {
+        return findByIds(ids, Projection.all());
+    }
+
+    List<User> findByIds(List<UUID> ids, Projection projection);
+
+    default List<User> findByLastName(String lastName) {
+        return findByLastName(lastName, Projection.all());
+    }
+
+    List<User> findByLastName(String lastName, Projection projection);
+
+    /**
+     * Queries a single page of the users with the last name, like {@link #findPage}.
+     */
+    UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection);
 
     void updateUser(User user);
 
@@ -8,19 +8,36 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.KeyPair;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.User;
 import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserNotUpdatedException;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_MODIFIED_EXPRESSION;
 import static eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.UserMapper.MAPPER;
 
@@ -29,23 +46,24 @@ public class UserRepositoryDynamoDBSDK1HighLevelImpl implements UserRepository {
 
     private final DynamoDBMapper dynamoDBMapper;
     private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
     private AmazonDynamoDB amazonDynamoDB;
 
-    public UserRepositoryDynamoDBSDK1HighLevelImpl(String tableName) {
-        this.tableName = tableName;
-        this.amazonDynamoDB = AmazonDynamoDBClientBuilder.defaultClient();
-        this.dynamoDBMapper = new DynamoDBMapper(
-                amazonDynamoDB,
-                DynamoDBMapperConfig
-                        .builder()
-                        .withTableNameOverride(new DynamoDBMapperConfig.TableNameOverride(this.tableName))
-                        .build());
+    public UserRepositoryDynamoDBSDK1HighLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.defaultClient(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserRepositoryDynamoDBSDK1HighLevelImpl(String tableName, String serviceEndpoint) {
-        this.amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
+    public UserRepositoryDynamoDBSDK1HighLevelImpl(String tableName, String serviceEndpoint, BatchGetOptions batchGetOptions,
+                                                   BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.standard()
                 .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, null))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserRepositoryDynamoDBSDK1HighLevelImpl(String tableName, AmazonDynamoDB amazonDynamoDB, BatchGetOptions batchGetOptions,
+                                                   BatchWriteOptions batchWriteOptions) {
+        this.amazonDynamoDB = amazonDynamoDB;
         this.tableName = tableName;
         this.dynamoDBMapper = new DynamoDBMapper(
                 amazonDynamoDB,
@@ -53,9 +71,10 @@ public class UserRepositoryDynamoDBSDK1HighLevelImpl implements UserRepository {
                         .builder()
                         .withTableNameOverride(new DynamoDBMapperConfig.TableNameOverride(this.tableName))
                         .build());
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
     }
 
-
     @Override
     public eu.luminis.breed.dynamodbmigration.user.model.User createOrUpdateUser(eu.luminis.breed.dynamodbmigration.user.model.User user) {
         if (user == null) {
@@ -71,51 +90,163 @@ public class UserRepositoryDynamoDBSDK1HighLevelImpl implements UserRepository {
     }
 
     @Override
-    public Optional<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id) {
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> createOrUpdateUsers(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        users.stream()
+                .filter(user -> user.getId() == null)
+                .forEach(user -> user.setId(UUID.randomUUID()));
+        return batchWritePipeline.execute(users, eu.luminis.breed.dynamodbmigration.user.model.User::getId, this::batchWrite);
+    }
+
+    private List<eu.luminis.breed.dynamodbmigration.user.model.User> batchWrite(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        //the mapper does not retry itself, so unprocessed items come back as a failed batch and are retried by the pipeline
+        final List<DynamoDBMapper.FailedBatch> failedBatches = dynamoDBMapper.batchWrite(users.stream()
+                .map(MAPPER::userToMapperUser)
+                .collect(Collectors.toList()), List.of(), DynamoDBMapperConfig.builder()
+                .withBatchWriteRetryStrategy(batchWritePipeline.noMapperRetries())
+                .build());
+        final Set<String> unprocessedIds = new HashSet<>();
+        for (DynamoDBMapper.FailedBatch failedBatch : failedBatches) {
+            if (failedBatch.getException() != null) {
+                throw UserException.error("Could not create or update all users", failedBatch.getException());
+            }
+            failedBatch.getUnprocessedItems().getOrDefault(tableName, List.of())
+                    .forEach(writeRequest -> unprocessedIds.add(writeRequest.getPutRequest().getItem().get(ID_FIELD).getS()));
+        }
+        return users.stream()
+                .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         try {
-            final var userMapper = dynamoDBMapper.load(User.class, id);
-            return Optional.ofNullable(userMapper).map(MAPPER::mapperUserToUser);
+            if (projection.isAll()) {
+                final var userMapper = dynamoDBMapper.load(User.class, id);
+                return Optional.ofNullable(userMapper).map(MAPPER::mapperUserToUser);
+            }
+            //the mapper can not load a projection, so it only maps the item
+            final Map<String, AttributeValue> item = amazonDynamoDB.getItem(new GetItemRequest(tableName, Map.of(ID_FIELD, new AttributeValue(id.toString())))
+                    .withProjectionExpression(projection.getExpression())
+                    .withExpressionAttributeNames(projection.getExpressionAttributeNames()))
+                    .getItem();
+            return Optional.ofNullable(item)
+                    .map(attributes -> dynamoDBMapper.marshallIntoObject(User.class, attributes))
+                    .map(MAPPER::mapperUserToUser);
         } catch (Exception e) {
-            log.error("Unable to retrieve data for id {}", id, e);
+            throw UserException.error("Unable to retrieve data for id {}", id, e);
         }
-        return Optional.empty();
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll() {
-        return dynamoDBMapper.scan(User.class, new DynamoDBScanExpression())
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(Projection projection) {
+        return dynamoDBMapper.scan(User.class, scanExpression(projection))
                 .stream()
                 .map(MAPPER::mapperUserToUser)
                 .collect(Collectors.toList());
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids) {
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(int totalSegments, Projection projection) {
+        //the mapper has a parallelScan, but that creates a thread pool per call; scanning the pages ourselves keeps it bounded
+        return SegmentedScan.scan(totalSegments, segment -> {
+            final List<eu.luminis.breed.dynamodbmigration.user.model.User> users = new ArrayList<>();
+            final DynamoDBScanExpression scanExpression = scanExpression(projection)
+                    .withSegment(segment)
+                    .withTotalSegments(totalSegments);
+            ScanResultPage<User> page;
+            do {
+                page = dynamoDBMapper.scanPage(User.class, scanExpression);
+                page.getResults().stream().map(MAPPER::mapperUserToUser).forEach(users::add);
+                scanExpression.setExclusiveStartKey(page.getLastEvaluatedKey());
+            } while (page.getLastEvaluatedKey() != null);
+            return users;
+        });
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private UserPage scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        final ScanResultPage<User> page = dynamoDBMapper.scanPage(User.class, scanExpression(projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId)));
+        return UserPage.of(page.getResults().stream().map(MAPPER::mapperUserToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(page.getLastEvaluatedKey()));
+    }
+
+    @Override
+    public Stream<eu.luminis.breed.dynamodbmigration.user.model.User> streamAll() {
+        final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+        return LazyPages.stream(() -> pageLimit.read(scanPage(pageLimit.next(), null, Projection.all())),
+                page -> page.getLastEvaluatedId() != null ? pageLimit.read(scanPage(pageLimit.next(), page.getLastEvaluatedId(), Projection.all())) : null)
+                .flatMap(page -> page.getUsers().stream());
+    }
+
+    @Override
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.execute(ids, eu.luminis.breed.dynamodbmigration.user.model.User::getId,
+                projection.isAll() ? this::batchLoad : batch -> batchGet(batch, projection));
+    }
+
+    private BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User> batchLoad(List<UUID> ids) {
         final List<KeyPair> keyPairs = ids.stream().map(id -> new KeyPair().withHashKey(id)).collect(Collectors.toList());
-        final List<Object> usersMapper = dynamoDBMapper.batchLoad(Map.of(User.class, keyPairs)).get(tableName);
-        return usersMapper
+        final List<Object> usersMapper;
+        try {
+            //the mapper retries the unprocessed keys itself, with the backoff of the pipeline
+            usersMapper = dynamoDBMapper.batchLoad(Map.of(User.class, keyPairs), DynamoDBMapperConfig.builder()
+                    .withBatchLoadRetryStrategy(batchGetPipeline.batchLoadRetryStrategy())
+                    .build())
+                    .getOrDefault(tableName, List.of());
+        } catch (DynamoDBMapper.BatchGetItemException e) {
+            throw UserException.error("Could not find all users by ids", e);
+        }
+        return BatchGetResult.of(usersMapper
                 .stream()
                 .map(User.class::cast)
                 .map(MAPPER::mapperUserToUser)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()), List.of());
+    }
+
+    //the mapper can not batch load a projection, so it only maps the items
+    private BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User> batchGet(List<UUID> ids, Projection projection) {
+        final BatchGetItemResult batchGetItemResult = amazonDynamoDB.batchGetItem(
+                new BatchGetItemRequest(Map.of(tableName, new KeysAndAttributes().withKeys(ids.stream()
+                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
+                        .collect(Collectors.toList()))
+                        .withProjectionExpression(projection.getExpression())
+                        .withExpressionAttributeNames(projection.getExpressionAttributeNames()))));
+        final KeysAndAttributes unprocessedKeys = batchGetItemResult.getUnprocessedKeys().get(tableName);
+        return BatchGetResult.of(
+                dynamoDBMapper.marshallIntoObjects(User.class, batchGetItemResult.getResponses().getOrDefault(tableName, List.of())).stream()
+                        .map(MAPPER::mapperUserToUser)
+                        .collect(Collectors.toList()),
+                unprocessedKeys == null ? List.of() : unprocessedKeys.getKeys().stream()
+                        .map(key -> UUID.fromString(key.get(ID_FIELD).getS()))
+                        .collect(Collectors.toList()));
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName) {
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName("lastNameIndex")
-                .withConsistentRead(false)
-                .withHashKeyValues(User.builder().lastName(lastName)
-                        .build());
-        return dynamoDBMapper.query(User.class, queryExpression)
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName, Projection projection) {
+        return dynamoDBMapper.query(User.class, lastNameIndexQuery(lastName, projection))
                 .stream()
                 .map(MAPPER::mapperUserToUser)
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        final QueryResultPage<User> page = dynamoDBMapper.queryPage(User.class, lastNameIndexQuery(lastName, projection)
+                .withLimit(pageSize)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName)));
+        return UserPage.of(page.getResults().stream().map(MAPPER::mapperUserToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(page.getLastEvaluatedKey()));
+    }
+
     @Override
     public void updateUser(eu.luminis.breed.dynamodbmigration.user.model.User user) {
         try {
@@ -153,4 +284,20 @@ public class UserRepositoryDynamoDBSDK1HighLevelImpl implements UserRepository {
             throw UserException.error("Something went wrong when trying to delete user with id {}", id, e);
         }
     }
+
+    private static DynamoDBScanExpression scanExpression(Projection projection) {
+        return new DynamoDBScanExpression()
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
+    }
+
+    private static DynamoDBQueryExpression<User> lastNameIndexQuery(String lastName, Projection projection) {
+        return new DynamoDBQueryExpression<User>()
+                .withIndexName("lastNameIndex")
+                .withConsistentRead(false)
+                .withHashKeyValues(User.builder().lastName(lastName)
+                        .build())
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
+    }
 }
@@ -5,29 +5,41 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserNotUpdatedException;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.ListUtils;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_MODIFIED_EXPRESSION;
@@ -37,17 +49,26 @@ public class UserRepositoryDynamoDBSDK1LowLevelImpl implements UserRepository {
 
     private final AmazonDynamoDB amazonDynamoDBClient;
     private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
 
-    public UserRepositoryDynamoDBSDK1LowLevelImpl(String tableName) {
-        this.tableName = tableName;
-        this.amazonDynamoDBClient = AmazonDynamoDBClientBuilder.defaultClient();
+    public UserRepositoryDynamoDBSDK1LowLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.defaultClient(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserRepositoryDynamoDBSDK1LowLevelImpl(String tableName, String serviceEndpoint) {
-        this.tableName = tableName;
-        this.amazonDynamoDBClient = AmazonDynamoDBClientBuilder.standard()
+    public UserRepositoryDynamoDBSDK1LowLevelImpl(String tableName, String serviceEndpoint, BatchGetOptions batchGetOptions,
+                                                  BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.standard()
                 .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, null))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserRepositoryDynamoDBSDK1LowLevelImpl(String tableName, AmazonDynamoDB amazonDynamoDBClient, BatchGetOptions batchGetOptions,
+                                                  BatchWriteOptions batchWriteOptions) {
+        this.tableName = tableName;
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
     }
 
     @Override
@@ -70,14 +91,37 @@ public class UserRepositoryDynamoDBSDK1LowLevelImpl implements UserRepository {
     }
 
     @Override
-    public Optional<User> getUserById(final UUID id) {
+    public List<User> createOrUpdateUsers(List<User> users) {
+        users.stream()
+                .filter(user -> user.getId() == null)
+                .forEach(user -> user.setId(UUID.randomUUID()));
+        return batchWritePipeline.execute(users, User::getId, this::batchWrite);
+    }
+
+    private List<User> batchWrite(List<User> users) {
+        final BatchWriteItemResult batchWriteItemResult = amazonDynamoDBClient.batchWriteItem(
+                new BatchWriteItemRequest(Map.of(tableName, users.stream()
+                        .map(user -> new WriteRequest(new PutRequest(UserMapper.mapToItem(user, true))))
+                        .collect(Collectors.toList()))));
+        final Set<String> unprocessedIds = batchWriteItemResult.getUnprocessedItems().getOrDefault(tableName, List.of()).stream()
+                .map(writeRequest -> writeRequest.getPutRequest().getItem().get(ID_FIELD).getS())
+                .collect(Collectors.toSet());
+        return users.stream()
+                .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<User> getUserById(final UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         HashMap<String, AttributeValue> key = new HashMap<>();
         key.put(ID_FIELD, new AttributeValue(id.toString()));
 
-        var request = new GetItemRequest(tableName, key);
+        var request = new GetItemRequest(tableName, key)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
 
         try {
             GetItemResult result = amazonDynamoDBClient.getItem(request);
@@ -88,52 +132,87 @@ public class UserRepositoryDynamoDBSDK1LowLevelImpl implements UserRepository {
                 log.warn("No matching user was found");
             }
         } catch (Exception e) {
-            log.error("Unable to retrieve data for id {}", id, e);
+            throw UserException.error("Unable to retrieve data for id {}", id, e);
         }
         return Optional.empty();
     }
 
     @Override
-    public List<User> findAll() {
-        var scanResult = amazonDynamoDBClient.scan(new ScanRequest(tableName));
-        final List<User> allUsers = scanResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
-        while (scanResult.getLastEvaluatedKey() != null) {
-            scanResult = amazonDynamoDBClient.scan(new ScanRequest(tableName).withExclusiveStartKey(scanResult.getLastEvaluatedKey()));
-            scanResult.getItems().stream().map(UserMapper::mapToUser).forEach(allUsers::add);
-        }
-        return allUsers;
+    public List<User> findAll(Projection projection) {
+        return scan(() -> scanRequest(projection));
     }
 
     @Override
-    public List<User> findByIds(List<UUID> ids) {
-        //limiting to 100, because that is one of batchgetitem limits defined by AWS...
-        final List<List<UUID>> chunks = ListUtils.partition(new ArrayList<>(ids), 100);
-        return chunks.stream()
-                .map(uuids -> amazonDynamoDBClient.batchGetItem(
-                        new BatchGetItemRequest(
-                                Map.of(tableName,
-                                        new KeysAndAttributes()
-                                                .withKeys(uuids.stream()
-                                                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
-                                                        .collect(Collectors.toList()))))))
-                .flatMap(batchGetItemResult -> batchGetItemResult.getResponses().get(tableName)
-                        .stream()
-                        .map(UserMapper::mapToUser))
-                .collect(Collectors.toList());
+    public List<User> findAll(int totalSegments, Projection projection) {
+        return SegmentedScan.scan(totalSegments, segment -> scan(() -> scanRequest(projection)
+                .withSegment(segment)
+                .withTotalSegments(totalSegments)));
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private UserPage scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        final ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest(projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId)));
+        return UserPage.of(scanResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(scanResult.getLastEvaluatedKey()));
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+        return LazyPages.stream(() -> pageLimit.read(scanPage(pageLimit.next(), null, Projection.all())),
+                page -> page.getLastEvaluatedId() != null ? pageLimit.read(scanPage(pageLimit.next(), page.getLastEvaluatedId(), Projection.all())) : null)
+                .flatMap(page -> page.getUsers().stream());
     }
 
     @Override
-    public List<User> findByLastName(final String lastName) {
-        var queryRequest = getLastNameIndexQuery(lastName);
+    public List<User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.execute(ids, User::getId, batch -> batchGet(batch, projection));
+    }
+
+    private BatchGetResult<UUID, User> batchGet(List<UUID> ids, Projection projection) {
+        final BatchGetItemResult batchGetItemResult = amazonDynamoDBClient.batchGetItem(
+                new BatchGetItemRequest(Map.of(tableName, new KeysAndAttributes().withKeys(ids.stream()
+                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
+                        .collect(Collectors.toList()))
+                        .withProjectionExpression(projection.getExpression())
+                        .withExpressionAttributeNames(projection.getExpressionAttributeNames()))));
+        final KeysAndAttributes unprocessedKeys = batchGetItemResult.getUnprocessedKeys().get(tableName);
+        return BatchGetResult.of(
+                batchGetItemResult.getResponses().getOrDefault(tableName, List.of()).stream()
+                        .map(UserMapper::mapToUser)
+                        .collect(Collectors.toList()),
+                unprocessedKeys == null ? List.of() : unprocessedKeys.getKeys().stream()
+                        .map(key -> UUID.fromString(key.get(ID_FIELD).getS()))
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<User> findByLastName(final String lastName, Projection projection) {
+        var queryRequest = getLastNameIndexQuery(lastName, projection);
         QueryResult result = amazonDynamoDBClient.query(queryRequest);
         final List<User> allUsers = result.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
         while (result.getLastEvaluatedKey() != null) {
-            result = amazonDynamoDBClient.query(getLastNameIndexQuery(lastName).withExclusiveStartKey(result.getLastEvaluatedKey()));
+            result = amazonDynamoDBClient.query(getLastNameIndexQuery(lastName, projection).withExclusiveStartKey(result.getLastEvaluatedKey()));
             result.getItems().stream().map(UserMapper::mapToUser).forEach(allUsers::add);
         }
         return allUsers;
     }
 
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        final QueryResult queryResult = amazonDynamoDBClient.query(getLastNameIndexQuery(lastName, projection)
+                .withLimit(pageSize)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName)));
+        return UserPage.of(queryResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(queryResult.getLastEvaluatedKey()));
+    }
+
     @Override
     public void updateUser(final User user) {
         final var updateItemRequest = UserMapper.updateItemRequest(user, tableName);
@@ -169,12 +248,30 @@ public class UserRepositoryDynamoDBSDK1LowLevelImpl implements UserRepository {
         }
     }
 
-    private QueryRequest getLastNameIndexQuery(String lastName) {
+    private List<User> scan(Supplier<ScanRequest> scanRequest) {
+        var scanResult = amazonDynamoDBClient.scan(scanRequest.get());
+        final List<User> allUsers = scanResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
+        while (scanResult.getLastEvaluatedKey() != null) {
+            scanResult = amazonDynamoDBClient.scan(scanRequest.get().withExclusiveStartKey(scanResult.getLastEvaluatedKey()));
+            scanResult.getItems().stream().map(UserMapper::mapToUser).forEach(allUsers::add);
+        }
+        return allUsers;
+    }
+
+    private ScanRequest scanRequest(Projection projection) {
+        return new ScanRequest(tableName)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
+    }
+
+    private QueryRequest getLastNameIndexQuery(String lastName, Projection projection) {
         Map<String, AttributeValue> key = new HashMap<>();
         key.put(":lastName", new AttributeValue(lastName));
         return new QueryRequest(tableName)
                 .withKeyConditionExpression("lastName = :lastName")
                 .withIndexName("lastNameIndex")
-                .withExpressionAttributeValues(key);
+                .withExpressionAttributeValues(key)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
     }
 }
@@ -1,8 +1,15 @@
 package eu.luminis.breed.dynamodbmigration.user.repository;
 
 import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User;
+import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserTableSchema;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserNotUpdatedException;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
@@ -11,21 +18,34 @@ import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_MODIFIED_EXPRESSION;
 import static eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserMapper.MAPPER;
 
@@ -35,23 +55,33 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
     private final DynamoDbTable<User> userDynamoDbTable;
     private final DynamoDbIndex<User> userDynamoDbIndex;
     private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    //the enhanced client does not support segments for scans (yet), so a parallel scan is done with the low level client
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
 
-    public UserRepositoryDynamoDBSDK2HighLevelImpl(String tableName) {
-        dynamoDbEnhancedClient = DynamoDbEnhancedClient.create();
-        userDynamoDbTable = dynamoDbEnhancedClient.table(tableName,
-                TableSchema.fromBean(User.class));
-        userDynamoDbIndex = userDynamoDbTable.index("lastNameIndex");
+    public UserRepositoryDynamoDBSDK2HighLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbClient.create(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserRepositoryDynamoDBSDK2HighLevelImpl(String tableName, String endpoint) {
-        final var dynamoDbClient = DynamoDbClient.builder()
+    public UserRepositoryDynamoDBSDK2HighLevelImpl(String tableName, String endpoint, BatchGetOptions batchGetOptions,
+                                                   BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbClient.builder()
                 .endpointOverride(URI.create(endpoint))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserRepositoryDynamoDBSDK2HighLevelImpl(String tableName, DynamoDbClient dynamoDbClient, BatchGetOptions batchGetOptions,
+                                                   BatchWriteOptions batchWriteOptions) {
+        this.tableName = tableName;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
+        this.dynamoDbClient = dynamoDbClient;
         dynamoDbEnhancedClient = DynamoDbEnhancedClient.builder()
                 .dynamoDbClient(dynamoDbClient)
                 .build();
-        userDynamoDbTable = dynamoDbEnhancedClient.table(tableName,
-                TableSchema.fromBean(User.class));
+        userDynamoDbTable = dynamoDbEnhancedClient.table(tableName, UserTableSchema.USER_SCHEMA);
         userDynamoDbIndex = userDynamoDbTable.index("lastNameIndex");
     }
 
@@ -71,22 +101,55 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
     }
 
     @Override
-    public Optional<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id) {
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> createOrUpdateUsers(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        users.stream()
+                .filter(user -> user.getId() == null)
+                .forEach(user -> user.setId(UUID.randomUUID()));
+        return batchWritePipeline.execute(users, eu.luminis.breed.dynamodbmigration.user.model.User::getId, this::batchWrite);
+    }
+
+    private List<eu.luminis.breed.dynamodbmigration.user.model.User> batchWrite(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        final WriteBatch.Builder<User> writeBatchBuilder = WriteBatch.builder(User.class)
+                .mappedTableResource(userDynamoDbTable);
+        users
+                .stream()
+                .map(MAPPER::userToEnhancedUser)
+                .forEach(writeBatchBuilder::addPutItem);
+        return dynamoDbEnhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
+                .addWriteBatch(writeBatchBuilder.build()).build())
+                .unprocessedPutItemsForTable(userDynamoDbTable)
+                .stream()
+                .map(MAPPER::enhancedUserToUser)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         try {
-            final var item = userDynamoDbTable.getItem(Key.builder().partitionValue(id.toString()).build());
-            return Optional.ofNullable(item).map(MAPPER::enhancedUserToUser);
+            if (projection.isAll()) {
+                final var item = userDynamoDbTable.getItem(Key.builder().partitionValue(id.toString()).build());
+                return Optional.ofNullable(item).map(MAPPER::enhancedUserToUser);
+            }
+            //the enhanced client can not get a projection, so the table schema only maps the item
+            final GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of(ID_FIELD, AttributeValue.builder().s(id.toString()).build()))
+                    .projectionExpression(projection.getExpression())
+                    .expressionAttributeNames(projection.getExpressionAttributeNames())
+                    .build());
+            return response.hasItem() ?
+                    Optional.of(MAPPER.enhancedUserToUser(userDynamoDbTable.tableSchema().mapToItem(response.item()))) : Optional.empty();
         } catch (Exception e) {
-            log.error("Unable to retrieve data for id {}", id, e);
+            throw UserException.error("Unable to retrieve data for id {}", id, e);
         }
-        return Optional.empty();
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll() {
-        final PageIterable<User> scan = userDynamoDbTable.scan(ScanEnhancedRequest.builder().build());
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(Projection projection) {
+        final PageIterable<User> scan = userDynamoDbTable.scan(scanEnhancedRequest(projection).build());
         return scan.stream()
                 .flatMap(p -> p.items()
                         .stream())
@@ -95,7 +158,53 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids) {
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(int totalSegments, Projection projection) {
+        final TableSchema<User> tableSchema = userDynamoDbTable.tableSchema();
+        return SegmentedScan.scan(totalSegments, segment -> dynamoDbClient.scanPaginator(ScanRequest.builder()
+                .tableName(tableName)
+                .segment(segment)
+                .totalSegments(totalSegments)
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames())
+                .build())
+                .items()
+                .stream()
+                .map(tableSchema::mapToItem)
+                .map(MAPPER::enhancedUserToUser)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private UserPage scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        final Page<User> page = userDynamoDbTable.scan(scanEnhancedRequest(projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))
+                .build())
+                .iterator()
+                .next();
+        return UserPage.of(page.items().stream().map(MAPPER::enhancedUserToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(page.lastEvaluatedKey()));
+    }
+
+    @Override
+    public Stream<eu.luminis.breed.dynamodbmigration.user.model.User> streamAll() {
+        final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+        return LazyPages.stream(() -> pageLimit.read(scanPage(pageLimit.next(), null, Projection.all())),
+                page -> page.getLastEvaluatedId() != null ? pageLimit.read(scanPage(pageLimit.next(), page.getLastEvaluatedId(), Projection.all())) : null)
+                .flatMap(page -> page.getUsers().stream());
+    }
+
+    @Override
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.execute(ids, eu.luminis.breed.dynamodbmigration.user.model.User::getId,
+                projection.isAll() ? this::batchGet : batch -> batchGet(batch, projection));
+    }
+
+    private BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User> batchGet(List<UUID> ids) {
         final ReadBatch.Builder<User> readBatchBuilder = ReadBatch.builder(User.class)
                 .mappedTableResource(userDynamoDbTable);
         ids
@@ -104,20 +213,42 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
                         .partitionValue(uuid.toString())
                         .build())
                 .forEach(readBatchBuilder::addGetItem);
-        return dynamoDbEnhancedClient.batchGetItem(BatchGetItemEnhancedRequest.builder()
-                .addReadBatch(readBatchBuilder.build()).build())
+        //the enhanced client asks for unprocessed keys as the next page, the pipeline adds the backoff in between
+        return BatchGetResult.of(batchGetPipeline.drainPages(dynamoDbEnhancedClient.batchGetItem(BatchGetItemEnhancedRequest.builder()
+                .addReadBatch(readBatchBuilder.build()).build()))
                 .stream()
                 .flatMap(p -> p.resultsForTable(userDynamoDbTable)
                         .stream())
                 .map(MAPPER::enhancedUserToUser)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()), List.of());
+    }
+
+    //the enhanced client can not batch get a projection, so the table schema only maps the items
+    private BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User> batchGet(List<UUID> ids, Projection projection) {
+        final TableSchema<User> tableSchema = userDynamoDbTable.tableSchema();
+        final BatchGetItemResponse batchGetItemResponse = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(ids.stream()
+                                .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
+                                .collect(Collectors.toList()))
+                        .projectionExpression(projection.getExpression())
+                        .expressionAttributeNames(projection.getExpressionAttributeNames())
+                        .build()))
+                .build());
+        final KeysAndAttributes unprocessedKeys = batchGetItemResponse.unprocessedKeys().get(tableName);
+        return BatchGetResult.of(
+                batchGetItemResponse.responses().getOrDefault(tableName, List.of()).stream()
+                        .map(tableSchema::mapToItem)
+                        .map(MAPPER::enhancedUserToUser)
+                        .collect(Collectors.toList()),
+                unprocessedKeys == null ? List.of() : unprocessedKeys.keys().stream()
+                        .map(key -> UUID.fromString(key.get(ID_FIELD).s()))
+                        .collect(Collectors.toList()));
     }
 
     @Override
-    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName) {
-        return userDynamoDbIndex.query(QueryConditional
-                .keyEqualTo(Key.builder()
-                        .partitionValue(lastName).build()))
+    public List<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName, Projection projection) {
+        return userDynamoDbIndex.query(queryEnhancedRequest(lastName, projection).build())
                 .stream()
                 .flatMap(p -> p.items()
                         .stream())
@@ -125,6 +256,18 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        final Page<User> page = userDynamoDbIndex.query(queryEnhancedRequest(lastName, projection)
+                .limit(pageSize)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))
+                .build())
+                .iterator()
+                .next();
+        return UserPage.of(page.items().stream().map(MAPPER::enhancedUserToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(page.lastEvaluatedKey()));
+    }
+
     @Override
     public void updateUser(eu.luminis.breed.dynamodbmigration.user.model.User user) {
         try {
@@ -168,4 +311,23 @@ public class UserRepositoryDynamoDBSDK2HighLevelImpl implements UserRepository {
         }
 
     }
+
+    private static ScanEnhancedRequest.Builder scanEnhancedRequest(Projection projection) {
+        final ScanEnhancedRequest.Builder scanRequest = ScanEnhancedRequest.builder();
+        if (!projection.isAll()) {
+            scanRequest.attributesToProject(projection.getAttributes());
+        }
+        return scanRequest;
+    }
+
+    private static QueryEnhancedRequest.Builder queryEnhancedRequest(String lastName, Projection projection) {
+        final QueryEnhancedRequest.Builder queryRequest = QueryEnhancedRequest.builder()
+                .queryConditional(QueryConditional
+                        .keyEqualTo(Key.builder()
+                                .partitionValue(lastName).build()));
+        if (!projection.isAll()) {
+            queryRequest.attributesToProject(projection.getAttributes());
+        }
+        return queryRequest;
+    }
 }
@@ -1,34 +1,45 @@
 package eu.luminis.breed.dynamodbmigration.user.repository;
 
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpression;
 import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserNotUpdatedException;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.ListUtils;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_MODIFIED_EXPRESSION;
@@ -38,17 +49,26 @@ public class UserRepositoryDynamoDBSDK2LowLevelImpl implements UserRepository {
 
     private final DynamoDbClient dynamoDbClient;
     private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
 
-    public UserRepositoryDynamoDBSDK2LowLevelImpl(String tableName) {
-        this.tableName = tableName;
-        this.dynamoDbClient = DynamoDbClient.create();
+    public UserRepositoryDynamoDBSDK2LowLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbClient.create(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserRepositoryDynamoDBSDK2LowLevelImpl(String tableName, String endpoint) {
-        this.dynamoDbClient = DynamoDbClient.builder()
+    public UserRepositoryDynamoDBSDK2LowLevelImpl(String tableName, String endpoint, BatchGetOptions batchGetOptions,
+                                                  BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbClient.builder()
                 .endpointOverride(URI.create(endpoint))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserRepositoryDynamoDBSDK2LowLevelImpl(String tableName, DynamoDbClient dynamoDbClient, BatchGetOptions batchGetOptions,
+                                                  BatchWriteOptions batchWriteOptions) {
+        this.dynamoDbClient = dynamoDbClient;
         this.tableName = tableName;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
     }
 
     @Override
@@ -64,58 +84,126 @@ public class UserRepositoryDynamoDBSDK2LowLevelImpl implements UserRepository {
     }
 
     @Override
-    public Optional<User> getUserById(UUID id) {
+    public List<User> createOrUpdateUsers(List<User> users) {
+        users.stream()
+                .filter(user -> user.getId() == null)
+                .forEach(user -> user.setId(UUID.randomUUID()));
+        return batchWritePipeline.execute(users, User::getId, this::batchWrite);
+    }
+
+    private List<User> batchWrite(List<User> users) {
+        final BatchWriteItemResponse batchWriteItemResponse = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                .requestItems(Map.of(tableName, users.stream()
+                        .map(user -> WriteRequest.builder()
+                                .putRequest(PutRequest.builder().item(UserMapper.mapToItem(user, true)).build())
+                                .build())
+                        .collect(Collectors.toList())))
+                .build());
+        final Set<String> unprocessedIds = batchWriteItemResponse.unprocessedItems().getOrDefault(tableName, List.of()).stream()
+                .map(writeRequest -> writeRequest.putRequest().item().get(ID_FIELD).s())
+                .collect(Collectors.toSet());
+        return users.stream()
+                .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         try {
             final GetItemResponse item = dynamoDbClient.getItem(GetItemRequest.builder().tableName(tableName).key(Map.of(ID_FIELD,
-                    AttributeValue.builder().s(id.toString()).build())).build());
+                    AttributeValue.builder().s(id.toString()).build()))
+                    .projectionExpression(projection.getExpression())
+                    .expressionAttributeNames(projection.getExpressionAttributeNames())
+                    .build());
             return Optional.ofNullable(UserMapper.mapToUser(item));
         } catch (Exception e) {
-            log.error("Unable to retrieve data for id {}", id, e);
+            throw UserException.error("Unable to retrieve data for id {}", id, e);
         }
-        return Optional.empty();
     }
 
     @Override
-    public List<User> findAll() {
-        ScanResponse scan = dynamoDbClient.scan(ScanRequest.builder().tableName(tableName).build());
-        final List<User> allUsers = scan.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
-        while (scan.hasLastEvaluatedKey()) {
-            scan = dynamoDbClient.scan(ScanRequest.builder().tableName(tableName).exclusiveStartKey(scan.lastEvaluatedKey()).build());
-            scan.items().stream().map(UserMapper::mapToUser).forEach(allUsers::add);
-        }
-        return allUsers;
+    public List<User> findAll(Projection projection) {
+        return scan(scanRequestBuilder(projection));
+    }
+
+    @Override
+    public List<User> findAll(int totalSegments, Projection projection) {
+        return SegmentedScan.scan(totalSegments, segment -> scan(scanRequestBuilder(projection)
+                .segment(segment)
+                .totalSegments(totalSegments)));
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private UserPage scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        final ScanResponse scanResponse = dynamoDbClient.scan(scanRequestBuilder(projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))
+                .build());
+        return UserPage.of(scanResponse.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(scanResponse.lastEvaluatedKey()));
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+        return LazyPages.stream(() -> pageLimit.read(scanPage(pageLimit.next(), null, Projection.all())),
+                page -> page.getLastEvaluatedId() != null ? pageLimit.read(scanPage(pageLimit.next(), page.getLastEvaluatedId(), Projection.all())) : null)
+                .flatMap(page -> page.getUsers().stream());
     }
 
     @Override
-    public List<User> findByIds(List<UUID> ids) {
-        //limiting to 100, because that is one of batchgetitem limits defined by AWS...
-        final List<List<UUID>> chunks = ListUtils.partition(new ArrayList<>(ids), 100);
-        return chunks.stream()
-                .map(uuids -> dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
-                        .requestItems(Map.of(tableName, KeysAndAttributes.builder()
-                                .keys(uuids.stream()
-                                        .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
-                                        .collect(Collectors.toList()))
-                                .build()))
+    public List<User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.execute(ids, User::getId, batch -> batchGet(batch, projection));
+    }
+
+    private BatchGetResult<UUID, User> batchGet(List<UUID> ids, Projection projection) {
+        final BatchGetItemResponse batchGetItemResponse = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(ids.stream()
+                                .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
+                                .collect(Collectors.toList()))
+                        .projectionExpression(projection.getExpression())
+                        .expressionAttributeNames(projection.getExpressionAttributeNames())
                         .build()))
-                .flatMap(batchGetItemResponse -> batchGetItemResponse.responses().get(tableName).stream().map(UserMapper::mapToUser))
-                .collect(Collectors.toList());
+                .build());
+        final KeysAndAttributes unprocessedKeys = batchGetItemResponse.unprocessedKeys().get(tableName);
+        return BatchGetResult.of(
+                batchGetItemResponse.responses().getOrDefault(tableName, List.of()).stream()
+                        .map(UserMapper::mapToUser)
+                        .collect(Collectors.toList()),
+                unprocessedKeys == null ? List.of() : unprocessedKeys.keys().stream()
+                        .map(key -> UUID.fromString(key.get(ID_FIELD).s()))
+                        .collect(Collectors.toList()));
     }
 
     @Override
-    public List<User> findByLastName(final String lastName) {
-        QueryResponse response = dynamoDbClient.query(getQueryRequestBuilder(lastName).build());
+    public List<User> findByLastName(final String lastName, Projection projection) {
+        QueryResponse response = dynamoDbClient.query(getQueryRequestBuilder(lastName, projection).build());
         final List<User> users = response.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
         while (response.hasLastEvaluatedKey()) {
-            response = dynamoDbClient.query(getQueryRequestBuilder(lastName).exclusiveStartKey(response.lastEvaluatedKey()).build());
+            response = dynamoDbClient.query(getQueryRequestBuilder(lastName, projection).exclusiveStartKey(response.lastEvaluatedKey()).build());
             response.items().stream().map(UserMapper::mapToUser).forEach(users::add);
         }
         return users;
     }
 
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        final QueryResponse queryResponse = dynamoDbClient.query(getQueryRequestBuilder(lastName, projection)
+                .limit(pageSize)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))
+                .build());
+        return UserPage.of(queryResponse.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                UserMapper.lastEvaluatedId(queryResponse.lastEvaluatedKey()));
+    }
+
     @Override
     public void updateUser(User user) {
         if (user.getId() == null) {
@@ -139,13 +227,13 @@ public class UserRepositoryDynamoDBSDK2LowLevelImpl implements UserRepository {
             throw UserException.errorIdIsNull();
         }
         try {
-            final Map<String, AttributeValue> attributeValues = UserMapper.attributeValue(user);
+            final UpdateExpression<AttributeValue> updateExpression = UserMapper.updateExpression(user);
             dynamoDbClient.updateItem(UpdateItemRequest.builder()
                     .tableName(tableName)
                     .key(Map.of(ID_FIELD, AttributeValue.builder()
                             .s(user.getId().toString()).build()))
-                    .updateExpression(UserMapper.getUpdateExpression(user))
-                    .expressionAttributeValues(attributeValues)
+                    .updateExpression(updateExpression.getExpression())
+                    .expressionAttributeValues(updateExpression.getValues())
                     //deprecated
 //                    .attributeUpdates(UserMapper.attributeValueUpdates(user))
                     .conditionExpression(LAST_MODIFIED_EXPRESSION)
@@ -172,14 +260,33 @@ public class UserRepositoryDynamoDBSDK2LowLevelImpl implements UserRepository {
         }
     }
 
-    private QueryRequest.Builder getQueryRequestBuilder(String lastName) {
+    private List<User> scan(ScanRequest.Builder scanRequest) {
+        ScanResponse scan = dynamoDbClient.scan(scanRequest.build());
+        final List<User> allUsers = scan.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList());
+        while (scan.hasLastEvaluatedKey()) {
+            scan = dynamoDbClient.scan(scanRequest.exclusiveStartKey(scan.lastEvaluatedKey()).build());
+            scan.items().stream().map(UserMapper::mapToUser).forEach(allUsers::add);
+        }
+        return allUsers;
+    }
+
+    private ScanRequest.Builder scanRequestBuilder(Projection projection) {
+        return ScanRequest.builder()
+                .tableName(tableName)
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames());
+    }
+
+    private QueryRequest.Builder getQueryRequestBuilder(String lastName, Projection projection) {
         Map<String, AttributeValue> key = new HashMap<>();
         key.put(":lastName", AttributeValue.builder().s(lastName).build());
         return QueryRequest.builder()
                 .tableName(tableName)
                 .keyConditionExpression("lastName = :lastName")
                 .indexName("lastNameIndex")
-                .expressionAttributeValues(key);
+                .expressionAttributeValues(key)
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames());
     }
 
 
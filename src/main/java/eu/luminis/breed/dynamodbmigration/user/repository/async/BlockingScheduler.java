@@ -0,0 +1,69 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool for the calls of the blocking SDK 1 client, so the reactive repositories that use it never block the
+ * thread that subscribes. Calls that do not fit in the pool and its queue fail with a {@link RejectedExecutionException}
+ * instead of piling up.
+ * <p>
+ * The pool is published with the executor metrics of micrometer named {@value #NAME}, such as {@code executor.active},
+ * {@code executor.queued} and {@code executor.idle} for the time a call waited for a thread, and the rejected calls as
+ * the counter {@value #REJECTED_METRIC}.
+ */
+public class BlockingScheduler implements AutoCloseable {
+
+    static final String NAME = "dynamodb-blocking";
+    static final String REJECTED_METRIC = "dynamodb.blocking.rejected";
+
+    //idle threads are stopped after this time
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+
+    public BlockingScheduler(BlockingSchedulerOptions options) {
+        if (options.getThreads() < 1 || options.getQueueSize() < 1) {
+            throw UserException.error("Invalid blocking scheduler options {}", options);
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final Counter rejected = Counter.builder(REJECTED_METRIC)
+                .description("Number of blocking calls that failed because all threads were busy and the queue was full")
+                .register(Metrics.globalRegistry);
+        this.executor = new ThreadPoolExecutor(options.getThreads(), options.getThreads(), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(options.getQueueSize()),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, NAME + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("All " + options.getThreads() + " threads are busy and " + options.getQueueSize() + " calls are queued");
+                });
+        executor.allowCoreThreadTimeOut(true);
+        //a trampolining worker runs the tasks of a single subscription one after the other, like the schedulers of reactor
+        this.scheduler = Schedulers.fromExecutor(ExecutorServiceMetrics.monitor(Metrics.globalRegistry, executor, NAME), true);
+    }
+
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+        executor.shutdown();
+    }
+}
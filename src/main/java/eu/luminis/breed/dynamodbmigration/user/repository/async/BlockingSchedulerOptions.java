@@ -0,0 +1,27 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Size of the pool of a {@link BlockingScheduler}.
+ */
+@Value
+@Builder
+public class BlockingSchedulerOptions {
+
+    /**
+     * Maximum number of blocking calls at the same time, more is of no use when the client has less connections.
+     */
+    @Builder.Default
+    int threads = 50;
+    /**
+     * Maximum number of calls that wait for a thread, after which new calls fail.
+     */
+    @Builder.Default
+    int queueSize = 1_000;
+
+    public static BlockingSchedulerOptions defaults() {
+        return BlockingSchedulerOptions.builder().build();
+    }
+}
@@ -0,0 +1,128 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decorates a repository so that concurrent {@code getUserById} calls for the same id share a single request, and all
+ * get the same user instance. A read that starts after a write through this repository completed never shares the
+ * request of a read that started before it.
+ * <p>
+ * The reads that were answered by a request that was already in flight are counted as {@value #COALESCED_METRIC},
+ * tagged with the repository.
+ */
+public class CoalescingUserAsyncRepository implements UserAsyncRepository {
+
+    static final String COALESCED_METRIC = "dynamodb.getbyid.coalesced";
+
+    private final UserAsyncRepository userAsyncRepository;
+    //reads of a key without a request in flight do not lock, so hot keys do not contend
+    private final Map<UUID, Mono<User>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public CoalescingUserAsyncRepository(UserAsyncRepository userAsyncRepository) {
+        this.userAsyncRepository = userAsyncRepository;
+        this.coalesced = Counter.builder(COALESCED_METRIC)
+                .description("Number of reads by id that shared the request of another read")
+                .tag("repository", userAsyncRepository.getClass().getSimpleName())
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public Mono<User> createOrUpdateUser(User user) {
+        return userAsyncRepository.createOrUpdateUser(user).doOnNext(createdUser -> forget(createdUser.getId()));
+    }
+
+    @Override
+    public Flux<User> createOrUpdateUsers(Publisher<User> users) {
+        return userAsyncRepository.createOrUpdateUsers(users).doOnNext(createdUser -> forget(createdUser.getId()));
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //only reads of whole users share a request
+        if (!projection.isAll()) {
+            return userAsyncRepository.getUserById(id, projection);
+        }
+        return Mono.defer(() -> {
+            final Mono<User> shared = inFlight.get(id);
+            if (shared != null) {
+                coalesced.increment();
+                return shared;
+            }
+            return inFlight.computeIfAbsent(id, this::load);
+        });
+    }
+
+    @Override
+    public Flux<User> findAll(Projection projection) {
+        return userAsyncRepository.findAll(projection);
+    }
+
+    @Override
+    public Flux<User> findAll(int totalSegments, Projection projection) {
+        return userAsyncRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Flux<User> findByIds(List<UUID> ids, Projection projection) {
+        return userAsyncRepository.findByIds(ids, projection);
+    }
+
+    @Override
+    public Flux<User> findByLastName(String lastName, Projection projection) {
+        return userAsyncRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<Void> updateUser(User user) {
+        return userAsyncRepository.updateUser(user).doOnTerminate(() -> forget(user.getId()));
+    }
+
+    @Override
+    public Mono<Void> deleteUser(UUID id) {
+        return userAsyncRepository.deleteUser(id).doOnTerminate(() -> forget(id));
+    }
+
+    //the request is only sent when the first read subscribes, and stays in flight when a single reader cancels
+    private Mono<User> load(UUID id) {
+        final AtomicReference<Mono<User>> shared = new AtomicReference<>();
+        shared.set(Mono.defer(() -> userAsyncRepository.getUserById(id))
+                .doFinally(signal -> inFlight.remove(id, shared.get()))
+                .cache());
+        return shared.get();
+    }
+
+    //later reads should see the write, so they do not share a request that may have been answered before it
+    private void forget(UUID id) {
+        if (id != null) {
+            inFlight.remove(id);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.AdaptivePageLimit;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Follows the LastEvaluatedKey from page to page like {@link Flux#expand}, but requests the next page as soon as a page
+ * arrives, instead of after the page has been requested and handled downstream. The round trip of the next page then
+ * overlaps with the handling of the current one.
+ * <p>
+ * At most prefetch pages are read ahead of what the subscriber took, after which the next request waits until the
+ * subscriber takes a page, so a slow subscriber still holds a bounded number of pages in memory.
+ */
+final class PipelinedPagination {
+
+    //the page after the one that is being handled, and one more to absorb a slow response
+    static final int DEFAULT_PREFETCH = 2;
+
+    private PipelinedPagination() {
+    }
+
+    /**
+     * @param hasNextPage whether there is a page after the given page, for example because it has a LastEvaluatedKey
+     * @param nextPage    request of the page after the given page
+     */
+    static <P> Flux<P> paginate(Mono<P> firstPage, Predicate<P> hasNextPage, Function<P, Mono<P>> nextPage, int prefetch) {
+        if (prefetch < 1) {
+            return Flux.error(UserException.error("Page prefetch should be at least 1, but was {}", prefetch));
+        }
+        return Flux.defer(() -> new Pagination<>(hasNextPage, nextPage, prefetch).pages(firstPage));
+    }
+
+    /**
+     * The users of all pages of a scan or query, with the Limit of every page chosen by an {@link AdaptivePageLimit}
+     * that follows the demand of the subscriber.
+     * <p>
+     * Only a bounded demand makes the pages smaller. {@link Flux#take} asks for all users as soon as its subscriber asks
+     * for at least as many as it takes, as {@code collectList} and {@code blockLast} do, so a read that is cut short
+     * should use {@link Flux#limitRequest} instead.
+     *
+     * @param page reads the page with the given Limit that starts after the user with the given id
+     */
+    static Flux<User> users(BiFunction<Integer, UUID, Mono<UserPage>> page, int prefetch) {
+        return Flux.defer(() -> {
+            final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+            final Sinks.Empty<Void> firstRequest = Sinks.empty();
+            return paginate(Mono.defer(() -> page.apply(pageLimit.next(), null)).map(pageLimit::read),
+                    userPage -> userPage.getLastEvaluatedId() != null,
+                    userPage -> Mono.defer(() -> page.apply(pageLimit.next(), userPage.getLastEvaluatedId())).map(pageLimit::read),
+                    prefetch)
+                    //so the Limit of the first page already follows the demand of the subscriber
+                    .delaySubscription(firstRequest.asMono())
+                    //a page at a time, so the prefetch and the demand of the subscriber decide how far pages are read ahead
+                    .flatMapIterable(UserPage::getUsers, 1)
+                    .doOnRequest(n -> {
+                        pageLimit.requested(n);
+                        firstRequest.tryEmitEmpty();
+                    });
+        });
+    }
+
+    private static final class Pagination<P> {
+
+        private final Sinks.Many<P> sink = Sinks.many().unicast().onBackpressureBuffer();
+        private final Disposable.Swap inFlight = Disposables.swap();
+        //pages in the order they arrived, emitted by one thread at a time
+        private final Queue<P> arrivedPages = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Predicate<P> hasNextPage;
+        private final Function<P, Mono<P>> nextPage;
+        private final int prefetch;
+
+        private volatile boolean done;
+        private volatile Throwable error;
+        //pages that arrived, but were not taken by the subscriber yet
+        private int buffered;
+        //request that waits until the subscriber takes a page
+        private Mono<P> waiting;
+
+        private Pagination(Predicate<P> hasNextPage, Function<P, Mono<P>> nextPage, int prefetch) {
+            this.hasNextPage = hasNextPage;
+            this.nextPage = nextPage;
+            this.prefetch = prefetch;
+        }
+
+        private Flux<P> pages(Mono<P> firstPage) {
+            request(firstPage);
+            return sink.asFlux()
+                    .doOnNext(page -> taken())
+                    .doFinally(signal -> inFlight.dispose());
+        }
+
+        private void request(Mono<P> page) {
+            //replace instead of update, a page that completes right away already requested the next one before it returns
+            page.doOnSubscribe(subscription -> inFlight.replace(subscription::cancel))
+                    .subscribe(this::arrived, this::failed);
+        }
+
+        private void arrived(P page) {
+            final boolean last = !hasNextPage.test(page);
+            Mono<P> next = null;
+            synchronized (this) {
+                buffered++;
+                if (!last && buffered < prefetch) {
+                    next = nextPage.apply(page);
+                } else if (!last) {
+                    waiting = nextPage.apply(page);
+                }
+            }
+            arrivedPages.offer(page);
+            //only raised, the last page may already have arrived on another thread after this page was taken
+            if (last) {
+                done = true;
+            }
+            //before emitting, so the round trip overlaps with handling the page downstream
+            if (next != null) {
+                request(next);
+            }
+            drain();
+        }
+
+        private void failed(Throwable throwable) {
+            error = throwable;
+            drain();
+        }
+
+        private void taken() {
+            final Mono<P> next;
+            synchronized (this) {
+                buffered--;
+                next = waiting;
+                waiting = null;
+            }
+            if (next != null) {
+                request(next);
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                P page;
+                while ((page = arrivedPages.poll()) != null) {
+                    sink.tryEmitNext(page);
+                }
+                if (error != null) {
+                    sink.tryEmitError(error);
+                } else if (done) {
+                    sink.tryEmitComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
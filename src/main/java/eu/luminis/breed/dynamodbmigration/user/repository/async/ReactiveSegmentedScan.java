@@ -0,0 +1,34 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import reactor.core.publisher.Flux;
+
+import java.util.function.IntFunction;
+
+/**
+ * Merges the segments of a parallel scan (see Segment/TotalSegments of the Scan API) into one {@link Flux}. Every segment
+ * is a cursor that only asks for its next page when its previous page has been consumed, so a slow subscriber holds
+ * at most a page per segment in memory.
+ */
+final class ReactiveSegmentedScan {
+
+    //maximum allowed by AWS for TotalSegments
+    static final int MAX_TOTAL_SEGMENTS = 1_000_000;
+    //same as the default max concurrency of the SDK2 async http client, more in flight requests would only be queued there
+    static final int MAX_CONCURRENT_SEGMENTS = 50;
+    //number of items requested from a segment at once
+    static final int SEGMENT_PREFETCH = 32;
+    //number of pages requested from a segment at once, 1 makes sure pages are only fetched on demand
+    static final int PAGE_PREFETCH = 1;
+
+    private ReactiveSegmentedScan() {
+    }
+
+    static <T> Flux<T> scan(int totalSegments, IntFunction<Flux<T>> segmentScanner) {
+        if (totalSegments < 1 || totalSegments > MAX_TOTAL_SEGMENTS) {
+            return Flux.error(UserException.clientError("Total segments should be between 1 and {}, but was {}", MAX_TOTAL_SEGMENTS, totalSegments));
+        }
+        return Flux.range(0, totalSegments)
+                .flatMap(segmentScanner::apply, Math.min(totalSegments, MAX_CONCURRENT_SEGMENTS), SEGMENT_PREFETCH);
+    }
+}
@@ -1,6 +1,9 @@
 package eu.luminis.breed.dynamodbmigration.user.repository.async;
 
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -10,13 +13,54 @@ import java.util.UUID;
 public interface UserAsyncRepository {
     Mono<User> createOrUpdateUser(User user);
 
-    Mono<User> getUserById(UUID id);
+    /**
+     * Writes the users in batches as they arrive, users without an id get a new one. A user is emitted when its batch is written.
+     */
+    Flux<User> createOrUpdateUsers(Publisher<User> users);
 
-    Flux<User> findAll();
+    default Mono<User> getUserById(UUID id) {
+        return getUserById(id, Projection.all());
+    }
 
-    Flux<User> findByIds(List<UUID> ids);
+    /**
+     * Only reads the fields of the projection, the other fields of the user are null. Same for the other reads with a projection.
+     */
+    Mono<User> getUserById(UUID id, Projection projection);
 
-    Flux<User> findByLastName(String lastName);
+    default Flux<User> findAll() {
+        return findAll(Projection.all());
+    }
+
+    Flux<User> findAll(Projection projection);
+
+    default Flux<User> findAll(int totalSegments) {
+        return findAll(totalSegments, Projection.all());
+    }
+
+    Flux<User> findAll(int totalSegments, Projection projection);
+
+    /**
+     * Scans a single page of at most the page size, so that its latency does not depend on the size of the table. The
+     * page starts after the user with the exclusive start id, or at the start of the table when that is null.
+     */
+    Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection);
+
+    default Flux<User> findByIds(List<UUID> ids) {
+        return findByIds(ids, Projection.all());
+    }
+
+    Flux<User> findByIds(List<UUID> ids, Projection projection);
+
+    default Flux<User> findByLastName(String lastName) {
+        return findByLastName(lastName, Projection.all());
+    }
+
+    Flux<User> findByLastName(String lastName, Projection projection);
+
+    /**
+     * Queries a single page of the users with the last name, like {@link #findPage}.
+     */
+    Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection);
 
     Mono<Void> updateUser(User user);
 
@@ -1,44 +1,76 @@
 package eu.luminis.breed.dynamodbmigration.user.repository.async;
 
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.KeyPair;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.User;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.UserMapper.MAPPER;
 
 @Slf4j
 public class UserAsyncRepositoryDynamoDBSDK1HighLevelImpl implements UserAsyncRepository {
 
     private final DynamoDBMapper dynamoDBMapper;
+    //for the projections, which the mapper does not support
+    private final AmazonDynamoDB amazonDynamoDBClient;
     private final String tableName;
+    //the mapper blocks, so all its calls run here
+    private final Scheduler scheduler;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
 
-    public UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(String tableName) {
-        final var amazonDynamoDBClient = AmazonDynamoDBClientBuilder.defaultClient();
-        this.tableName = tableName;
-        this.dynamoDBMapper = new DynamoDBMapper(amazonDynamoDBClient, DynamoDBMapperConfig.builder()
-                .withTableNameOverride(new DynamoDBMapperConfig.TableNameOverride(this.tableName))
-                .build());
+    public UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.defaultClient(), Schedulers.boundedElastic(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(String tableName, String serviceEndpoint) {
-        final var amazonDynamoDBClient = AmazonDynamoDBClientBuilder.standard()
+    public UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(String tableName, String serviceEndpoint, BatchGetOptions batchGetOptions,
+                                                        BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.standard()
                 .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, null))
-                .build();
+                .build(), Schedulers.boundedElastic(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(String tableName, AmazonDynamoDB amazonDynamoDBClient, Scheduler scheduler,
+                                                        BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
         this.tableName = tableName;
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.scheduler = scheduler;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
         this.dynamoDBMapper = new DynamoDBMapper(amazonDynamoDBClient, DynamoDBMapperConfig.builder()
                 .withTableNameOverride(new DynamoDBMapperConfig.TableNameOverride(this.tableName))
                 .build());
@@ -55,42 +87,156 @@ public class UserAsyncRepositoryDynamoDBSDK1HighLevelImpl implements UserAsyncRe
         }
         final var userMapper = MAPPER.userToMapperUser(user);
         return Mono.fromRunnable(() -> dynamoDBMapper.save(userMapper))
+                .subscribeOn(scheduler)
                 .thenReturn(MAPPER.mapperUserToUser(userMapper));
     }
 
     @Override
-    public Mono<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id) {
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> createOrUpdateUsers(Publisher<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        return batchWritePipeline.executeAsync(Flux.from(users)
+                .doOnNext(user -> {
+                    if (user.getId() == null) {
+                        user.setId(UUID.randomUUID());
+                    }
+                }), eu.luminis.breed.dynamodbmigration.user.model.User::getId, this::batchWrite);
+    }
+
+    private Mono<List<eu.luminis.breed.dynamodbmigration.user.model.User>> batchWrite(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        //the mapper does not retry itself, so unprocessed items come back as a failed batch and are retried by the pipeline
+        return Mono.fromCallable(() -> dynamoDBMapper.batchWrite(users.stream()
+                .map(MAPPER::userToMapperUser)
+                .collect(Collectors.toList()), List.of(), DynamoDBMapperConfig.builder()
+                .withBatchWriteRetryStrategy(batchWritePipeline.noMapperRetries())
+                .build()))
+                .subscribeOn(scheduler)
+                .map(failedBatches -> {
+                    final Set<String> unprocessedIds = new HashSet<>();
+                    for (DynamoDBMapper.FailedBatch failedBatch : failedBatches) {
+                        if (failedBatch.getException() != null) {
+                            throw UserException.error("Could not create or update all users", failedBatch.getException());
+                        }
+                        failedBatch.getUnprocessedItems().getOrDefault(tableName, List.of())
+                                .forEach(writeRequest -> unprocessedIds.add(writeRequest.getPutRequest().getItem().get(ID_FIELD).getS()));
+                    }
+                    return users.stream()
+                            .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                            .collect(Collectors.toList());
+                });
+    }
+
+    @Override
+    public Mono<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
-
-        return Mono.fromCallable(() -> dynamoDBMapper.load(User.class, id))
+        if (projection.isAll()) {
+            return Mono.fromCallable(() -> dynamoDBMapper.load(User.class, id))
+                    .subscribeOn(scheduler)
+                    .map(MAPPER::mapperUserToUser);
+        }
+        //the mapper can not load a projection, so it only maps the item
+        return Mono.fromCallable(() -> amazonDynamoDBClient.getItem(new GetItemRequest(tableName, Map.of(ID_FIELD, new AttributeValue(id.toString())))
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames())))
+                .subscribeOn(scheduler)
+                .flatMap(getItemResult -> Mono.justOrEmpty(getItemResult.getItem()))
+                .map(item -> dynamoDBMapper.marshallIntoObject(User.class, item))
                 .map(MAPPER::mapperUserToUser);
     }
 
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll() {
-        return Flux.fromIterable(dynamoDBMapper.scan(User.class, new DynamoDBScanExpression()))
-                .map(MAPPER::mapperUserToUser);
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(Projection projection) {
+        //one page ahead, every page holds a thread of the blocking scheduler while it is read
+        return PipelinedPagination.users((limit, exclusiveStartId) -> scanPage(limit, exclusiveStartId, projection), 1);
+    }
+
+    @Override
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(int totalSegments, Projection projection) {
+        return ReactiveSegmentedScan.scan(totalSegments, segment -> {
+            final Supplier<DynamoDBScanExpression> scanExpression = () -> scanExpression(projection)
+                    .withSegment(segment)
+                    .withTotalSegments(totalSegments);
+            //the mapper is blocking, so every segment gets its own worker to be able to run in parallel
+            return Mono.fromCallable(() -> dynamoDBMapper.scanPage(User.class, scanExpression.get()))
+                    .expand(page -> page.getLastEvaluatedKey() != null ?
+                            Mono.fromCallable(() -> dynamoDBMapper.scanPage(User.class, scanExpression.get().withExclusiveStartKey(page.getLastEvaluatedKey())))
+                            : Mono.empty())
+                    .subscribeOn(scheduler)
+                    .flatMapIterable(ScanResultPage::getResults, ReactiveSegmentedScan.PAGE_PREFETCH)
+                    .map(MAPPER::mapperUserToUser);
+        });
     }
 
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids) {
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromCallable(() -> dynamoDBMapper.scanPage(User.class, scanExpression(projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))))
+                .subscribeOn(scheduler)
+                .map(page -> UserPage.of(page.getResults().stream().map(MAPPER::mapperUserToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(page.getLastEvaluatedKey())));
+    }
+
+    @Override
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids, Projection projection) {
+        if (!projection.isAll()) {
+            return batchGetPipeline.executeAsync(ids, eu.luminis.breed.dynamodbmigration.user.model.User::getId, batch -> batchGet(batch, projection));
+        }
         final List<KeyPair> keyPairs = ids.stream().map(id -> new KeyPair().withHashKey(id)).collect(Collectors.toList());
-        return Flux.fromIterable(dynamoDBMapper.batchLoad(Map.of(User.class, keyPairs)).get(tableName))
+        //the mapper sleeps between its retries of unprocessed keys, so this should not run on a non-blocking thread
+        return Mono.fromCallable(() -> dynamoDBMapper.batchLoad(Map.of(User.class, keyPairs), DynamoDBMapperConfig.builder()
+                        .withBatchLoadRetryStrategy(batchGetPipeline.batchLoadRetryStrategy())
+                        .build())
+                        .getOrDefault(tableName, List.of()))
+                .subscribeOn(scheduler)
+                .onErrorMap(DynamoDBMapper.BatchGetItemException.class, e -> UserException.error("Could not find all users by ids", e))
+                .flatMapIterable(users -> users)
                 .map(User.class::cast)
                 .map(MAPPER::mapperUserToUser);
     }
 
+    //the mapper can not batch load a projection, so it only maps the items
+    private Mono<BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User>> batchGet(List<UUID> ids, Projection projection) {
+        return Mono.fromCallable(() -> amazonDynamoDBClient.batchGetItem(
+                new BatchGetItemRequest(Map.of(tableName, new KeysAndAttributes().withKeys(ids.stream()
+                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
+                        .collect(Collectors.toList()))
+                        .withProjectionExpression(projection.getExpression())
+                        .withExpressionAttributeNames(projection.getExpressionAttributeNames())))))
+                .subscribeOn(scheduler)
+                .map(batchGetItemResult -> {
+                    final KeysAndAttributes unprocessedKeys = batchGetItemResult.getUnprocessedKeys().get(tableName);
+                    return BatchGetResult.of(
+                            dynamoDBMapper.marshallIntoObjects(User.class, batchGetItemResult.getResponses().getOrDefault(tableName, List.of())).stream()
+                                    .map(MAPPER::mapperUserToUser)
+                                    .collect(Collectors.toList()),
+                            unprocessedKeys == null ? List.of() : unprocessedKeys.getKeys().stream()
+                                    .map(key -> UUID.fromString(key.get(ID_FIELD).getS()))
+                                    .collect(Collectors.toList()));
+                });
+    }
+
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName) {
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName("lastNameIndex")
-                .withConsistentRead(false)
-                .withHashKeyValues(User.builder().lastName(lastName)
-                        .build());
-        return Flux.fromIterable(dynamoDBMapper.query(User.class, queryExpression))
-                .map(MAPPER::mapperUserToUser);
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName, Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> queryPage(lastName, limit, exclusiveStartId, projection), 1);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return queryPage(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> queryPage(String lastName, Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromCallable(() -> dynamoDBMapper.queryPage(User.class, lastNameIndexQuery(lastName, projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))))
+                .subscribeOn(scheduler)
+                .map(page -> UserPage.of(page.getResults().stream().map(MAPPER::mapperUserToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(page.getLastEvaluatedKey())));
     }
 
     @Override
@@ -99,6 +245,7 @@ public class UserAsyncRepositoryDynamoDBSDK1HighLevelImpl implements UserAsyncRe
                 DynamoDBMapperConfig.builder()
                         .withTableNameOverride(new DynamoDBMapperConfig.TableNameOverride(this.tableName))
                         .withSaveBehavior(DynamoDBMapperConfig.SaveBehavior.UPDATE_SKIP_NULL_ATTRIBUTES).build()))
+                .subscribeOn(scheduler)
                 .then();
     }
 
@@ -108,6 +255,23 @@ public class UserAsyncRepositoryDynamoDBSDK1HighLevelImpl implements UserAsyncRe
             throw UserException.errorIdIsNull();
         }
         return Mono.fromRunnable(() -> dynamoDBMapper.delete(User.builder().id(id).build()))
+                .subscribeOn(scheduler)
                 .then();
     }
+
+    private static DynamoDBScanExpression scanExpression(Projection projection) {
+        return new DynamoDBScanExpression()
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
+    }
+
+    private static DynamoDBQueryExpression<User> lastNameIndexQuery(String lastName, Projection projection) {
+        return new DynamoDBQueryExpression<User>()
+                .withIndexName("lastNameIndex")
+                .withConsistentRead(false)
+                .withHashKeyValues(User.builder().lastName(lastName)
+                        .build())
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
+    }
 }
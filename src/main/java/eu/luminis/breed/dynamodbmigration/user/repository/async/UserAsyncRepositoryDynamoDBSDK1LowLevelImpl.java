@@ -5,28 +5,40 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
-import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.ListUtils;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
@@ -39,17 +51,29 @@ public class UserAsyncRepositoryDynamoDBSDK1LowLevelImpl implements UserAsyncRep
     //here...
     private final AmazonDynamoDB amazonDynamoDBClient;
     private final String tableName;
+    //the client blocks, so all its calls run here
+    private final Scheduler scheduler;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
 
-    public UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(String tableName) {
-        this.tableName = tableName;
-        this.amazonDynamoDBClient = AmazonDynamoDBClientBuilder.defaultClient();
+    public UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.defaultClient(), Schedulers.boundedElastic(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(String tableName, String serviceEndpoint) {
-        this.tableName = tableName;
-        this.amazonDynamoDBClient = AmazonDynamoDBClientBuilder.standard()
+    public UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(String tableName, String serviceEndpoint, BatchGetOptions batchGetOptions,
+                                                       BatchWriteOptions batchWriteOptions) {
+        this(tableName, AmazonDynamoDBClientBuilder.standard()
                 .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(serviceEndpoint, null))
-                .build();
+                .build(), Schedulers.boundedElastic(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(String tableName, AmazonDynamoDB amazonDynamoDBClient, Scheduler scheduler,
+                                                       BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this.tableName = tableName;
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.scheduler = scheduler;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
     }
 
     @Override
@@ -63,61 +87,138 @@ public class UserAsyncRepositoryDynamoDBSDK1LowLevelImpl implements UserAsyncRep
             user.setId(id);
         }
         return Mono.fromCallable(() -> amazonDynamoDBClient.putItem(new PutItemRequest(tableName, UserMapper.mapToItem(user, true))))
+                .subscribeOn(scheduler)
                 .thenReturn(user);
     }
 
     @Override
-    public Mono<User> getUserById(final UUID id) {
+    public Flux<User> createOrUpdateUsers(Publisher<User> users) {
+        return batchWritePipeline.executeAsync(Flux.from(users)
+                .doOnNext(user -> {
+                    if (user.getId() == null) {
+                        user.setId(UUID.randomUUID());
+                    }
+                }), User::getId, this::batchWrite);
+    }
+
+    private Mono<List<User>> batchWrite(List<User> users) {
+        return Mono.fromCallable(() -> amazonDynamoDBClient.batchWriteItem(
+                new BatchWriteItemRequest(Map.of(tableName, users.stream()
+                        .map(user -> new WriteRequest(new PutRequest(UserMapper.mapToItem(user, true))))
+                        .collect(Collectors.toList())))))
+                .subscribeOn(scheduler)
+                .map(batchWriteItemResult -> {
+                    final Set<String> unprocessedIds = batchWriteItemResult.getUnprocessedItems().getOrDefault(tableName, List.of()).stream()
+                            .map(writeRequest -> writeRequest.getPutRequest().getItem().get(ID_FIELD).getS())
+                            .collect(Collectors.toSet());
+                    return users.stream()
+                            .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                            .collect(Collectors.toList());
+                });
+    }
+
+    @Override
+    public Mono<User> getUserById(final UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         HashMap<String, AttributeValue> key = new HashMap<>();
         key.put(ID_FIELD, new AttributeValue().withS(id.toString()));
 
-        return Mono.fromCallable(() -> amazonDynamoDBClient.getItem(new GetItemRequest(tableName, key)))
+        return Mono.fromCallable(() -> amazonDynamoDBClient.getItem(new GetItemRequest(tableName, key)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames())))
+                .subscribeOn(scheduler)
                 .map(GetItemResult::getItem)
                 .map(UserMapper::mapToUser);
     }
 
     @Override
-    public Flux<User> findAll() {
-        return Mono.fromCallable(() -> amazonDynamoDBClient.scan(new ScanRequest(tableName)))
-                .expand(scanResult -> scanResult.getLastEvaluatedKey() != null ?
-                        Mono.fromCallable(() -> amazonDynamoDBClient.scan(new ScanRequest(tableName).withExclusiveStartKey(scanResult.getLastEvaluatedKey())))
-                        : Mono.empty())
-                .flatMapIterable(ScanResult::getItems)
-                .map(UserMapper::mapToUser);
+    public Flux<User> findAll(Projection projection) {
+        //one page ahead, every page holds a thread of the blocking scheduler while it is read
+        return PipelinedPagination.users((limit, exclusiveStartId) -> scanPage(limit, exclusiveStartId, projection), 1);
     }
 
     @Override
-    public Flux<User> findByIds(List<UUID> ids) {
-        //limiting to 100, because that is one of batchgetitem limits defined by AWS...
-        final List<List<UUID>> chunks = ListUtils.partition(new ArrayList<>(ids), 100);
-        return Flux.fromIterable(chunks)
-                .map(uuids -> amazonDynamoDBClient.batchGetItem(
-                        new BatchGetItemRequest(
-                                Map.of(tableName,
-                                        new KeysAndAttributes()
-                                                .withKeys(uuids.stream()
-                                                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
-                                                        .collect(Collectors.toList()))))))
-                .flatMapIterable(batchGetItemResult -> batchGetItemResult.getResponses().get(tableName))
-                .map(UserMapper::mapToUser);
+    public Flux<User> findAll(int totalSegments, Projection projection) {
+        return ReactiveSegmentedScan.scan(totalSegments, segment -> {
+            final Supplier<ScanRequest> scanRequest = () -> scanRequest(projection)
+                    .withSegment(segment)
+                    .withTotalSegments(totalSegments);
+            //the client is blocking, so every segment gets its own worker to be able to run in parallel
+            return Mono.fromCallable(() -> amazonDynamoDBClient.scan(scanRequest.get()))
+                    .expand(scanResult -> scanResult.getLastEvaluatedKey() != null ?
+                            Mono.fromCallable(() -> amazonDynamoDBClient.scan(scanRequest.get().withExclusiveStartKey(scanResult.getLastEvaluatedKey())))
+                            : Mono.empty())
+                    .subscribeOn(scheduler)
+                    .flatMapIterable(ScanResult::getItems, ReactiveSegmentedScan.PAGE_PREFETCH)
+                    .map(UserMapper::mapToUser);
+        });
     }
 
     @Override
-    public Flux<User> findByLastName(final String lastName) {
-        return Mono.fromCallable(() -> amazonDynamoDBClient.query(getLastNameIndexQuery(lastName)))
-                .expand(queryResult -> queryResult.getLastEvaluatedKey() != null ?
-                        Mono.fromCallable(() -> amazonDynamoDBClient.query(getLastNameIndexQuery(lastName).withExclusiveStartKey(queryResult.getLastEvaluatedKey())))
-                        : Mono.empty())
-                .flatMapIterable(QueryResult::getItems)
-                .map(UserMapper::mapToUser);
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromCallable(() -> amazonDynamoDBClient.scan(scanRequest(projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))))
+                .subscribeOn(scheduler)
+                .map(scanResult -> UserPage.of(scanResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(scanResult.getLastEvaluatedKey())));
+    }
+
+    @Override
+    public Flux<User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.executeAsync(ids, User::getId, batch -> batchGet(batch, projection));
+    }
+
+    private Mono<BatchGetResult<UUID, User>> batchGet(List<UUID> ids, Projection projection) {
+        return Mono.fromCallable(() -> amazonDynamoDBClient.batchGetItem(
+                new BatchGetItemRequest(Map.of(tableName, new KeysAndAttributes().withKeys(ids.stream()
+                        .map(id -> Map.of(ID_FIELD, new AttributeValue(String.valueOf(id))))
+                        .collect(Collectors.toList()))
+                        .withProjectionExpression(projection.getExpression())
+                        .withExpressionAttributeNames(projection.getExpressionAttributeNames())))))
+                .subscribeOn(scheduler)
+                .map(batchGetItemResult -> {
+                    final KeysAndAttributes unprocessedKeys = batchGetItemResult.getUnprocessedKeys().get(tableName);
+                    return BatchGetResult.of(
+                            batchGetItemResult.getResponses().getOrDefault(tableName, List.of()).stream()
+                                    .map(UserMapper::mapToUser)
+                                    .collect(Collectors.toList()),
+                            unprocessedKeys == null ? List.of() : unprocessedKeys.getKeys().stream()
+                                    .map(key -> UUID.fromString(key.get(ID_FIELD).getS()))
+                                    .collect(Collectors.toList()));
+                });
+    }
+
+    @Override
+    public Flux<User> findByLastName(final String lastName, Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> queryPage(lastName, limit, exclusiveStartId, projection), 1);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return queryPage(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> queryPage(String lastName, Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromCallable(() -> amazonDynamoDBClient.query(getLastNameIndexQuery(lastName, projection)
+                .withLimit(limit)
+                .withExclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))))
+                .subscribeOn(scheduler)
+                .map(queryResult -> UserPage.of(queryResult.getItems().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(queryResult.getLastEvaluatedKey())));
     }
 
     @Override
     public Mono<Void> updateUser(final User user) {
-        return Mono.fromCallable(() -> amazonDynamoDBClient.updateItem(UserMapper.updateItemRequest(user, tableName))).then();
+        return Mono.fromCallable(() -> amazonDynamoDBClient.updateItem(UserMapper.updateItemRequest(user, tableName)))
+                .subscribeOn(scheduler)
+                .then();
     }
 
     @Override
@@ -125,15 +226,25 @@ public class UserAsyncRepositoryDynamoDBSDK1LowLevelImpl implements UserAsyncRep
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
-        return Mono.fromCallable(() -> amazonDynamoDBClient.deleteItem(new DeleteItemRequest(tableName, Map.of(ID_FIELD, new AttributeValue(id.toString()))))).then();
+        return Mono.fromCallable(() -> amazonDynamoDBClient.deleteItem(new DeleteItemRequest(tableName, Map.of(ID_FIELD, new AttributeValue(id.toString())))))
+                .subscribeOn(scheduler)
+                .then();
+    }
+
+    private ScanRequest scanRequest(Projection projection) {
+        return new ScanRequest(tableName)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
     }
 
-    private QueryRequest getLastNameIndexQuery(String lastName) {
+    private QueryRequest getLastNameIndexQuery(String lastName, Projection projection) {
         Map<String, AttributeValue> key = new HashMap<>();
         key.put(":lastName", new AttributeValue(lastName));
         return new QueryRequest(tableName)
                 .withKeyConditionExpression("lastName = :lastName")
                 .withIndexName("lastNameIndex")
-                .withExpressionAttributeValues(key);
+                .withExpressionAttributeValues(key)
+                .withProjectionExpression(projection.getExpression())
+                .withExpressionAttributeNames(projection.getExpressionAttributeNames());
     }
 }
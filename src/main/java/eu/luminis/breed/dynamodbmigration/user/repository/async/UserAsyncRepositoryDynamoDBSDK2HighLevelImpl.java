@@ -1,8 +1,18 @@
 package eu.luminis.breed.dynamodbmigration.user.repository.async;
 
 import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User;
+import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserTableSchema;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncIndex;
@@ -11,17 +21,30 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
 import static eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserMapper.MAPPER;
 
 @Slf4j
@@ -30,21 +53,43 @@ public class UserAsyncRepositoryDynamoDBSDK2HighLevelImpl implements UserAsyncRe
     private final DynamoDbAsyncTable<User> userDynamoDbAsyncTable;
     private final DynamoDbAsyncIndex<User> userDynamoDbAsyncIndex;
     private final DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient;
+    //the enhanced client does not support segments for scans (yet), so a parallel scan is done with the low level client
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
+    private final int pagePrefetch;
 
-    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName) {
-        dynamoDbEnhancedAsyncClient = DynamoDbEnhancedAsyncClient.create();
-        userDynamoDbAsyncTable = dynamoDbEnhancedAsyncClient.table(tableName, TableSchema.fromBean(User.class));
-        userDynamoDbAsyncIndex = userDynamoDbAsyncTable.index("lastNameIndex");
+    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbAsyncClient.create(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName, String endpoint) {
-        final DynamoDbAsyncClient dynamoDbClient = DynamoDbAsyncClient.builder()
+    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName, String endpoint, BatchGetOptions batchGetOptions,
+                                                        BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbAsyncClient.builder()
                 .endpointOverride(URI.create(endpoint))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName, DynamoDbAsyncClient dynamoDbAsyncClient, BatchGetOptions batchGetOptions,
+                                                        BatchWriteOptions batchWriteOptions) {
+        this(tableName, dynamoDbAsyncClient, batchGetOptions, batchWriteOptions, PipelinedPagination.DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param pagePrefetch number of pages of a scan or query that are read ahead of the subscriber
+     */
+    public UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(String tableName, DynamoDbAsyncClient dynamoDbAsyncClient, BatchGetOptions batchGetOptions,
+                                                        BatchWriteOptions batchWriteOptions, int pagePrefetch) {
+        this.tableName = tableName;
+        this.pagePrefetch = pagePrefetch;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
         this.dynamoDbEnhancedAsyncClient = DynamoDbEnhancedAsyncClient.builder()
-                .dynamoDbClient(dynamoDbClient)
+                .dynamoDbClient(dynamoDbAsyncClient)
                 .build();
-        userDynamoDbAsyncTable = dynamoDbEnhancedAsyncClient.table(tableName, TableSchema.fromBean(User.class));
+        userDynamoDbAsyncTable = dynamoDbEnhancedAsyncClient.table(tableName, UserTableSchema.USER_SCHEMA);
         userDynamoDbAsyncIndex = userDynamoDbAsyncTable.index("lastNameIndex");
     }
 
@@ -60,24 +105,94 @@ public class UserAsyncRepositoryDynamoDBSDK2HighLevelImpl implements UserAsyncRe
     }
 
     @Override
-    public Mono<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id) {
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> createOrUpdateUsers(Publisher<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        return batchWritePipeline.executeAsync(Flux.from(users)
+                .doOnNext(user -> {
+                    if (user.getId() == null) {
+                        user.setId(UUID.randomUUID());
+                    }
+                }), eu.luminis.breed.dynamodbmigration.user.model.User::getId, this::batchWrite);
+    }
+
+    private Mono<List<eu.luminis.breed.dynamodbmigration.user.model.User>> batchWrite(List<eu.luminis.breed.dynamodbmigration.user.model.User> users) {
+        final WriteBatch.Builder<User> writeBatchBuilder = WriteBatch.builder(User.class)
+                .mappedTableResource(userDynamoDbAsyncTable);
+        users
+                .stream()
+                .map(MAPPER::userToEnhancedUser)
+                .forEach(writeBatchBuilder::addPutItem);
+        return Mono.fromFuture(() -> dynamoDbEnhancedAsyncClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
+                .addWriteBatch(writeBatchBuilder.build()).build()))
+                .map(batchWriteResult -> batchWriteResult.unprocessedPutItemsForTable(userDynamoDbAsyncTable)
+                        .stream()
+                        .map(MAPPER::enhancedUserToUser)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Mono<eu.luminis.breed.dynamodbmigration.user.model.User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
-        return Mono.fromFuture(userDynamoDbAsyncTable.getItem(Key.builder().partitionValue(id.toString()).build()))
+        if (projection.isAll()) {
+            return Mono.fromFuture(userDynamoDbAsyncTable.getItem(Key.builder().partitionValue(id.toString()).build()))
+                    .map(MAPPER::enhancedUserToUser);
+        }
+        //the enhanced client can not get a projection, so the table schema only maps the item
+        return Mono.fromFuture(dynamoDbAsyncClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of(ID_FIELD, AttributeValue.builder().s(id.toString()).build()))
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames())
+                .build()))
+                .filter(GetItemResponse::hasItem)
+                .map(response -> userDynamoDbAsyncTable.tableSchema().mapToItem(response.item()))
                 .map(MAPPER::enhancedUserToUser);
     }
 
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll() {
-        return Flux.from(userDynamoDbAsyncTable.scan(ScanEnhancedRequest.builder().build()))
-                .map(Page::items)
-                .flatMapIterable(enhancedUsers -> enhancedUsers)
-                .map(MAPPER::enhancedUserToUser);
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> scanPage(limit, exclusiveStartId, projection), pagePrefetch);
+    }
+
+    @Override
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findAll(int totalSegments, Projection projection) {
+        final TableSchema<User> tableSchema = userDynamoDbAsyncTable.tableSchema();
+        return ReactiveSegmentedScan.scan(totalSegments, segment -> {
+            final Supplier<ScanRequest.Builder> scanRequest = () -> ScanRequest.builder()
+                    .tableName(tableName)
+                    .segment(segment)
+                    .totalSegments(totalSegments)
+                    .projectionExpression(projection.getExpression())
+                    .expressionAttributeNames(projection.getExpressionAttributeNames());
+            return Mono.fromFuture(() -> dynamoDbAsyncClient.scan(scanRequest.get().build()))
+                    .expand(scanResponse -> scanResponse.hasLastEvaluatedKey() ?
+                            Mono.fromFuture(() -> dynamoDbAsyncClient.scan(scanRequest.get().exclusiveStartKey(scanResponse.lastEvaluatedKey()).build())) : Mono.empty())
+                    .flatMapIterable(ScanResponse::items, ReactiveSegmentedScan.PAGE_PREFETCH)
+                    .map(tableSchema::mapToItem)
+                    .map(MAPPER::enhancedUserToUser);
+        });
+    }
+
+    @Override
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.from(userDynamoDbAsyncTable.scan(scanEnhancedRequest(projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))
+                .build()))
+                .map(page -> UserPage.of(page.items().stream().map(MAPPER::enhancedUserToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(page.lastEvaluatedKey())));
     }
 
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids) {
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByIds(List<UUID> ids, Projection projection) {
+        if (!projection.isAll()) {
+            return batchGetPipeline.executeAsync(ids, eu.luminis.breed.dynamodbmigration.user.model.User::getId, batch -> batchGet(batch, projection));
+        }
         final ReadBatch.Builder<User> readBatchBuilder = ReadBatch.builder(User.class)
                 .mappedTableResource(userDynamoDbAsyncTable);
         ids
@@ -86,21 +201,56 @@ public class UserAsyncRepositoryDynamoDBSDK2HighLevelImpl implements UserAsyncRe
                         .partitionValue(uuid.toString())
                         .build())
                 .forEach(readBatchBuilder::addGetItem);
-        return Flux.from(dynamoDbEnhancedAsyncClient.batchGetItem(BatchGetItemEnhancedRequest.builder()
+        //the enhanced client asks for unprocessed keys as the next page, the pipeline adds the backoff in between
+        return batchGetPipeline.pacePages(dynamoDbEnhancedAsyncClient.batchGetItem(BatchGetItemEnhancedRequest.builder()
                 .addReadBatch(readBatchBuilder.build()).build()))
                 .map(batchGetResultPage -> batchGetResultPage.resultsForTable(userDynamoDbAsyncTable))
                 .flatMapIterable(users -> users)
                 .map(MAPPER::enhancedUserToUser);
     }
 
+    //the enhanced client can not batch get a projection, so the table schema only maps the items
+    private Mono<BatchGetResult<UUID, eu.luminis.breed.dynamodbmigration.user.model.User>> batchGet(List<UUID> ids, Projection projection) {
+        final TableSchema<User> tableSchema = userDynamoDbAsyncTable.tableSchema();
+        return Mono.fromFuture(() -> dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(ids.stream()
+                                .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
+                                .collect(Collectors.toList()))
+                        .projectionExpression(projection.getExpression())
+                        .expressionAttributeNames(projection.getExpressionAttributeNames())
+                        .build()))
+                .build()))
+                .map(batchGetItemResponse -> {
+                    final KeysAndAttributes unprocessedKeys = batchGetItemResponse.unprocessedKeys().get(tableName);
+                    return BatchGetResult.of(
+                            batchGetItemResponse.responses().getOrDefault(tableName, List.of()).stream()
+                                    .map(tableSchema::mapToItem)
+                                    .map(MAPPER::enhancedUserToUser)
+                                    .collect(Collectors.toList()),
+                            unprocessedKeys == null ? List.of() : unprocessedKeys.keys().stream()
+                                    .map(key -> UUID.fromString(key.get(ID_FIELD).s()))
+                                    .collect(Collectors.toList()));
+                });
+    }
+
     @Override
-    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName) {
-        return Flux.from(userDynamoDbAsyncIndex.query(QueryConditional
-                .keyEqualTo(Key.builder()
-                        .partitionValue(lastName).build())))
-                .map(Page::items)
-                .flatMapIterable(enhancedUsers -> enhancedUsers)
-                .map(MAPPER::enhancedUserToUser);
+    public Flux<eu.luminis.breed.dynamodbmigration.user.model.User> findByLastName(final String lastName, Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> queryPage(lastName, limit, exclusiveStartId, projection), pagePrefetch);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return queryPage(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> queryPage(String lastName, Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.from(userDynamoDbAsyncIndex.query(queryEnhancedRequest(lastName, projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))
+                .build()))
+                .map(page -> UserPage.of(page.items().stream().map(MAPPER::enhancedUserToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(page.lastEvaluatedKey())));
     }
 
     @Override
@@ -119,4 +269,23 @@ public class UserAsyncRepositoryDynamoDBSDK2HighLevelImpl implements UserAsyncRe
         return Mono.fromFuture(userDynamoDbAsyncTable.deleteItem(Key.builder().partitionValue(id.toString()).build()))
                 .then();
     }
+
+    private static ScanEnhancedRequest.Builder scanEnhancedRequest(Projection projection) {
+        final ScanEnhancedRequest.Builder scanRequest = ScanEnhancedRequest.builder();
+        if (!projection.isAll()) {
+            scanRequest.attributesToProject(projection.getAttributes());
+        }
+        return scanRequest;
+    }
+
+    private static QueryEnhancedRequest.Builder queryEnhancedRequest(String lastName, Projection projection) {
+        final QueryEnhancedRequest.Builder queryRequest = QueryEnhancedRequest.builder()
+                .queryConditional(QueryConditional
+                        .keyEqualTo(Key.builder()
+                                .partitionValue(lastName).build()));
+        if (!projection.isAll()) {
+            queryRequest.attributesToProject(projection.getAttributes());
+        }
+        return queryRequest;
+    }
 }
@@ -3,32 +3,39 @@ package eu.luminis.breed.dynamodbmigration.user.repository.async;
 import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper;
 import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetPipeline;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetResult;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWritePipeline;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.ListUtils;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
-import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
-import software.amazon.awssdk.services.dynamodb.paginators.BatchGetItemPublisher;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
-import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
@@ -38,17 +45,36 @@ public class UserAsyncRepositoryDynamoDBSDK2LowLevelImpl implements UserAsyncRep
 
     private final DynamoDbAsyncClient dynamoDbAsyncClient;
     private final String tableName;
+    private final BatchGetPipeline batchGetPipeline;
+    private final BatchWritePipeline batchWritePipeline;
+    private final int pagePrefetch;
 
-    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName) {
-        this.dynamoDbAsyncClient = DynamoDbAsyncClient.create();
-        this.tableName = tableName;
+    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName, BatchGetOptions batchGetOptions, BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbAsyncClient.create(), batchGetOptions, batchWriteOptions);
     }
 
-    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName, String endpoint) {
-        this.dynamoDbAsyncClient = DynamoDbAsyncClient.builder()
+    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName, String endpoint, BatchGetOptions batchGetOptions,
+                                                       BatchWriteOptions batchWriteOptions) {
+        this(tableName, DynamoDbAsyncClient.builder()
                 .endpointOverride(URI.create(endpoint))
-                .build();
+                .build(), batchGetOptions, batchWriteOptions);
+    }
+
+    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName, DynamoDbAsyncClient dynamoDbAsyncClient, BatchGetOptions batchGetOptions,
+                                                       BatchWriteOptions batchWriteOptions) {
+        this(tableName, dynamoDbAsyncClient, batchGetOptions, batchWriteOptions, PipelinedPagination.DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param pagePrefetch number of pages of a scan or query that are read ahead of the subscriber
+     */
+    public UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(String tableName, DynamoDbAsyncClient dynamoDbAsyncClient, BatchGetOptions batchGetOptions,
+                                                       BatchWriteOptions batchWriteOptions, int pagePrefetch) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
         this.tableName = tableName;
+        this.batchGetPipeline = new BatchGetPipeline(getClass().getSimpleName(), batchGetOptions);
+        this.batchWritePipeline = new BatchWritePipeline(getClass().getSimpleName(), batchWriteOptions);
+        this.pagePrefetch = pagePrefetch;
     }
 
     @Override
@@ -64,76 +90,123 @@ public class UserAsyncRepositoryDynamoDBSDK2LowLevelImpl implements UserAsyncRep
     }
 
     @Override
-    public Mono<User> getUserById(UUID id) {
+    public Flux<User> createOrUpdateUsers(Publisher<User> users) {
+        return batchWritePipeline.executeAsync(Flux.from(users)
+                .doOnNext(user -> {
+                    if (user.getId() == null) {
+                        user.setId(UUID.randomUUID());
+                    }
+                }), User::getId, this::batchWrite);
+    }
+
+    private Mono<List<User>> batchWrite(List<User> users) {
+        return Mono.fromFuture(() -> dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder()
+                .requestItems(Map.of(tableName, users.stream()
+                        .map(user -> WriteRequest.builder()
+                                .putRequest(PutRequest.builder().item(UserMapper.mapToItem(user, true)).build())
+                                .build())
+                        .collect(Collectors.toList())))
+                .build()))
+                .map(batchWriteItemResponse -> {
+                    final Set<String> unprocessedIds = batchWriteItemResponse.unprocessedItems().getOrDefault(tableName, List.of()).stream()
+                            .map(writeRequest -> writeRequest.putRequest().item().get(ID_FIELD).s())
+                            .collect(Collectors.toSet());
+                    return users.stream()
+                            .filter(user -> unprocessedIds.contains(user.getId().toString()))
+                            .collect(Collectors.toList());
+                });
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID id, Projection projection) {
         if (id == null) {
             throw UserException.errorIdIsNull();
         }
         return Mono.fromFuture(dynamoDbAsyncClient.getItem(GetItemRequest.builder().tableName(tableName).key(Map.of(ID_FIELD,
-                AttributeValue.builder().s(id.toString()).build())).build()))
+                AttributeValue.builder().s(id.toString()).build()))
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames())
+                .build()))
                 .map(UserMapper::mapToUser);
     }
 
     @Override
-    public Flux<User> findAll() {
-        return Mono.fromFuture(dynamoDbAsyncClient.scan(ScanRequest.builder().tableName(tableName).build()))
-                .expand(scanResponse -> scanResponse.hasLastEvaluatedKey() ?
-                        Mono.fromFuture(() -> dynamoDbAsyncClient.scan(ScanRequest.builder().tableName(tableName).exclusiveStartKey(scanResponse.lastEvaluatedKey()).build())) : Mono.empty())
-                .flatMapIterable(ScanResponse::items)
-                .map(UserMapper::mapToUser);
+    public Flux<User> findAll(Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> scanPage(limit, exclusiveStartId, projection), pagePrefetch);
     }
 
     @Override
-    public Flux<User> findByIds(List<UUID> ids) {
-        //limiting to 100, because that is one of batchgetitem limits defined by AWS...
-        final List<List<UUID>> chunks = ListUtils.partition(new ArrayList<>(ids), 100);
-        //displaying multiple ways that lead to the same
-        return getRandomMethod(chunks);
-    }
-
-    private Flux<User> getRandomMethod(final List<List<UUID>> chunks) {
-        List<Function<List<List<UUID>>, Flux<User>>> methods = new ArrayList<>();
-        methods.add(this::approachOne);
-        methods.add(this::approachTwo);
-        return methods.get(new Random().nextInt(methods.size())).apply(chunks);
-    }
-
-    private Flux<User> approachOne(final List<List<UUID>> chunks) {
-        return Flux.fromIterable(chunks)
-                .map(uuids -> dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder()
-                        .requestItems(Map.of(tableName, KeysAndAttributes.builder()
-                                .keys(uuids.stream()
-                                        .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
-                                        .collect(Collectors.toList()))
-                                .build()))
-                        .build()))
-                .flatMap(Mono::fromFuture)
-                .flatMap(batchGetItemResponse -> Flux.fromStream(batchGetItemResponse.responses().get(tableName).stream().map(UserMapper::mapToUser)));
+    public Flux<User> findAll(int totalSegments, Projection projection) {
+        return ReactiveSegmentedScan.scan(totalSegments, segment -> {
+            final Supplier<ScanRequest.Builder> scanRequest = () -> scanRequestBuilder(projection)
+                    .segment(segment)
+                    .totalSegments(totalSegments);
+            return Mono.fromFuture(() -> dynamoDbAsyncClient.scan(scanRequest.get().build()))
+                    .expand(scanResponse -> scanResponse.hasLastEvaluatedKey() ?
+                            Mono.fromFuture(() -> dynamoDbAsyncClient.scan(scanRequest.get().exclusiveStartKey(scanResponse.lastEvaluatedKey()).build())) : Mono.empty())
+                    .flatMapIterable(ScanResponse::items, ReactiveSegmentedScan.PAGE_PREFETCH)
+                    .map(UserMapper::mapToUser);
+        });
+    }
 
+    @Override
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return scanPage(pageSize, exclusiveStartId, projection);
     }
 
-    private Flux<User> approachTwo(final List<List<UUID>> chunks) {
-        final List<BatchGetItemPublisher> batchGetItemPublishers = chunks
-                .stream()
-                .map(uuids -> dynamoDbAsyncClient.batchGetItemPaginator(BatchGetItemRequest.builder()
-                        .requestItems(Map.of(tableName, KeysAndAttributes.builder()
-                                .keys(uuids.stream()
-                                        .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
-                                        .collect(Collectors.toList()))
-                                .build()))
+    private Mono<UserPage> scanPage(Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromFuture(() -> dynamoDbAsyncClient.scan(scanRequestBuilder(projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId))
+                .build()))
+                .map(scanResponse -> UserPage.of(scanResponse.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(scanResponse.lastEvaluatedKey())));
+    }
+
+    @Override
+    public Flux<User> findByIds(List<UUID> ids, Projection projection) {
+        return batchGetPipeline.executeAsync(ids, User::getId, batch -> batchGet(batch, projection));
+    }
+
+    private Mono<BatchGetResult<UUID, User>> batchGet(List<UUID> ids, Projection projection) {
+        return Mono.fromFuture(() -> dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder()
+                .requestItems(Map.of(tableName, KeysAndAttributes.builder()
+                        .keys(ids.stream()
+                                .map(id -> Map.of(ID_FIELD, AttributeValue.builder().s(String.valueOf(id)).build()))
+                                .collect(Collectors.toList()))
+                        .projectionExpression(projection.getExpression())
+                        .expressionAttributeNames(projection.getExpressionAttributeNames())
                         .build()))
-                .collect(Collectors.toList());
-        return Flux.merge(batchGetItemPublishers)
-                .flatMap(batchGetItemResponse -> Flux.fromStream(batchGetItemResponse.responses().get(tableName).stream().map(UserMapper::mapToUser)));
+                .build()))
+                .map(batchGetItemResponse -> {
+                    final KeysAndAttributes unprocessedKeys = batchGetItemResponse.unprocessedKeys().get(tableName);
+                    return BatchGetResult.of(
+                            batchGetItemResponse.responses().getOrDefault(tableName, List.of()).stream()
+                                    .map(UserMapper::mapToUser)
+                                    .collect(Collectors.toList()),
+                            unprocessedKeys == null ? List.of() : unprocessedKeys.keys().stream()
+                                    .map(key -> UUID.fromString(key.get(ID_FIELD).s()))
+                                    .collect(Collectors.toList()));
+                });
     }
 
     @Override
-    public Flux<User> findByLastName(String lastName) {
-        return Mono.fromFuture(dynamoDbAsyncClient.query(getQueryRequestBuilder(lastName).build()))
-                .expand(response -> response.hasLastEvaluatedKey() ?
-                        Mono.fromFuture(() -> dynamoDbAsyncClient.query(getQueryRequestBuilder(lastName).exclusiveStartKey(response.lastEvaluatedKey()).build())) :
-                        Mono.empty())
-                .flatMapIterable(QueryResponse::items)
-                .map(UserMapper::mapToUser);
+    public Flux<User> findByLastName(String lastName, Projection projection) {
+        return PipelinedPagination.users((limit, exclusiveStartId) -> queryPage(lastName, limit, exclusiveStartId, projection), pagePrefetch);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return queryPage(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    private Mono<UserPage> queryPage(String lastName, Integer limit, UUID exclusiveStartId, Projection projection) {
+        return Mono.fromFuture(() -> dynamoDbAsyncClient.query(getQueryRequestBuilder(lastName, projection)
+                .limit(limit)
+                .exclusiveStartKey(UserMapper.exclusiveStartKey(exclusiveStartId, lastName))
+                .build()))
+                .map(queryResponse -> UserPage.of(queryResponse.items().stream().map(UserMapper::mapToUser).collect(Collectors.toList()),
+                        UserMapper.lastEvaluatedId(queryResponse.lastEvaluatedKey())));
     }
 
     @Override
@@ -162,13 +235,22 @@ public class UserAsyncRepositoryDynamoDBSDK2LowLevelImpl implements UserAsyncRep
                 .then();
     }
 
-    private QueryRequest.Builder getQueryRequestBuilder(String lastName) {
+    private ScanRequest.Builder scanRequestBuilder(Projection projection) {
+        return ScanRequest.builder()
+                .tableName(tableName)
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames());
+    }
+
+    private QueryRequest.Builder getQueryRequestBuilder(String lastName, Projection projection) {
         Map<String, AttributeValue> key = new HashMap<>();
         key.put(":lastName", AttributeValue.builder().s(lastName).build());
         return QueryRequest.builder()
                 .tableName(tableName)
                 .keyConditionExpression("lastName = :lastName")
                 .indexName("lastNameIndex")
-                .expressionAttributeValues(key);
+                .expressionAttributeValues(key)
+                .projectionExpression(projection.getExpression())
+                .expressionAttributeNames(projection.getExpressionAttributeNames());
     }
 }
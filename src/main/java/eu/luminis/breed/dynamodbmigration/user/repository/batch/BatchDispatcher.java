@@ -0,0 +1,102 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Runs the batches of a single sync call concurrently on a bounded pool that is shared by all batch pipelines, the
+ * calling thread included.
+ */
+public final class BatchDispatcher {
+
+    //same as the default max connections of the sync clients, more concurrent calls would only wait for a connection
+    private static final int MAX_WORKERS = 50;
+    private static final ExecutorService WORKERS = createWorkers();
+
+    private BatchDispatcher() {
+    }
+
+    /**
+     * @return the items of all batches, in the order of the batches
+     */
+    public static <B, I> List<I> dispatch(List<B> batches, int concurrency, Function<B, List<I>> batchExecutor) {
+        final int workers = Math.min(concurrency, batches.size());
+        if (workers <= 1) {
+            final List<I> items = new ArrayList<>();
+            batches.forEach(batch -> items.addAll(batchExecutor.apply(batch)));
+            return items;
+        }
+        //every worker takes the next batch that is not taken yet, so no more than the concurrency are requested at once
+        final AtomicReferenceArray<List<I>> results = new AtomicReferenceArray<>(batches.size());
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final CountDownLatch remainingBatches = new CountDownLatch(batches.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable worker = () -> {
+            int batch;
+            while ((batch = nextBatch.getAndIncrement()) < batches.size()) {
+                try {
+                    results.set(batch, batchExecutor.apply(batches.get(batch)));
+                    remainingBatches.countDown();
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    //when one batch failed, there is no point in doing the others or waiting for them
+                    nextBatch.set(batches.size());
+                    while (remainingBatches.getCount() > 0) {
+                        remainingBatches.countDown();
+                    }
+                }
+            }
+        };
+        final List<Future<?>> futures = new ArrayList<>(workers - 1);
+        try {
+            for (int i = 1; i < workers; i++) {
+                futures.add(WORKERS.submit(worker));
+            }
+            //the calling thread works as well, so a call always makes progress, even when the pool is busy
+            worker.run();
+            remainingBatches.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw UserException.error("Interrupted while waiting for batches", e);
+        } finally {
+            nextBatch.set(batches.size());
+            futures.forEach(future -> future.cancel(true));
+        }
+        if (failure.get() instanceof Error) {
+            throw (Error) failure.get();
+        } else if (failure.get() != null) {
+            throw (RuntimeException) failure.get();
+        }
+        final List<I> items = new ArrayList<>();
+        for (int batch = 0; batch < batches.size(); batch++) {
+            items.addAll(results.get(batch));
+        }
+        return items;
+    }
+
+    private static ExecutorService createWorkers() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "dynamodb-batch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,38 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * How a {@link BatchGetPipeline} dispatches the batches of a single call.
+ */
+@Value
+@Builder
+public class BatchGetOptions {
+
+    //20 batches of 100 keys, so 2.000 ids are fetched in about one round trip
+    private static final int DEFAULT_CONCURRENCY = 20;
+    //same as the default prefetch of reactor for inner publishers of flatMap
+    private static final int DEFAULT_PREFETCH = 32;
+
+    /**
+     * Maximum number of batches of a single call that are requested at the same time.
+     */
+    @Builder.Default
+    int concurrency = DEFAULT_CONCURRENCY;
+    /**
+     * Whether the items are returned in the order of the requested keys, instead of the order DynamoDB returned them in.
+     * A reactive call then has to hold back the items of a batch until the batches before it are done.
+     */
+    @Builder.Default
+    boolean keepRequestOrder = false;
+    /**
+     * Number of items a reactive call requests at once from every batch that is in flight.
+     */
+    @Builder.Default
+    int prefetch = DEFAULT_PREFETCH;
+
+    public static BatchGetOptions defaults() {
+        return BatchGetOptions.builder().build();
+    }
+}
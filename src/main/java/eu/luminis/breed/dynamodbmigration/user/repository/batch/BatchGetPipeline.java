@@ -0,0 +1,314 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.BatchLoadContext;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.collections4.ListUtils;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Fetches keys with BatchGetItem and keeps asking for the UnprocessedKeys that DynamoDB returns when it is throttled or
+ * the response became too large. Every retry waits according to the {@link RetryBackoff}, and a call fails when its keys
+ * are still unprocessed after the maximum number of retries, instead of silently returning less items than asked for.
+ * <p>
+ * The number of retry rounds per batch is published as the distribution summary {@value #RETRY_ROUNDS_METRIC}, the
+ * batches that ran out of retries as the counter {@value #RETRIES_EXHAUSTED_METRIC} and the time per batch as the timer
+ * {@value #BATCH_LATENCY_METRIC}, all tagged with the repository.
+ */
+public final class BatchGetPipeline {
+
+    //maximum number of keys in one BatchGetItem call defined by AWS
+    public static final int MAX_KEYS_PER_BATCH = 100;
+    static final String RETRY_ROUNDS_METRIC = "dynamodb.batchget.retry.rounds";
+    static final String RETRIES_EXHAUSTED_METRIC = "dynamodb.batchget.retry.exhausted";
+    static final String BATCH_LATENCY_METRIC = "dynamodb.batchget.batch.latency";
+
+    private final BatchGetOptions options;
+    private final RetryBackoff backoff;
+    private final DistributionSummary retryRounds;
+    private final Counter retriesExhausted;
+    private final Timer batchLatency;
+
+    public BatchGetPipeline(String repository) {
+        this(repository, BatchGetOptions.defaults());
+    }
+
+    public BatchGetPipeline(String repository, BatchGetOptions options) {
+        this(repository, options, RetryBackoff.defaults());
+    }
+
+    public BatchGetPipeline(String repository, BatchGetOptions options, RetryBackoff backoff) {
+        if (options.getConcurrency() < 1 || options.getPrefetch() < 1) {
+            throw UserException.error("Batch get concurrency and prefetch should be at least 1, but were {} and {}",
+                    options.getConcurrency(), options.getPrefetch());
+        }
+        this.options = options;
+        this.backoff = backoff;
+        this.retryRounds = DistributionSummary.builder(RETRY_ROUNDS_METRIC)
+                .description("Number of BatchGetItem retries needed to get the unprocessed keys of a batch")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.retriesExhausted = Counter.builder(RETRIES_EXHAUSTED_METRIC)
+                .description("Number of batches that still had unprocessed keys after the maximum number of retries")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.batchLatency = Timer.builder(BATCH_LATENCY_METRIC)
+                .description("Time to get a batch of keys, retries of unprocessed keys included")
+                .tag("repository", repository)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Removes duplicate keys, splits them in batches of {@value #MAX_KEYS_PER_BATCH} and fetches these batches
+     * concurrently on a bounded pool that is shared by all sync repositories, the calling thread included. Unprocessed
+     * keys are retried within the batch they belong to.
+     *
+     * @param keyOf    gives the key of an item, used to return the items in request order when configured
+     * @param batchGet does a single BatchGetItem call for at most {@value #MAX_KEYS_PER_BATCH} keys
+     */
+    public <K, I> List<I> execute(List<K> keys, Function<I, K> keyOf, Function<List<K>, BatchGetResult<K, I>> batchGet) {
+        final List<K> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        final List<List<K>> batches = ListUtils.partition(distinctKeys, MAX_KEYS_PER_BATCH);
+        final List<I> items = BatchDispatcher.dispatch(batches, options.getConcurrency(), batch -> executeBatch(batch, batchGet));
+        return options.isKeepRequestOrder() ? inRequestOrder(distinctKeys, items, keyOf) : items;
+    }
+
+    /**
+     * Reactive variant of {@link #execute(List, Function, Function)}, waiting between retries without blocking a thread.
+     * Batches are subscribed to with the concurrency and prefetch of the options, and in request order the items of a
+     * batch are emitted when all batches before it are emitted.
+     *
+     * @param keyOf    gives the key of an item, used to emit the items in request order when configured
+     * @param batchGet does a single BatchGetItem call for at most {@value #MAX_KEYS_PER_BATCH} keys
+     */
+    public <K, I> Flux<I> executeAsync(List<K> keys, Function<I, K> keyOf, Function<List<K>, Mono<BatchGetResult<K, I>>> batchGet) {
+        return Flux.defer(() -> {
+            final List<List<K>> batches = ListUtils.partition(new ArrayList<>(new LinkedHashSet<>(keys)), MAX_KEYS_PER_BATCH);
+            if (options.isKeepRequestOrder()) {
+                return Flux.fromIterable(batches)
+                        .flatMapSequential(batch -> executeBatchAsync(batch, batchGet)
+                                        .collectList()
+                                        .flatMapIterable(items -> inRequestOrder(batch, items, keyOf)),
+                                options.getConcurrency(), options.getPrefetch());
+            }
+            return Flux.fromIterable(batches)
+                    .flatMap(batch -> executeBatchAsync(batch, batchGet), options.getConcurrency(), options.getPrefetch());
+        });
+    }
+
+    /**
+     * Reads all pages of an SDK2 batch get paginator. The paginator asks for the unprocessed keys of a page as the next
+     * page, but without waiting, so this waits before every page after the first one.
+     */
+    public <P> List<P> drainPages(Iterable<P> pages) {
+        final List<P> result = new ArrayList<>();
+        final Iterator<P> iterator = pages.iterator();
+        int retry = 0;
+        if (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        //hasNext only checks for unprocessed keys of the previous page, next does the actual call
+        while (iterator.hasNext()) {
+            if (retry >= backoff.getMaxRetries()) {
+                throw retriesExhausted(retry);
+            }
+            sleep(backoff.delay(retry++));
+            result.add(iterator.next());
+        }
+        retryRounds.record(retry);
+        return result;
+    }
+
+    /**
+     * Reactive variant of {@link #drainPages(Iterable)}. Pages are requested one at a time, and every page after the
+     * first one only after the backoff has passed. An SDK2 paginator only shows whether there is a next page by
+     * fetching it, so the retry budget is checked when a page arrives.
+     */
+    public <P> Flux<P> pacePages(Publisher<P> pages) {
+        return Flux.create(sink -> {
+            final PacingSubscriber<P> subscriber = new PacingSubscriber<>(sink);
+            sink.onDispose(subscriber);
+            pages.subscribe(subscriber);
+        });
+    }
+
+    /**
+     * Retry strategy for the batch loads of the {@link com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper},
+     * which retries unprocessed keys itself. When it gives up, the mapper throws a
+     * {@link com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.BatchGetItemException}.
+     */
+    public DynamoDBMapperConfig.BatchLoadRetryStrategy batchLoadRetryStrategy() {
+        return new DynamoDBMapperConfig.BatchLoadRetryStrategy() {
+            @Override
+            public boolean shouldRetry(BatchLoadContext batchLoadContext) {
+                final int retriesAttempted = batchLoadContext.getRetriesAttempted();
+                final var unprocessedKeys = batchLoadContext.getBatchGetItemResult().getUnprocessedKeys();
+                if (unprocessedKeys == null || unprocessedKeys.isEmpty()) {
+                    retryRounds.record(retriesAttempted);
+                    return false;
+                }
+                if (retriesAttempted >= backoff.getMaxRetries()) {
+                    retryRounds.record(retriesAttempted);
+                    retriesExhausted.increment();
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public long getDelayBeforeNextRetry(BatchLoadContext batchLoadContext) {
+                //the mapper already counts the retry it is about to do
+                return backoff.delay(batchLoadContext.getRetriesAttempted() - 1).toMillis();
+            }
+        };
+    }
+
+    private static <K, I> List<I> inRequestOrder(List<K> keys, List<I> items, Function<I, K> keyOf) {
+        final Map<K, I> itemsByKey = new HashMap<>();
+        items.forEach(item -> itemsByKey.put(keyOf.apply(item), item));
+        return keys.stream()
+                .map(itemsByKey::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private <K, I> List<I> executeBatch(List<K> batch, Function<List<K>, BatchGetResult<K, I>> batchGet) {
+        return batchLatency.record(() -> retryBatch(batch, batchGet));
+    }
+
+    private <K, I> List<I> retryBatch(List<K> batch, Function<List<K>, BatchGetResult<K, I>> batchGet) {
+        BatchGetResult<K, I> result = batchGet.apply(batch);
+        final List<I> items = new ArrayList<>(result.getItems());
+        int retry = 0;
+        while (hasUnprocessedKeys(result)) {
+            if (retry >= backoff.getMaxRetries()) {
+                throw retriesExhausted(result.getUnprocessedKeys().size(), retry);
+            }
+            sleep(backoff.delay(retry++));
+            result = batchGet.apply(result.getUnprocessedKeys());
+            items.addAll(result.getItems());
+        }
+        retryRounds.record(retry);
+        return items;
+    }
+
+    private <K, I> Flux<I> executeBatchAsync(List<K> batch, Function<List<K>, Mono<BatchGetResult<K, I>>> batchGet) {
+        return Flux.defer(() -> {
+            final AtomicInteger retries = new AtomicInteger();
+            final long start = System.nanoTime();
+            return Mono.defer(() -> batchGet.apply(batch))
+                    .expand(result -> {
+                        if (!hasUnprocessedKeys(result)) {
+                            return Mono.empty();
+                        }
+                        final int retry = retries.getAndIncrement();
+                        if (retry >= backoff.getMaxRetries()) {
+                            return Mono.error(retriesExhausted(result.getUnprocessedKeys().size(), retry));
+                        }
+                        return Mono.delay(backoff.delay(retry))
+                                .then(Mono.defer(() -> batchGet.apply(result.getUnprocessedKeys())));
+                    })
+                    .doOnComplete(() -> retryRounds.record(retries.get()))
+                    .doOnTerminate(() -> batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .flatMapIterable(BatchGetResult::getItems);
+        });
+    }
+
+    private static boolean hasUnprocessedKeys(BatchGetResult<?, ?> result) {
+        return result.getUnprocessedKeys() != null && !result.getUnprocessedKeys().isEmpty();
+    }
+
+    private UserException retriesExhausted(int unprocessedKeys, int retries) {
+        retryRounds.record(retries);
+        retriesExhausted.increment();
+        return UserException.error("{} keys were still unprocessed after {} retries", unprocessedKeys, retries);
+    }
+
+    private UserException retriesExhausted(int retries) {
+        retryRounds.record(retries);
+        retriesExhausted.increment();
+        return UserException.error("Keys were still unprocessed after {} retries", retries);
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw UserException.error("Interrupted while waiting to retry unprocessed keys", e);
+        }
+    }
+
+    private final class PacingSubscriber<P> extends BaseSubscriber<P> {
+
+        private final FluxSink<P> sink;
+        private volatile Disposable nextPage = Disposables.disposed();
+        private int pages;
+
+        private PacingSubscriber(FluxSink<P> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+
+        @Override
+        protected void hookOnNext(P page) {
+            final int retry = pages++;
+            if (retry > backoff.getMaxRetries()) {
+                cancel();
+                sink.error(retriesExhausted(retry));
+                return;
+            }
+            sink.next(page);
+            //the paginator completes right after a page without unprocessed keys, which disposes this scheduled request
+            nextPage = Schedulers.parallel().schedule(() -> request(1), backoff.delay(retry).toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            nextPage.dispose();
+            retryRounds.record(Math.max(0, pages - 1));
+            sink.complete();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            nextPage.dispose();
+            sink.error(throwable);
+        }
+
+        @Override
+        protected void hookOnCancel() {
+            nextPage.dispose();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The items of one BatchGetItem call together with the keys that DynamoDB did not process.
+ */
+@Value(staticConstructor = "of")
+public class BatchGetResult<K, I> {
+    List<I> items;
+    List<K> unprocessedKeys;
+}
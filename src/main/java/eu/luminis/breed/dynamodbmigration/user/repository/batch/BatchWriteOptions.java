@@ -0,0 +1,25 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * How a {@link BatchWritePipeline} dispatches the batches of a single call.
+ */
+@Value
+@Builder
+public class BatchWriteOptions {
+
+    //20 batches of 25 items, so 500 users are written in about one round trip
+    private static final int DEFAULT_CONCURRENCY = 20;
+
+    /**
+     * Maximum number of batches of a single call that are written at the same time.
+     */
+    @Builder.Default
+    int concurrency = DEFAULT_CONCURRENCY;
+
+    public static BatchWriteOptions defaults() {
+        return BatchWriteOptions.builder().build();
+    }
+}
@@ -0,0 +1,189 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.collections4.ListUtils;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Writes items with BatchWriteItem and keeps writing the UnprocessedItems that DynamoDB returns when it is throttled.
+ * Every retry waits according to the {@link RetryBackoff}, and a call fails when items are still unprocessed after the
+ * maximum number of retries.
+ * <p>
+ * The number of retry rounds per batch is published as the distribution summary {@value #RETRY_ROUNDS_METRIC}, the
+ * batches that ran out of retries as the counter {@value #RETRIES_EXHAUSTED_METRIC} and the time per batch as the timer
+ * {@value #BATCH_LATENCY_METRIC}, all tagged with the repository.
+ */
+public final class BatchWritePipeline {
+
+    //maximum number of items in one BatchWriteItem call defined by AWS
+    public static final int MAX_ITEMS_PER_BATCH = 25;
+    static final String RETRY_ROUNDS_METRIC = "dynamodb.batchwrite.retry.rounds";
+    static final String RETRIES_EXHAUSTED_METRIC = "dynamodb.batchwrite.retry.exhausted";
+    static final String BATCH_LATENCY_METRIC = "dynamodb.batchwrite.batch.latency";
+
+    private final BatchWriteOptions options;
+    private final RetryBackoff backoff;
+    private final DistributionSummary retryRounds;
+    private final Counter retriesExhausted;
+    private final Timer batchLatency;
+
+    public BatchWritePipeline(String repository) {
+        this(repository, BatchWriteOptions.defaults());
+    }
+
+    public BatchWritePipeline(String repository, BatchWriteOptions options) {
+        this(repository, options, RetryBackoff.defaults());
+    }
+
+    public BatchWritePipeline(String repository, BatchWriteOptions options, RetryBackoff backoff) {
+        if (options.getConcurrency() < 1) {
+            throw UserException.error("Batch write concurrency should be at least 1, but was {}", options.getConcurrency());
+        }
+        this.options = options;
+        this.backoff = backoff;
+        this.retryRounds = DistributionSummary.builder(RETRY_ROUNDS_METRIC)
+                .description("Number of BatchWriteItem retries needed to write the unprocessed items of a batch")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.retriesExhausted = Counter.builder(RETRIES_EXHAUSTED_METRIC)
+                .description("Number of batches that still had unprocessed items after the maximum number of retries")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.batchLatency = Timer.builder(BATCH_LATENCY_METRIC)
+                .description("Time to write a batch of items, retries of unprocessed items included")
+                .tag("repository", repository)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Splits the items in batches of {@value #MAX_ITEMS_PER_BATCH} and writes these batches concurrently on the pool
+     * that is shared by all sync repositories, the calling thread included. A batch may not contain the same key twice,
+     * so of items with the same key only the last one is written. Unprocessed items are retried within their batch.
+     *
+     * @param keyOf      gives the key of an item
+     * @param batchWrite does a single BatchWriteItem call for at most {@value #MAX_ITEMS_PER_BATCH} items and returns the
+     *                   unprocessed items
+     * @return the written items
+     */
+    public <K, I> List<I> execute(List<I> items, Function<I, K> keyOf, Function<List<I>, List<I>> batchWrite) {
+        final List<I> distinctItems = lastPerKey(items, keyOf);
+        final List<List<I>> batches = ListUtils.partition(distinctItems, MAX_ITEMS_PER_BATCH);
+        BatchDispatcher.dispatch(batches, options.getConcurrency(), batch -> executeBatch(batch, batchWrite));
+        return distinctItems;
+    }
+
+    /**
+     * Reactive variant of {@link #execute(List, Function, Function)}, waiting between retries without blocking a thread.
+     * Items are collected in batches as they arrive, so only items with the same key within one batch are merged. Items
+     * with the same key in different batches can be written in any order.
+     *
+     * @param keyOf      gives the key of an item
+     * @param batchWrite does a single BatchWriteItem call for at most {@value #MAX_ITEMS_PER_BATCH} items and returns the
+     *                   unprocessed items
+     * @return the written items, per batch once the whole batch is written
+     */
+    public <K, I> Flux<I> executeAsync(Publisher<I> items, Function<I, K> keyOf, Function<List<I>, Mono<List<I>>> batchWrite) {
+        return Flux.from(items)
+                .buffer(MAX_ITEMS_PER_BATCH)
+                .map(batch -> lastPerKey(batch, keyOf))
+                .flatMap(batch -> executeBatchAsync(batch, batchWrite).thenMany(Flux.fromIterable(batch)), options.getConcurrency());
+    }
+
+    /**
+     * Retry strategy for the batch writes of the {@link com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper}.
+     * The mapper would retry unprocessed items itself, but without a budget per call or the metrics of this pipeline,
+     * so it is told not to retry at all and return the unprocessed items as a failed batch instead.
+     */
+    public DynamoDBMapperConfig.BatchWriteRetryStrategy noMapperRetries() {
+        return new DynamoDBMapperConfig.BatchWriteRetryStrategy() {
+            @Override
+            public int getMaxRetryOnUnprocessedItems(Map<String, List<WriteRequest>> batchWriteItemInput) {
+                return 0;
+            }
+
+            @Override
+            public long getDelayBeforeRetryUnprocessedItems(Map<String, List<WriteRequest>> unprocessedItems, int retriesAttempted) {
+                return 0;
+            }
+        };
+    }
+
+    private static <K, I> List<I> lastPerKey(List<I> items, Function<I, K> keyOf) {
+        final Map<K, I> itemsByKey = new LinkedHashMap<>();
+        items.forEach(item -> itemsByKey.put(keyOf.apply(item), item));
+        return new ArrayList<>(itemsByKey.values());
+    }
+
+    private <I> List<I> executeBatch(List<I> batch, Function<List<I>, List<I>> batchWrite) {
+        batchLatency.record(() -> retryBatch(batch, batchWrite));
+        return batch;
+    }
+
+    private <I> void retryBatch(List<I> batch, Function<List<I>, List<I>> batchWrite) {
+        List<I> unprocessedItems = batchWrite.apply(batch);
+        int retry = 0;
+        while (unprocessedItems != null && !unprocessedItems.isEmpty()) {
+            if (retry >= backoff.getMaxRetries()) {
+                throw retriesExhausted(unprocessedItems.size(), retry);
+            }
+            sleep(backoff.delay(retry++));
+            unprocessedItems = batchWrite.apply(unprocessedItems);
+        }
+        retryRounds.record(retry);
+    }
+
+    private <I> Mono<Void> executeBatchAsync(List<I> batch, Function<List<I>, Mono<List<I>>> batchWrite) {
+        return Mono.defer(() -> {
+            final AtomicInteger retries = new AtomicInteger();
+            final long start = System.nanoTime();
+            return Mono.defer(() -> batchWrite.apply(batch))
+                    .expand(unprocessedItems -> {
+                        if (unprocessedItems.isEmpty()) {
+                            return Mono.empty();
+                        }
+                        final int retry = retries.getAndIncrement();
+                        if (retry >= backoff.getMaxRetries()) {
+                            return Mono.error(retriesExhausted(unprocessedItems.size(), retry));
+                        }
+                        return Mono.delay(backoff.delay(retry))
+                                .then(Mono.defer(() -> batchWrite.apply(unprocessedItems)));
+                    })
+                    .doOnComplete(() -> retryRounds.record(retries.get()))
+                    .doOnTerminate(() -> batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .then();
+        });
+    }
+
+    private UserException retriesExhausted(int unprocessedItems, int retries) {
+        retryRounds.record(retries);
+        retriesExhausted.increment();
+        return UserException.error("{} items were still unprocessed after {} retries", unprocessedItems, retries);
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw UserException.error("Interrupted while waiting to retry unprocessed items", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the delay before retry n is a random value between 0 and
+ * min(maxDelay, baseDelay * 2^n), so clients that got throttled at the same moment do not retry at the same moment.
+ */
+@Getter
+public final class RetryBackoff {
+
+    private static final RetryBackoff DEFAULT = new RetryBackoff(Duration.ofMillis(50), Duration.ofSeconds(5), 10);
+
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final int maxRetries;
+
+    public RetryBackoff(Duration baseDelay, Duration maxDelay, int maxRetries) {
+        if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0 || maxRetries < 0) {
+            throw UserException.error("Invalid backoff, base delay {}, max delay {}, max retries {}", baseDelay, maxDelay, maxRetries);
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxRetries = maxRetries;
+    }
+
+    public static RetryBackoff defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param retry zero based number of the retry
+     */
+    public Duration delay(int retry) {
+        //capping the shift, beyond this the max delay is reached anyway and the multiplication would overflow
+        final long ceiling = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(retry, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+}
@@ -0,0 +1,157 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class CachingUserRepository implements UserRepository {
+
+    private final UserRepository userRepository;
+    private final Cache<UUID, Optional<User>> cache;
+
+    CachingUserRepository(UserRepository userRepository, Cache<UUID, Optional<User>> cache) {
+        this.userRepository = userRepository;
+        this.cache = cache;
+    }
+
+    @Override
+    public User createOrUpdateUser(User user) {
+        try {
+            return userRepository.createOrUpdateUser(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public List<User> createOrUpdateUsers(List<User> users) {
+        try {
+            return userRepository.createOrUpdateUsers(users);
+        } finally {
+            //also the users of the batches that were written before one failed, users without an id cannot be cached
+            cache.invalidateAll(users.stream()
+                    .map(User::getId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Override
+    public Optional<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //only whole users are cached
+        if (!projection.isAll()) {
+            return userRepository.getUserById(id, projection);
+        }
+        //the load runs while holding the entry, so an invalidation after a write waits for it instead of being overwritten,
+        //and a load that fails is not cached
+        return cache.get(id, userRepository::getUserById).map(CachingUserRepository::copy);
+    }
+
+    @Override
+    public List<User> findAll(Projection projection) {
+        return userRepository.findAll(projection);
+    }
+
+    @Override
+    public List<User> findAll(int totalSegments, Projection projection) {
+        return userRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return userRepository.streamAll();
+    }
+
+    @Override
+    public List<User> findByIds(List<UUID> ids, Projection projection) {
+        return userRepository.findByIds(ids, projection);
+    }
+
+    @Override
+    public List<User> findByLastName(String lastName, Projection projection) {
+        return userRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        try {
+            userRepository.updateUser(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public void updateUserAdvanced(User user) {
+        try {
+            userRepository.updateUserAdvanced(user);
+        } finally {
+            //also when the condition failed, as the cached user is then outdated
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        try {
+            userRepository.deleteUser(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    //every caller gets its own copy, so changing it does not change the cached user
+    private static User copy(User user) {
+        return User.builder()
+                .id(user.getId())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .age(user.getAge())
+                .address(copy(user.getAddress()))
+                .education(user.getEducation() == null ? null : Education.builder()
+                        .primarySchool(copy(user.getEducation().getPrimarySchool()))
+                        .secondarySchool(copy(user.getEducation().getSecondarySchool()))
+                        .university(copy(user.getEducation().getUniversity()))
+                        .build())
+                .isAdmin(user.getIsAdmin())
+                .gender(user.getGender())
+                .build();
+    }
+
+    private static Address copy(Address address) {
+        return address == null ? null : new Address(address.getCountry(), address.getProvince(), address.getCity(),
+                address.getStreet(), address.getNumber(), address.getZipCode());
+    }
+
+    //a write that failed may still have been applied, unless it was rejected for not having an id
+    private void invalidate(UUID id) {
+        if (id != null) {
+            cache.invalidate(id);
+        }
+    }
+}
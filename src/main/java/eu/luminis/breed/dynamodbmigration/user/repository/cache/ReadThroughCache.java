@@ -0,0 +1,79 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Decorates repositories with a cache for {@code getUserById}, which also remembers ids that do not exist. Writes
+ * through the decorated repository invalidate the cached user, writes by other clients are seen once the entry expired.
+ * A read that fails is not cached, and every read gets its own copy of the cached user.
+ * <p>
+ * The cache statistics are published with the {@value #CACHE_NAME} cache metrics of micrometer, such as
+ * {@code cache.gets}, {@code cache.evictions} and {@code cache.load.duration}, and the hit ratio as the gauge
+ * {@value #HIT_RATIO_METRIC}, all tagged with the repository.
+ */
+public class ReadThroughCache {
+
+    static final String CACHE_NAME = "users";
+    static final String HIT_RATIO_METRIC = "dynamodb.cache.hit.ratio";
+
+    private final UserCacheOptions options;
+
+    public ReadThroughCache(UserCacheOptions options) {
+        if (options.getMaximumSize() < 1 || options.getTtl().isNegative() || options.getTtl().isZero()
+                || options.getNegativeTtl().isNegative() || options.getNegativeTtl().compareTo(options.getTtl()) > 0) {
+            throw UserException.error("Invalid user cache options {}", options);
+        }
+        this.options = options;
+    }
+
+    public UserRepository decorate(UserRepository userRepository) {
+        if (!options.isEnabled()) {
+            return userRepository;
+        }
+        final String repository = userRepository.getClass().getSimpleName();
+        final Cache<UUID, Optional<User>> cache = Caffeine.newBuilder()
+                .maximumSize(options.getMaximumSize())
+                .expireAfter(expiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME, "repository", repository);
+        Gauge.builder(HIT_RATIO_METRIC, cache, c -> c.stats().hitRate())
+                .description("Part of the lookups by id that were answered from the cache")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        return new CachingUserRepository(userRepository, cache);
+    }
+
+    private Expiry<UUID, Optional<User>> expiry() {
+        final long ttl = options.getTtl().toNanos();
+        final long negativeTtl = options.getNegativeTtl().toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(UUID id, Optional<User> user, long currentTime) {
+                return user.isPresent() ? ttl : negativeTtl;
+            }
+
+            @Override
+            public long expireAfterUpdate(UUID id, Optional<User> user, long currentTime, long currentDuration) {
+                return expireAfterCreate(id, user, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(UUID id, Optional<User> user, long currentTime, long currentDuration) {
+                //reads do not extend the time a user is cached
+                return currentDuration;
+            }
+        };
+    }
+}
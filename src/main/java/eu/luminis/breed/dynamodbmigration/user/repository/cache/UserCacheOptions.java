@@ -0,0 +1,39 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.cache;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * How a {@link ReadThroughCache} caches the users of the repositories it decorates.
+ */
+@Value
+@Builder
+public class UserCacheOptions {
+
+    /**
+     * Whether users are cached at all, when disabled the repositories are not decorated.
+     */
+    @Builder.Default
+    boolean enabled = false;
+    /**
+     * Maximum number of ids that are cached per repository, the least used ones are evicted first.
+     */
+    @Builder.Default
+    long maximumSize = 10_000;
+    /**
+     * Time after which a cached user is loaded again, also when it was not written through this repository.
+     */
+    @Builder.Default
+    Duration ttl = Duration.ofSeconds(30);
+    /**
+     * Time after which an id that did not exist is looked up again.
+     */
+    @Builder.Default
+    Duration negativeTtl = Duration.ofSeconds(5);
+
+    public static UserCacheOptions defaults() {
+        return UserCacheOptions.builder().build();
+    }
+}
@@ -0,0 +1,60 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.client;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * How the clients of a {@link DynamoDbClientRegistry} connect to DynamoDB.
+ */
+@Value
+@Builder
+public class DynamoDbClientOptions {
+
+    /**
+     * Maximum number of open connections of every blocking client.
+     */
+    @Builder.Default
+    int maxConnections = 50;
+    /**
+     * Maximum number of requests the non blocking client has in flight at the same time.
+     */
+    @Builder.Default
+    int maxConcurrency = 50;
+    /**
+     * Maximum number of requests of the non blocking client that wait for a connection, before new ones are rejected.
+     */
+    @Builder.Default
+    int maxPendingConnectionAcquires = 10_000;
+    /**
+     * Maximum time to set up a new connection.
+     */
+    @Builder.Default
+    Duration connectionTimeout = Duration.ofSeconds(2);
+    /**
+     * Maximum time a request waits for data to be read or written on an open connection.
+     */
+    @Builder.Default
+    Duration socketTimeout = Duration.ofSeconds(5);
+    /**
+     * Maximum time a request waits for a connection of the pool. Not supported by the SDK 1 client, which waits for the
+     * connection timeout instead.
+     */
+    @Builder.Default
+    Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+    /**
+     * Time an unused connection is kept alive in the pool, so bursts do not have to set up new connections.
+     */
+    @Builder.Default
+    Duration connectionMaxIdleTime = Duration.ofSeconds(60);
+    /**
+     * Whether TCP keep alive probes are sent on idle connections.
+     */
+    @Builder.Default
+    boolean tcpKeepAlive = true;
+
+    public static DynamoDbClientOptions defaults() {
+        return DynamoDbClientOptions.builder().build();
+    }
+}
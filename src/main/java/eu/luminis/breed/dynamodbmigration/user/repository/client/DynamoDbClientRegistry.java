@@ -0,0 +1,154 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.client;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+import java.net.URI;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Builds a single client per SDK and transport, which all repositories share: one for the SDK 1, a blocking Apache
+ * based one for the SDK 2 and a non blocking Netty based one for the SDK 2. A client is only built when it is first
+ * asked for, and closing the registry shuts down the clients that were built.
+ * <p>
+ * The connection pool state of every client is published by {@link PoolMetrics}.
+ */
+@Slf4j
+public class DynamoDbClientRegistry implements AutoCloseable {
+
+    private final DynamoDbClientOptions options;
+    //the default endpoint of the region when not set
+    private final String endpoint;
+    private final Lazy<AmazonDynamoDB> amazonDynamoDB = new Lazy<>(this::buildAmazonDynamoDB);
+    private final Lazy<DynamoDbClient> dynamoDbClient = new Lazy<>(this::buildDynamoDbClient);
+    private final Lazy<DynamoDbAsyncClient> dynamoDbAsyncClient = new Lazy<>(this::buildDynamoDbAsyncClient);
+
+    public DynamoDbClientRegistry(DynamoDbClientOptions options) {
+        this(options, null);
+    }
+
+    public DynamoDbClientRegistry(DynamoDbClientOptions options, String endpoint) {
+        if (options.getMaxConnections() < 1 || options.getMaxConcurrency() < 1 || options.getMaxPendingConnectionAcquires() < 1) {
+            throw UserException.error("Invalid client options {}", options);
+        }
+        this.options = options;
+        this.endpoint = endpoint;
+    }
+
+    public AmazonDynamoDB amazonDynamoDB() {
+        return amazonDynamoDB.get();
+    }
+
+    public DynamoDbClient dynamoDbClient() {
+        return dynamoDbClient.get();
+    }
+
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+        return dynamoDbAsyncClient.get();
+    }
+
+    @Override
+    public void close() {
+        amazonDynamoDB.ifBuilt(AmazonDynamoDB::shutdown);
+        dynamoDbClient.ifBuilt(DynamoDbClient::close);
+        dynamoDbAsyncClient.ifBuilt(DynamoDbAsyncClient::close);
+    }
+
+    private AmazonDynamoDB buildAmazonDynamoDB() {
+        final PoolMetrics poolMetrics = new PoolMetrics("sdk1", options.getMaxConnections());
+        final AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
+                .withClientConfiguration(new ClientConfiguration()
+                        .withMaxConnections(options.getMaxConnections())
+                        .withConnectionTimeout((int) options.getConnectionTimeout().toMillis())
+                        .withSocketTimeout((int) options.getSocketTimeout().toMillis())
+                        .withConnectionMaxIdleMillis(options.getConnectionMaxIdleTime().toMillis())
+                        .withTcpKeepAlive(options.isTcpKeepAlive()))
+                .withMetricsCollector(new PoolMetricCollector(poolMetrics));
+        if (endpoint != null) {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, null));
+        }
+        log.info("Built the SDK 1 client with {}", options);
+        return builder.build();
+    }
+
+    private DynamoDbClient buildDynamoDbClient() {
+        //the apache client of this SDK version can not set TCP keep alive, so idle connections are only kept in the pool
+        final PoolMetrics poolMetrics = new PoolMetrics("sdk2-apache", options.getMaxConnections());
+        final DynamoDbClientBuilder builder = DynamoDbClient.builder()
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(options.getMaxConnections())
+                        .connectionTimeout(options.getConnectionTimeout())
+                        .socketTimeout(options.getSocketTimeout())
+                        .connectionAcquisitionTimeout(options.getConnectionAcquisitionTimeout())
+                        .connectionMaxIdleTime(options.getConnectionMaxIdleTime()))
+                .overrideConfiguration(configuration -> configuration.addMetricPublisher(new PoolMetricPublisher(poolMetrics)));
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        log.info("Built the SDK 2 client with {}", options);
+        return builder.build();
+    }
+
+    private DynamoDbAsyncClient buildDynamoDbAsyncClient() {
+        final PoolMetrics poolMetrics = new PoolMetrics("sdk2-netty", options.getMaxConcurrency());
+        final DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(options.getMaxConcurrency())
+                        .maxPendingConnectionAcquires(options.getMaxPendingConnectionAcquires())
+                        .connectionTimeout(options.getConnectionTimeout())
+                        .readTimeout(options.getSocketTimeout())
+                        .writeTimeout(options.getSocketTimeout())
+                        .connectionAcquisitionTimeout(options.getConnectionAcquisitionTimeout())
+                        .connectionMaxIdleTime(options.getConnectionMaxIdleTime())
+                        .putChannelOption(ChannelOption.SO_KEEPALIVE, options.isTcpKeepAlive()))
+                .overrideConfiguration(configuration -> configuration.addMetricPublisher(new PoolMetricPublisher(poolMetrics)));
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        log.info("Built the SDK 2 async client with {}", options);
+        return builder.build();
+    }
+
+    private static final class Lazy<T> {
+
+        private final Supplier<T> factory;
+        private volatile T value;
+
+        private Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        private T get() {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        result = factory.get();
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void ifBuilt(Consumer<T> consumer) {
+            final T result = value;
+            if (result != null) {
+                consumer.accept(result);
+            }
+        }
+    }
+}
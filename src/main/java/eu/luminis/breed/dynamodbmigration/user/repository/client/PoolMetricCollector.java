@@ -0,0 +1,31 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.client;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+/**
+ * Reads the connection pool state that the SDK 1 captures for every request, which it only does when a collector is set.
+ */
+class PoolMetricCollector extends RequestMetricCollector {
+
+    private final PoolMetrics poolMetrics;
+
+    PoolMetricCollector(PoolMetrics poolMetrics) {
+        this.poolMetrics = poolMetrics;
+    }
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        final AWSRequestMetrics awsRequestMetrics = request.getAWSRequestMetrics();
+        if (awsRequestMetrics == null) {
+            return;
+        }
+        final TimingInfo timingInfo = awsRequestMetrics.getTimingInfo();
+        poolMetrics.record(timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolLeasedCount.name()),
+                timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolAvailableCount.name()),
+                timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolPendingCount.name()));
+    }
+}
@@ -0,0 +1,42 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.client;
+
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.List;
+
+/**
+ * Reads the connection pool state that the HTTP client of the SDK 2 reports for every request attempt.
+ */
+class PoolMetricPublisher implements MetricPublisher {
+
+    private final PoolMetrics poolMetrics;
+
+    PoolMetricPublisher(PoolMetrics poolMetrics) {
+        this.poolMetrics = poolMetrics;
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        //the http client metrics are reported a few levels below the api call
+        metricCollection.children().forEach(this::publish);
+        if (!metricCollection.metricValues(HttpMetric.LEASED_CONCURRENCY).isEmpty()) {
+            poolMetrics.record(last(metricCollection, HttpMetric.LEASED_CONCURRENCY),
+                    last(metricCollection, HttpMetric.AVAILABLE_CONCURRENCY),
+                    last(metricCollection, HttpMetric.PENDING_CONCURRENCY_ACQUIRES));
+            poolMetrics.recordMax(last(metricCollection, HttpMetric.MAX_CONCURRENCY));
+        }
+    }
+
+    @Override
+    public void close() {
+        //nothing to release, the gauges stay registered
+    }
+
+    private static Integer last(MetricCollection metricCollection, SdkMetric<Integer> metric) {
+        final List<Integer> values = metricCollection.metricValues(metric);
+        return values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.client;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection pool state of a single client, as it was seen by its last request.
+ * <p>
+ * Published as the gauges {@value #LEASED_METRIC}, {@value #AVAILABLE_METRIC}, {@value #MAX_METRIC} and
+ * {@value #UTILISATION_METRIC}, and the requests that waited for a connection as the distribution summary
+ * {@value #PENDING_ACQUIRES_METRIC}, all tagged with the client.
+ */
+final class PoolMetrics {
+
+    static final String LEASED_METRIC = "dynamodb.client.pool.leased";
+    static final String AVAILABLE_METRIC = "dynamodb.client.pool.available";
+    static final String MAX_METRIC = "dynamodb.client.pool.max";
+    static final String UTILISATION_METRIC = "dynamodb.client.pool.utilisation";
+    static final String PENDING_ACQUIRES_METRIC = "dynamodb.client.pool.pending.acquires";
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicInteger max;
+    private final DistributionSummary pendingAcquires;
+
+    PoolMetrics(String client, int max) {
+        this.max = new AtomicInteger(max);
+        Gauge.builder(LEASED_METRIC, leased, AtomicInteger::get)
+                .description("Number of connections that are in use")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(AVAILABLE_METRIC, available, AtomicInteger::get)
+                .description("Number of open connections that are not in use")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(MAX_METRIC, this.max, AtomicInteger::get)
+                .description("Maximum number of connections or concurrent requests")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(UTILISATION_METRIC, this, PoolMetrics::utilisation)
+                .description("Part of the maximum number of connections that is in use")
+                .tag("client", client)
+                .register(Metrics.globalRegistry);
+        this.pendingAcquires = DistributionSummary.builder(PENDING_ACQUIRES_METRIC)
+                .description("Number of requests that were waiting for a connection when a request was sent")
+                .tag("client", client)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    void record(Number leased, Number available, Number pendingAcquires) {
+        if (leased != null) {
+            this.leased.set(leased.intValue());
+        }
+        if (available != null) {
+            this.available.set(available.intValue());
+        }
+        if (pendingAcquires != null) {
+            this.pendingAcquires.record(pendingAcquires.doubleValue());
+        }
+    }
+
+    void recordMax(Number max) {
+        if (max != null) {
+            this.max.set(max.intValue());
+        }
+    }
+
+    private double utilisation() {
+        return max.get() == 0 ? 0 : (double) leased.get() / max.get();
+    }
+}
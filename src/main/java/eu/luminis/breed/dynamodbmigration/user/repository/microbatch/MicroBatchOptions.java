@@ -0,0 +1,34 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * How a {@link PointReadBatcher} collects the reads by id of the repositories it decorates.
+ */
+@Value
+@Builder
+public class MicroBatchOptions {
+
+    /**
+     * Whether reads by id are batched at all, when disabled the repositories are not decorated.
+     */
+    @Builder.Default
+    boolean enabled = false;
+    /**
+     * Maximum time the first read of a batch waits for other reads to join it.
+     */
+    @Builder.Default
+    Duration maxWait = Duration.ofMillis(2);
+    /**
+     * Number of distinct ids after which a batch is sent without waiting any longer, at most the 100 keys of a BatchGetItem.
+     */
+    @Builder.Default
+    int maxBatchSize = 100;
+
+    public static MicroBatchOptions defaults() {
+        return MicroBatchOptions.builder().build();
+    }
+}
@@ -0,0 +1,87 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.UUID;
+
+class MicroBatchingUserAsyncRepository implements UserAsyncRepository {
+
+    private final UserAsyncRepository userAsyncRepository;
+    private final PointReadQueue pointReadQueue;
+
+    MicroBatchingUserAsyncRepository(UserAsyncRepository userAsyncRepository, PointReadQueue pointReadQueue) {
+        this.userAsyncRepository = userAsyncRepository;
+        this.pointReadQueue = pointReadQueue;
+    }
+
+    @Override
+    public Mono<User> createOrUpdateUser(User user) {
+        return userAsyncRepository.createOrUpdateUser(user);
+    }
+
+    @Override
+    public Flux<User> createOrUpdateUsers(Publisher<User> users) {
+        return userAsyncRepository.createOrUpdateUsers(users);
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //only whole users are batched
+        if (!projection.isAll()) {
+            return userAsyncRepository.getUserById(id, projection);
+        }
+        //the id only joins a batch when subscribed to
+        return Mono.defer(() -> Mono.fromFuture(pointReadQueue.get(id))).flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Flux<User> findAll(Projection projection) {
+        return userAsyncRepository.findAll(projection);
+    }
+
+    @Override
+    public Flux<User> findAll(int totalSegments, Projection projection) {
+        return userAsyncRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Flux<User> findByIds(List<UUID> ids, Projection projection) {
+        return userAsyncRepository.findByIds(ids, projection);
+    }
+
+    @Override
+    public Flux<User> findByLastName(String lastName, Projection projection) {
+        return userAsyncRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<Void> updateUser(User user) {
+        return userAsyncRepository.updateUser(user);
+    }
+
+    @Override
+    public Mono<Void> deleteUser(UUID id) {
+        return userAsyncRepository.deleteUser(id);
+    }
+}
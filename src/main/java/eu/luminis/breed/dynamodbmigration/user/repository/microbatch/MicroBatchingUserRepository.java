@@ -0,0 +1,104 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+class MicroBatchingUserRepository implements UserRepository {
+
+    private final UserRepository userRepository;
+    private final PointReadQueue pointReadQueue;
+
+    MicroBatchingUserRepository(UserRepository userRepository, PointReadQueue pointReadQueue) {
+        this.userRepository = userRepository;
+        this.pointReadQueue = pointReadQueue;
+    }
+
+    @Override
+    public User createOrUpdateUser(User user) {
+        return userRepository.createOrUpdateUser(user);
+    }
+
+    @Override
+    public List<User> createOrUpdateUsers(List<User> users) {
+        return userRepository.createOrUpdateUsers(users);
+    }
+
+    @Override
+    public Optional<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //only whole users are batched
+        if (!projection.isAll()) {
+            return userRepository.getUserById(id, projection);
+        }
+        try {
+            return pointReadQueue.get(id).join();
+        } catch (CompletionException e) {
+            //the same exception as a read of its own would have thrown
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<User> findAll(Projection projection) {
+        return userRepository.findAll(projection);
+    }
+
+    @Override
+    public List<User> findAll(int totalSegments, Projection projection) {
+        return userRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return userRepository.streamAll();
+    }
+
+    @Override
+    public List<User> findByIds(List<UUID> ids, Projection projection) {
+        return userRepository.findByIds(ids, projection);
+    }
+
+    @Override
+    public List<User> findByLastName(String lastName, Projection projection) {
+        return userRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        userRepository.updateUser(user);
+    }
+
+    @Override
+    public void updateUserAdvanced(User user) {
+        userRepository.updateUserAdvanced(user);
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        userRepository.deleteUser(id);
+    }
+}
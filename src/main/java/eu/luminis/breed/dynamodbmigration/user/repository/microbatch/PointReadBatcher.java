@@ -0,0 +1,45 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Decorates repositories so that {@code getUserById} calls that arrive within the maximum wait are read together with
+ * a single {@code findByIds}, which is a BatchGetItem. Every read waits at most the maximum wait longer, unless the batch
+ * fills up before that.
+ */
+public class PointReadBatcher {
+
+    //a single BatchGetItem can not have more keys
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final MicroBatchOptions options;
+
+    public PointReadBatcher(MicroBatchOptions options) {
+        if (options.getMaxWait().isNegative() || options.getMaxWait().isZero()
+                || options.getMaxBatchSize() < 1 || options.getMaxBatchSize() > MAX_BATCH_SIZE) {
+            throw UserException.error("Invalid micro batch options {}", options);
+        }
+        this.options = options;
+    }
+
+    public UserRepository decorate(UserRepository userRepository) {
+        if (!options.isEnabled()) {
+            return userRepository;
+        }
+        //the batches are sent from the timer thread, which should not block
+        return new MicroBatchingUserRepository(userRepository, new PointReadQueue(userRepository.getClass().getSimpleName(), options,
+                ids -> Mono.fromCallable(() -> userRepository.findByIds(ids)).subscribeOn(Schedulers.boundedElastic()).toFuture()));
+    }
+
+    public UserAsyncRepository decorate(UserAsyncRepository userAsyncRepository) {
+        if (!options.isEnabled()) {
+            return userAsyncRepository;
+        }
+        return new MicroBatchingUserAsyncRepository(userAsyncRepository, new PointReadQueue(userAsyncRepository.getClass().getSimpleName(), options,
+                ids -> userAsyncRepository.findByIds(ids).collectList().toFuture()));
+    }
+}
@@ -0,0 +1,112 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads by id of a single repository that wait to be sent together.
+ * <p>
+ * The number of distinct ids per sent batch is published as the distribution summary {@value #BATCH_FILL_METRIC},
+ * tagged with the repository.
+ */
+final class PointReadQueue {
+
+    static final String BATCH_FILL_METRIC = "dynamodb.microbatch.fill";
+
+    private final MicroBatchOptions options;
+    private final Function<List<UUID>, CompletableFuture<List<User>>> batchLoader;
+    private final DistributionSummary batchFill;
+    private final ReentrantLock lock = new ReentrantLock();
+    //guarded by the lock
+    private Batch pending;
+
+    PointReadQueue(String repository, MicroBatchOptions options, Function<List<UUID>, CompletableFuture<List<User>>> batchLoader) {
+        this.options = options;
+        this.batchLoader = batchLoader;
+        this.batchFill = DistributionSummary.builder(BATCH_FILL_METRIC)
+                .description("Number of distinct ids that were read with a single batch")
+                .tag("repository", repository)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue((double) options.getMaxBatchSize())
+                .register(Metrics.globalRegistry);
+    }
+
+    CompletableFuture<Optional<User>> get(UUID id) {
+        //every read gets its own future, so a reader that cancels does not cancel the others of the same id
+        final CompletableFuture<Optional<User>> user = new CompletableFuture<>();
+        Batch full = null;
+        lock.lock();
+        try {
+            if (pending == null) {
+                final Batch batch = new Batch();
+                batch.timer = Schedulers.parallel().schedule(() -> sendExpired(batch), options.getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+                pending = batch;
+            }
+            pending.readers.computeIfAbsent(id, key -> new ArrayList<>()).add(user);
+            if (pending.readers.size() >= options.getMaxBatchSize()) {
+                full = pending;
+                pending = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            full.timer.dispose();
+            send(full);
+        }
+        return user;
+    }
+
+    private void sendExpired(Batch batch) {
+        lock.lock();
+        try {
+            //already sent when it was full
+            if (pending != batch) {
+                return;
+            }
+            pending = null;
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        batchFill.record(batch.readers.size());
+        CompletableFuture<List<User>> loaded;
+        try {
+            loaded = batchLoader.apply(new ArrayList<>(batch.readers.keySet()));
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((users, error) -> {
+            if (error != null) {
+                batch.readers.values().forEach(readers -> readers.forEach(reader -> reader.completeExceptionally(error)));
+                return;
+            }
+            final Map<UUID, User> usersById = users.stream().collect(Collectors.toMap(User::getId, Function.identity(), (first, second) -> first));
+            batch.readers.forEach((id, readers) -> readers.forEach(reader -> reader.complete(Optional.ofNullable(usersById.get(id)))));
+        });
+    }
+
+    private static class Batch {
+        private final Map<UUID, List<CompletableFuture<Optional<User>>>> readers = new LinkedHashMap<>();
+        private Disposable timer;
+    }
+}
@@ -0,0 +1,91 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.warmup;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.RepositoryImplementation;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.AGE_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.EDUCATION_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.FIRST_NAME_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.GENDER_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.IS_ADMIN_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
+/**
+ * Warms up the repositories with reads only: reads by ids that do not exist and reads of the first page of the table,
+ * of which every user is decoded. They open the connections of the clients and let the JIT compile the request,
+ * response and mapping paths, so the first requests after startup are not slower than the rest. Nothing is written, so
+ * the encoding of users is only compiled once users are written.
+ * <p>
+ * A repository that fails is logged and skipped, a warm up never stops the application from starting.
+ */
+@Slf4j
+public class RepositoryWarmUp {
+
+    //every field by name instead of all, as the cache only keeps reads of whole users and would remember the missing ids
+    private static final Projection EVERY_FIELD = Projection.of(List.of(ID_FIELD, FIRST_NAME_FIELD, LAST_NAME_FIELD, AGE_FIELD,
+            ADDRESS_FIELD, EDUCATION_FIELD, IS_ADMIN_FIELD, GENDER_FIELD));
+
+    private final WarmUpOptions options;
+
+    public RepositoryWarmUp(WarmUpOptions options) {
+        if (options.getIterations() < 1 || options.getPageSize() < 1) {
+            throw UserException.error("Invalid warm up options {}", options);
+        }
+        this.options = options;
+    }
+
+    /**
+     * @param implementations the implementations of the repositories, in the order they were created in
+     */
+    public void warmUp(Set<RepositoryImplementation> implementations, List<UserRepository> userRepositories,
+                       List<UserAsyncRepository> userAsyncRepositories) {
+        if (!options.isEnabled()) {
+            return;
+        }
+        //the repositories are decorated, so they are named by their implementation instead of their class
+        final List<String> names = implementations.stream().map(RepositoryImplementation::getName).collect(Collectors.toList());
+        for (int i = 0; i < userRepositories.size(); i++) {
+            final UserRepository userRepository = userRepositories.get(i);
+            warmUp(names.get(i), () -> {
+                userRepository.getUserById(UUID.randomUUID(), EVERY_FIELD);
+                decode(userRepository.findPage(options.getPageSize(), null, Projection.all()).getUsers());
+            });
+        }
+        for (int i = 0; i < userAsyncRepositories.size(); i++) {
+            final UserAsyncRepository userAsyncRepository = userAsyncRepositories.get(i);
+            warmUp(names.get(i) + " async", () -> {
+                userAsyncRepository.getUserById(UUID.randomUUID()).block();
+                decode(userAsyncRepository.findPage(options.getPageSize(), null, Projection.all()).block().getUsers());
+            });
+        }
+    }
+
+    //hashCode reads every field through its getter, which decodes a lazy user
+    private static void decode(List<User> users) {
+        users.forEach(User::hashCode);
+    }
+
+    private void warmUp(String repository, Runnable reads) {
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < options.getIterations(); i++) {
+                reads.run();
+            }
+            log.info("Warmed up {} in {}ms", repository, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.warn("Unable to warm up {}", repository, e);
+        }
+    }
+}
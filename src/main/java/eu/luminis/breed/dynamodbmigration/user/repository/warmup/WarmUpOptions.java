@@ -0,0 +1,32 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.warmup;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * How a {@link RepositoryWarmUp} warms up the repositories before the application reports it is ready.
+ */
+@Value
+@Builder
+public class WarmUpOptions {
+
+    /**
+     * Whether the repositories are warmed up at all.
+     */
+    @Builder.Default
+    boolean enabled = false;
+    /**
+     * Number of reads by id and page reads done on every repository.
+     */
+    @Builder.Default
+    int iterations = 200;
+    /**
+     * Size of the pages that are read, so that the mapping of users from items is compiled as well.
+     */
+    @Builder.Default
+    int pageSize = 25;
+
+    public static WarmUpOptions defaults() {
+        return WarmUpOptions.builder().build();
+    }
+}
@@ -0,0 +1,17 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+
+/**
+ * Told about a merged write that failed every flush attempt and is dropped, so it never reached DynamoDB although the
+ * callers were told it succeeded.
+ */
+@FunctionalInterface
+public interface DroppedWriteListener {
+
+    /**
+     * @param replace whether the write is a put of the whole user, instead of an update of the fields that are set
+     * @param cause   why the last flush attempt failed
+     */
+    void dropped(User user, boolean replace, RuntimeException cause);
+}
@@ -0,0 +1,51 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import lombok.Value;
+
+/**
+ * The merged writes for a single user that are not flushed yet. A replacing write is a full put of the user, otherwise
+ * it is an update of the fields that are not null.
+ */
+@Value
+class PendingWrite {
+    User user;
+    boolean replace;
+    int writes;
+    long firstWriteAt;
+    long lastWriteAt;
+    int failedFlushes;
+
+    static PendingWrite of(User user, boolean replace, long now) {
+        return new PendingWrite(user, replace, 1, now, now, 0);
+    }
+
+    /**
+     * A put replaces everything that was pending, an update only overwrites the fields it sets.
+     */
+    PendingWrite merge(PendingWrite next) {
+        final User mergedUser = next.isReplace() ? next.getUser() : overlay(user, next.getUser());
+        return new PendingWrite(mergedUser, replace || next.isReplace(), writes + next.getWrites(), firstWriteAt, next.getLastWriteAt(), failedFlushes);
+    }
+
+    PendingWrite failed() {
+        return new PendingWrite(user, replace, writes, firstWriteAt, lastWriteAt, failedFlushes + 1);
+    }
+
+    boolean isDue(long now, long windowNanos, long maxStalenessNanos) {
+        return now - lastWriteAt >= windowNanos || now - firstWriteAt >= maxStalenessNanos;
+    }
+
+    private static User overlay(User user, User update) {
+        return User.builder()
+                .id(user.getId())
+                .firstName(update.getFirstName() != null ? update.getFirstName() : user.getFirstName())
+                .lastName(update.getLastName() != null ? update.getLastName() : user.getLastName())
+                .age(update.getAge() != null ? update.getAge() : user.getAge())
+                .address(update.getAddress() != null ? update.getAddress() : user.getAddress())
+                .education(update.getEducation() != null ? update.getEducation() : user.getEducation())
+                .isAdmin(update.getIsAdmin() != null ? update.getIsAdmin() : user.getIsAdmin())
+                .gender(update.getGender() != null ? update.getGender() : user.getGender())
+                .build();
+    }
+}
@@ -0,0 +1,285 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchDispatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Pending writes of a single repository, merged per user id.
+ * <p>
+ * The time per flush is published as the timer {@value #FLUSH_LATENCY_METRIC}, the number of writes that were merged
+ * into a single flushed write as the distribution summary {@value #COALESCING_RATIO_METRIC}, the failed flushes of a
+ * write as the counter {@value #FLUSH_FAILURES_METRIC}, the writes that were dropped after the last attempt as the
+ * counter {@value #DROPPED_METRIC} and the number of users with a pending write as the gauge {@value #PENDING_METRIC},
+ * all tagged with the repository.
+ */
+@Slf4j
+final class WriteBehindBuffer {
+
+    static final String FLUSH_LATENCY_METRIC = "dynamodb.writebehind.flush.latency";
+    static final String COALESCING_RATIO_METRIC = "dynamodb.writebehind.coalescing.ratio";
+    static final String FLUSH_FAILURES_METRIC = "dynamodb.writebehind.flush.failures";
+    static final String DROPPED_METRIC = "dynamodb.writebehind.dropped";
+    static final String PENDING_METRIC = "dynamodb.writebehind.pending";
+
+    interface Writer {
+        void putAll(List<User> users);
+
+        void update(User user);
+    }
+
+    private final Map<UUID, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    //users whose write is taken out of the pending writes, but not written yet, only changed under the flush lock
+    private final Set<UUID> flushingIds = ConcurrentHashMap.newKeySet();
+    //guards taking writes out and putting failed ones back, a user is in a single flush at a time, so a newer write of
+    //a user can never be written before an older one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final WriteBehindOptions options;
+    private final Writer writer;
+    private final Executor flushExecutor;
+    private final Timer flushLatency;
+    private final DistributionSummary coalescingRatio;
+    private final Counter flushFailures;
+    private final Counter droppedWrites;
+    private final DroppedWriteListener droppedWriteListener;
+
+    WriteBehindBuffer(String repository, WriteBehindOptions options, Writer writer, Executor flushExecutor,
+                      DroppedWriteListener droppedWriteListener) {
+        this.options = options;
+        this.writer = writer;
+        this.flushExecutor = flushExecutor;
+        this.droppedWriteListener = droppedWriteListener;
+        this.flushLatency = Timer.builder(FLUSH_LATENCY_METRIC)
+                .description("Time to flush the pending writes that are due")
+                .tag("repository", repository)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+        this.coalescingRatio = DistributionSummary.builder(COALESCING_RATIO_METRIC)
+                .description("Number of writes of a user that were merged into a single flushed write")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.flushFailures = Counter.builder(FLUSH_FAILURES_METRIC)
+                .description("Number of flushes of a merged write that failed, after which the write is retried")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        this.droppedWrites = Counter.builder(DROPPED_METRIC)
+                .description("Number of merged writes that were dropped after failing every flush attempt")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(PENDING_METRIC, pendingWrites, Map::size)
+                .description("Number of users with a write that is not flushed yet")
+                .tag("repository", repository)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @param replace whether the write is a put of the whole user, instead of an update of the fields that are set
+     */
+    void write(User user, boolean replace) {
+        pendingWrites.merge(user.getId(), PendingWrite.of(user, replace, System.nanoTime()), PendingWrite::merge);
+        if (pendingWrites.size() >= options.getMaxPendingUsers() && flushRequested.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushRequested.set(false);
+                    flushAll();
+                });
+            } catch (RejectedExecutionException e) {
+                //the flusher is closing, which flushes all pending writes when configured
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Whether one of the users has a write that is pending or being flushed right now.
+     */
+    boolean isPending(Collection<UUID> ids) {
+        return ids.stream().anyMatch(id -> pendingWrites.containsKey(id) || flushingIds.contains(id));
+    }
+
+    /**
+     * Flushes the pending writes of the users, or waits for a running flush of them, so a read sees these writes.
+     *
+     * @throws UserException when a write of these users could not be flushed, it stays pending unless it was dropped
+     */
+    void flush(Collection<UUID> ids) {
+        if (!isPending(ids)) {
+            return;
+        }
+        final List<PendingWrite> failed = flush((id, pendingWrite) -> ids.contains(id), ids);
+        if (!failed.isEmpty()) {
+            throw UserException.error("Unable to flush the pending writes of {} users", failed.size());
+        }
+    }
+
+    /**
+     * Drops the pending writes of the users, for when they are about to be replaced or deleted anyway.
+     */
+    void discard(Collection<UUID> ids) {
+        if (!isPending(ids)) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            //a running flush of these users could still put its write back
+            awaitFlushed(ids);
+            ids.forEach(pendingWrites::remove);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    void flushDue() {
+        final long now = System.nanoTime();
+        final long windowNanos = options.getWindow().toNanos();
+        final long maxStalenessNanos = options.getMaxStaleness().toNanos();
+        flush((id, pendingWrite) -> pendingWrite.isDue(now, windowNanos, maxStalenessNanos), List.of());
+    }
+
+    void flushAll() {
+        flush((id, pendingWrite) -> true, List.of());
+    }
+
+    int pendingUsers() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * Takes the selected writes out under the lock and writes them without it, so a flush of a few users does not wait
+     * for the writes of a large flush of others. Writes that fail are put back, or dropped after the last attempt.
+     *
+     * @param awaitedIds users whose running flush has to finish first
+     * @return the writes that failed
+     */
+    private List<PendingWrite> flush(BiPredicate<UUID, PendingWrite> selector, Collection<UUID> awaitedIds) {
+        final List<PendingWrite> writes = take(selector, awaitedIds);
+        if (writes.isEmpty()) {
+            return List.of();
+        }
+        final Map<UUID, RuntimeException> failures = new ConcurrentHashMap<>();
+        try {
+            flushLatency.record(() -> write(writes, failures));
+        } finally {
+            putBack(writes, failures);
+        }
+        final List<PendingWrite> failed = new ArrayList<>();
+        for (PendingWrite pendingWrite : writes) {
+            if (failures.containsKey(pendingWrite.getUser().getId())) {
+                failed.add(pendingWrite);
+            } else {
+                coalescingRatio.record(pendingWrite.getWrites());
+            }
+        }
+        return failed;
+    }
+
+    private List<PendingWrite> take(BiPredicate<UUID, PendingWrite> selector, Collection<UUID> awaitedIds) {
+        flushLock.lock();
+        try {
+            awaitFlushed(awaitedIds);
+            final List<PendingWrite> writes = new ArrayList<>();
+            pendingWrites.forEach((id, pendingWrite) -> {
+                //a user that another flush is writing right now is left for the next flush, to keep the order of its writes
+                if (selector.test(id, pendingWrite) && flushingIds.add(id)) {
+                    //only when no newer write was merged in the meantime, otherwise that one is flushed later
+                    if (pendingWrites.remove(id, pendingWrite)) {
+                        writes.add(pendingWrite);
+                    } else {
+                        flushingIds.remove(id);
+                    }
+                }
+            });
+            return writes;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void putBack(List<PendingWrite> writes, Map<UUID, RuntimeException> failures) {
+        final List<PendingWrite> dropped = new ArrayList<>();
+        flushLock.lock();
+        try {
+            for (PendingWrite pendingWrite : writes) {
+                final UUID id = pendingWrite.getUser().getId();
+                if (failures.containsKey(id)) {
+                    flushFailures.increment();
+                    final PendingWrite retry = pendingWrite.failed();
+                    if (retry.getFailedFlushes() >= options.getMaxFlushAttempts()) {
+                        dropped.add(retry);
+                    } else {
+                        //writes that came in during the flush are newer, so they go on top of the failed one
+                        pendingWrites.merge(id, retry, (newer, failed) -> failed.merge(newer));
+                    }
+                }
+                flushingIds.remove(id);
+            }
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+        for (PendingWrite pendingWrite : dropped) {
+            final UUID id = pendingWrite.getUser().getId();
+            log.error("Dropping the pending write of user {} after {} failed flushes", id, pendingWrite.getFailedFlushes(), failures.get(id));
+            droppedWrites.increment();
+            droppedWriteListener.dropped(pendingWrite.getUser(), pendingWrite.isReplace(), failures.get(id));
+        }
+    }
+
+    private void awaitFlushed(Collection<UUID> ids) {
+        while (ids.stream().anyMatch(flushingIds::contains)) {
+            flushed.awaitUninterruptibly();
+        }
+    }
+
+    private void write(List<PendingWrite> writes, Map<UUID, RuntimeException> failures) {
+        final List<User> puts = writes.stream()
+                .filter(PendingWrite::isReplace)
+                .map(PendingWrite::getUser)
+                .collect(Collectors.toList());
+        final List<User> updates = writes.stream()
+                .filter(pendingWrite -> !pendingWrite.isReplace())
+                .map(PendingWrite::getUser)
+                .collect(Collectors.toList());
+        if (!puts.isEmpty()) {
+            try {
+                writer.putAll(puts);
+            } catch (RuntimeException e) {
+                log.warn("Unable to flush {} pending puts, retrying them with the next flush", puts.size(), e);
+                puts.forEach(user -> failures.put(user.getId(), e));
+            }
+        }
+        //a merged update can not be put, as it only has the fields that were set, so these are single updates
+        BatchDispatcher.dispatch(updates, options.getConcurrency(), user -> {
+            try {
+                writer.update(user);
+            } catch (RuntimeException e) {
+                log.warn("Unable to flush pending update of user {}, retrying it with the next flush", user.getId(), e);
+                failures.put(user.getId(), e);
+            }
+            return List.of();
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates repositories so that {@code updateUser} and {@code createOrUpdateUser} only buffer the write, and flushes
+ * the merged writes of a user once no new writes came in for the window, or once the oldest write reached the maximum
+ * staleness. Puts are flushed with BatchWriteItem, updates as a single UpdateItem per user.
+ * <p>
+ * Reads by id flush the pending writes of these ids first, but scans and queries can miss pending writes for at most the
+ * maximum staleness. Closing the flusher flushes what is still pending when configured, otherwise it is lost.
+ * <p>
+ * A write that fails to flush is put back and retried with the next flush. After the maximum number of attempts it is
+ * dropped and passed to the {@link DroppedWriteListener}. A read that has to flush a write that fails gets an exception.
+ */
+@Slf4j
+public class WriteBehindFlusher implements AutoCloseable {
+
+    //time a running flush gets to finish when closing, before the remaining writes are flushed
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final WriteBehindOptions options;
+    private final List<WriteBehindBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private final DroppedWriteListener droppedWriteListener;
+
+    public WriteBehindFlusher(WriteBehindOptions options) {
+        //dropped writes are logged and counted by the buffers
+        this(options, (user, replace, cause) -> {
+        });
+    }
+
+    public WriteBehindFlusher(WriteBehindOptions options, DroppedWriteListener droppedWriteListener) {
+        if (options.getWindow().toMillis() < 1 || options.getMaxStaleness().compareTo(options.getWindow()) < 0
+                || options.getMaxPendingUsers() < 1 || options.getConcurrency() < 1 || options.getMaxFlushAttempts() < 1) {
+            throw UserException.error("Invalid write behind options {}", options);
+        }
+        this.options = options;
+        this.droppedWriteListener = droppedWriteListener;
+        //the only thread is started when the first flush is scheduled, so not at all when write behind is disabled
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "dynamodb-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (options.isEnabled()) {
+            final long window = options.getWindow().toMillis();
+            scheduler.scheduleWithFixedDelay(this::flushDue, window, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public UserRepository decorate(UserRepository userRepository) {
+        if (!options.isEnabled()) {
+            return userRepository;
+        }
+        final WriteBehindBuffer buffer = register(userRepository.getClass().getSimpleName(), new WriteBehindBuffer.Writer() {
+            @Override
+            public void putAll(List<User> users) {
+                userRepository.createOrUpdateUsers(users);
+            }
+
+            @Override
+            public void update(User user) {
+                userRepository.updateUser(user);
+            }
+        });
+        return new WriteBehindUserRepository(userRepository, buffer);
+    }
+
+    public UserAsyncRepository decorate(UserAsyncRepository userAsyncRepository) {
+        if (!options.isEnabled()) {
+            return userAsyncRepository;
+        }
+        //flushes run on the flusher thread or the batch workers, which may block
+        final WriteBehindBuffer buffer = register(userAsyncRepository.getClass().getSimpleName(), new WriteBehindBuffer.Writer() {
+            @Override
+            public void putAll(List<User> users) {
+                userAsyncRepository.createOrUpdateUsers(Flux.fromIterable(users)).then().block();
+            }
+
+            @Override
+            public void update(User user) {
+                userAsyncRepository.updateUser(user).block();
+            }
+        });
+        return new WriteBehindUserAsyncRepository(userAsyncRepository, buffer);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Write behind flush did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (WriteBehindBuffer buffer : buffers) {
+            if (options.isFlushOnShutdown()) {
+                //every round either writes a failed write or brings it closer to being dropped
+                for (int attempt = 0; attempt < options.getMaxFlushAttempts() && buffer.pendingUsers() > 0; attempt++) {
+                    buffer.flushAll();
+                }
+            } else if (buffer.pendingUsers() > 0) {
+                log.warn("Dropping the pending writes of {} users", buffer.pendingUsers());
+            }
+        }
+    }
+
+    private WriteBehindBuffer register(String repository, WriteBehindBuffer.Writer writer) {
+        final WriteBehindBuffer buffer = new WriteBehindBuffer(repository, options, writer, scheduler, droppedWriteListener);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    private void flushDue() {
+        for (WriteBehindBuffer buffer : buffers) {
+            //an exception would cancel the scheduled flushes
+            try {
+                buffer.flushDue();
+            } catch (RuntimeException e) {
+                log.error("Unable to flush pending writes", e);
+            }
+        }
+    }
+}
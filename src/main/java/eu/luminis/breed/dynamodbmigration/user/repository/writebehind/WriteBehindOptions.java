@@ -0,0 +1,55 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * How a {@link WriteBehindFlusher} buffers and flushes the writes of the repositories it decorates.
+ */
+@Value
+@Builder
+public class WriteBehindOptions {
+
+    /**
+     * Whether writes are buffered at all, when disabled the repositories are not decorated.
+     */
+    @Builder.Default
+    boolean enabled = false;
+    /**
+     * Time without new writes for a user after which its pending write is flushed.
+     */
+    @Builder.Default
+    Duration window = Duration.ofMillis(50);
+    /**
+     * Maximum time a write stays pending, also when the user keeps getting new writes within the window.
+     */
+    @Builder.Default
+    Duration maxStaleness = Duration.ofSeconds(1);
+    /**
+     * Whether the pending writes are flushed when the application stops, otherwise they are lost.
+     */
+    @Builder.Default
+    boolean flushOnShutdown = true;
+    /**
+     * Number of users with a pending write that triggers a flush of all pending writes before the window has passed.
+     */
+    @Builder.Default
+    int maxPendingUsers = 10_000;
+    /**
+     * Maximum number of single updates that a flush does at the same time.
+     */
+    @Builder.Default
+    int concurrency = 20;
+    /**
+     * Number of times a merged write is flushed before it is dropped, a failed write is put back and retried with the
+     * next flush.
+     */
+    @Builder.Default
+    int maxFlushAttempts = 5;
+
+    public static WriteBehindOptions defaults() {
+        return WriteBehindOptions.builder().build();
+    }
+}
@@ -0,0 +1,112 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.UUID;
+
+class WriteBehindUserAsyncRepository implements UserAsyncRepository {
+
+    private final UserAsyncRepository userAsyncRepository;
+    private final WriteBehindBuffer buffer;
+
+    WriteBehindUserAsyncRepository(UserAsyncRepository userAsyncRepository, WriteBehindBuffer buffer) {
+        this.userAsyncRepository = userAsyncRepository;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Mono<User> createOrUpdateUser(User user) {
+        if (user == null) {
+            throw UserException.errorIdIsNull();
+        }
+        return Mono.fromCallable(() -> {
+            if (user.getId() == null) {
+                user.setId(UUID.randomUUID());
+            }
+            buffer.write(user, true);
+            return user;
+        });
+    }
+
+    @Override
+    public Flux<User> createOrUpdateUsers(Publisher<User> users) {
+        //these users are replaced completely, so what was pending for them does not have to be written anymore
+        return userAsyncRepository.createOrUpdateUsers(Flux.from(users)
+                .concatMap(user -> user.getId() == null ? Mono.just(user) : discarded(List.of(user.getId())).thenReturn(user)));
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //deferred, as some repositories already send the request when the mono is created
+        return flushed(List.of(id)).then(Mono.defer(() -> userAsyncRepository.getUserById(id, projection)));
+    }
+
+    @Override
+    public Flux<User> findAll(Projection projection) {
+        return userAsyncRepository.findAll(projection);
+    }
+
+    @Override
+    public Flux<User> findAll(int totalSegments, Projection projection) {
+        return userAsyncRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Flux<User> findByIds(List<UUID> ids, Projection projection) {
+        return flushed(ids).thenMany(Flux.defer(() -> userAsyncRepository.findByIds(ids, projection)));
+    }
+
+    @Override
+    public Flux<User> findByLastName(String lastName, Projection projection) {
+        return userAsyncRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<UserPage> findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userAsyncRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public Mono<Void> updateUser(User user) {
+        if (user.getId() == null) {
+            throw UserException.errorIdIsNull();
+        }
+        return Mono.fromRunnable(() -> buffer.write(user, false));
+    }
+
+    @Override
+    public Mono<Void> deleteUser(UUID id) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        return discarded(List.of(id)).then(Mono.defer(() -> userAsyncRepository.deleteUser(id)));
+    }
+
+    //only when a user has a pending write it has to wait for a flush, which blocks
+    private Mono<Void> flushed(List<UUID> ids) {
+        return Mono.defer(() -> buffer.isPending(ids) ?
+                Mono.<Void>fromRunnable(() -> buffer.flush(ids)).subscribeOn(Schedulers.boundedElastic()) : Mono.empty());
+    }
+
+    private Mono<Void> discarded(List<UUID> ids) {
+        return Mono.defer(() -> buffer.isPending(ids) ?
+                Mono.<Void>fromRunnable(() -> buffer.discard(ids)).subscribeOn(Schedulers.boundedElastic()) : Mono.empty());
+    }
+}
@@ -0,0 +1,116 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class WriteBehindUserRepository implements UserRepository {
+
+    private final UserRepository userRepository;
+    private final WriteBehindBuffer buffer;
+
+    WriteBehindUserRepository(UserRepository userRepository, WriteBehindBuffer buffer) {
+        this.userRepository = userRepository;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public User createOrUpdateUser(User user) {
+        if (user == null) {
+            throw UserException.errorIdIsNull();
+        }
+        if (user.getId() == null) {
+            user.setId(UUID.randomUUID());
+        }
+        buffer.write(user, true);
+        return user;
+    }
+
+    @Override
+    public List<User> createOrUpdateUsers(List<User> users) {
+        //these users are replaced completely, so what was pending for them does not have to be written anymore
+        buffer.discard(users.stream().map(User::getId).filter(Objects::nonNull).collect(Collectors.toList()));
+        return userRepository.createOrUpdateUsers(users);
+    }
+
+    @Override
+    public Optional<User> getUserById(UUID id, Projection projection) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        buffer.flush(List.of(id));
+        return userRepository.getUserById(id, projection);
+    }
+
+    @Override
+    public List<User> findAll(Projection projection) {
+        return userRepository.findAll(projection);
+    }
+
+    @Override
+    public List<User> findAll(int totalSegments, Projection projection) {
+        return userRepository.findAll(totalSegments, projection);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return userRepository.streamAll();
+    }
+
+    @Override
+    public List<User> findByIds(List<UUID> ids, Projection projection) {
+        buffer.flush(ids);
+        return userRepository.findByIds(ids, projection);
+    }
+
+    @Override
+    public List<User> findByLastName(String lastName, Projection projection) {
+        return userRepository.findByLastName(lastName, projection);
+    }
+
+    @Override
+    public UserPage findPage(int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPage(pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public UserPage findPageByLastName(String lastName, int pageSize, UUID exclusiveStartId, Projection projection) {
+        return userRepository.findPageByLastName(lastName, pageSize, exclusiveStartId, projection);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        if (user.getId() == null) {
+            throw UserException.errorIdIsNull();
+        }
+        buffer.write(user, false);
+    }
+
+    @Override
+    public void updateUserAdvanced(User user) {
+        if (user.getId() == null) {
+            throw UserException.errorIdIsNull();
+        }
+        //the condition is on the last modified date, which the pending writes change
+        buffer.flush(List.of(user.getId()));
+        userRepository.updateUserAdvanced(user);
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        if (id == null) {
+            throw UserException.errorIdIsNull();
+        }
+        buffer.discard(List.of(id));
+        userRepository.deleteUser(id);
+    }
+}
@@ -11,14 +11,19 @@ import com.amazonaws.waiters.MaxAttemptsRetryStrategy;
 import com.amazonaws.waiters.PollingStrategy;
 import com.amazonaws.waiters.Waiter;
 import com.amazonaws.waiters.WaiterParameters;
+import eu.luminis.breed.dynamodbmigration.inmemory.InMemoryDynamoDB;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeAll;
 import org.testcontainers.containers.DockerComposeContainer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Properties;
 
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ID_FIELD;
+import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.LAST_NAME_FIELD;
+
 @Slf4j
 public class TestUtil {
     public static DockerComposeContainer<?> localStackContainer;
@@ -28,13 +33,17 @@ public class TestUtil {
     protected static final String key = "key";
     protected static final String secret = "secret";
     protected static AmazonDynamoDB amazonDynamoDBClient;
+    protected static InMemoryDynamoDB inMemoryDynamoDB;
 
 
     static {
         try {
             final Properties properties = getAllProperties();
             final Boolean isTestContainersEnabled = Boolean.valueOf(String.valueOf(properties.getOrDefault("testcontainers.enabled", "true")));
-            if (isTestContainersEnabled) {
+            final Boolean isInMemoryEnabled = Boolean.valueOf(String.valueOf(properties.getOrDefault("dynamodb.in-memory", "false")));
+            if (isInMemoryEnabled) {
+                createInMemorySetup();
+            } else if (isTestContainersEnabled) {
                 createTestContainersSetup();
             } else {
                 region = properties.getProperty("aws.region");
@@ -67,6 +76,25 @@ public class TestUtil {
                 .build();
     }
 
+    /**
+     * Starts an in-process DynamoDB with the user table of the cdk stack instead of localstack, which is ready in
+     * milliseconds and does not need Docker.
+     */
+    public static void createInMemorySetup() {
+        inMemoryDynamoDB = InMemoryDynamoDB.start();
+        inMemoryDynamoDB.createTable(tableName, ID_FIELD, Map.of("lastNameIndex", LAST_NAME_FIELD));
+        Runtime.getRuntime().addShutdownHook(new Thread(inMemoryDynamoDB::close));
+        endpoint = inMemoryDynamoDB.getEndpoint();
+        //the repositories use the default credentials of both SDKs, which the in-memory DynamoDB does not check
+        System.setProperty("aws.accessKeyId", System.getProperty("aws.accessKeyId", key));
+        System.setProperty("aws.secretKey", System.getProperty("aws.secretKey", secret));
+        System.setProperty("aws.secretAccessKey", System.getProperty("aws.secretAccessKey", secret));
+        amazonDynamoDBClient = AmazonDynamoDBClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(key, secret)))
+                .build();
+    }
+
     private static String getEndpoint(String serviceName, int servicePort, DockerComposeContainer<?> localStackContainer) {
         return "http://" +
                 localStackContainer.getServiceHost(serviceName, servicePort) +
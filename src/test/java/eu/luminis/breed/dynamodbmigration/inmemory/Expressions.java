@@ -0,0 +1,407 @@
+package eu.luminis.breed.dynamodbmigration.inmemory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Parses and evaluates the condition, key condition, filter, projection and update expressions of DynamoDB requests,
+ * as far as the clients of this application use them: comparisons, AND, OR, NOT, BETWEEN, attribute_exists,
+ * attribute_not_exists and begins_with for conditions, and SET with if_not_exists, + and -, and REMOVE for updates.
+ * Attribute values are the JSON of the DynamoDB API, like {@code {"S": "value"}}.
+ */
+final class Expressions {
+
+    private static final Set<String> COMPARATORS = Set.of("=", "<>", "<", "<=", ">", ">=");
+
+    private final Map<String, String> names;
+    private final JsonNode values;
+    private final List<String> tokens;
+    private int position;
+
+    private Expressions(String expression, JsonNode names, JsonNode values) {
+        this.names = names == null ? Map.of() : toMap(names);
+        this.values = values;
+        this.tokens = tokenize(expression);
+    }
+
+    static Predicate<ObjectNode> condition(String expression, JsonNode names, JsonNode values) {
+        final Expressions parser = new Expressions(expression, names, values);
+        final Predicate<ObjectNode> condition = parser.or();
+        parser.expectEnd();
+        return condition;
+    }
+
+    /**
+     * @return the top level attributes the projection selects
+     */
+    static List<String> projection(String expression, JsonNode names) {
+        final Expressions parser = new Expressions(expression, names, null);
+        final List<String> attributes = new ArrayList<>();
+        do {
+            attributes.add(parser.path().get(0));
+        } while (parser.accept(","));
+        parser.expectEnd();
+        return attributes;
+    }
+
+    /**
+     * @return the value the key condition requires the hash key to be equal to, as only hash keys are supported
+     */
+    static JsonNode hashKeyValue(String expression, JsonNode names, JsonNode values, String hashKey) {
+        final Expressions parser = new Expressions(expression, names, values);
+        final List<String> path = parser.path();
+        parser.expect("=");
+        if (!parser.peek().startsWith(":")) {
+            throw InMemoryDynamoDB.validation("Expected a value, but was " + parser.peek());
+        }
+        final JsonNode value = parser.operand().value(null);
+        parser.expectEnd();
+        if (!List.of(hashKey).equals(path)) {
+            throw InMemoryDynamoDB.validation("Query condition missed key schema element: " + hashKey);
+        }
+        return value;
+    }
+
+    /**
+     * Applies the update to a copy of the item.
+     *
+     * @return the updated copy
+     */
+    static ObjectNode update(String expression, JsonNode names, JsonNode values, ObjectNode item) {
+        final Expressions parser = new Expressions(expression, names, values);
+        final ObjectNode updated = item.deepCopy();
+        while (!parser.atEnd()) {
+            final String clause = parser.next().toUpperCase(Locale.ROOT);
+            if ("SET".equals(clause)) {
+                do {
+                    final String attribute = parser.topLevelPath();
+                    parser.expect("=");
+                    //operands read the item as it was before the update
+                    updated.set(attribute, parser.setValue(item));
+                } while (parser.accept(","));
+            } else if ("REMOVE".equals(clause)) {
+                do {
+                    updated.remove(parser.topLevelPath());
+                } while (parser.accept(","));
+            } else {
+                throw InMemoryDynamoDB.validation("Update clause " + clause + " is not supported");
+            }
+        }
+        return updated;
+    }
+
+    static int compare(JsonNode left, JsonNode right) {
+        final String type = type(left);
+        if (!type.equals(type(right))) {
+            throw InMemoryDynamoDB.validation("Cannot compare " + left + " with " + right);
+        }
+        if ("N".equals(type)) {
+            return new BigDecimal(left.get("N").asText()).compareTo(new BigDecimal(right.get("N").asText()));
+        }
+        if ("S".equals(type) || "B".equals(type)) {
+            return left.get(type).asText().compareTo(right.get(type).asText());
+        }
+        throw InMemoryDynamoDB.validation("Cannot compare values of type " + type);
+    }
+
+    static boolean equal(JsonNode left, JsonNode right) {
+        if (left == null || right == null) {
+            return false;
+        }
+        if ("N".equals(type(left)) && "N".equals(type(right))) {
+            return compare(left, right) == 0;
+        }
+        return left.equals(right);
+    }
+
+    private static String type(JsonNode value) {
+        return value.fieldNames().next();
+    }
+
+    private Predicate<ObjectNode> or() {
+        Predicate<ObjectNode> condition = and();
+        while (acceptKeyword("OR")) {
+            condition = condition.or(and());
+        }
+        return condition;
+    }
+
+    private Predicate<ObjectNode> and() {
+        Predicate<ObjectNode> condition = not();
+        while (acceptKeyword("AND")) {
+            condition = condition.and(not());
+        }
+        return condition;
+    }
+
+    private Predicate<ObjectNode> not() {
+        if (acceptKeyword("NOT")) {
+            return not().negate();
+        }
+        return comparison();
+    }
+
+    private Predicate<ObjectNode> comparison() {
+        if (accept("(")) {
+            final Predicate<ObjectNode> condition = or();
+            expect(")");
+            return condition;
+        }
+        final String function = peek().toLowerCase(Locale.ROOT);
+        if ("attribute_exists".equals(function) || "attribute_not_exists".equals(function)) {
+            next();
+            expect("(");
+            final List<String> path = path();
+            expect(")");
+            final Predicate<ObjectNode> exists = item -> resolve(item, path) != null;
+            return "attribute_exists".equals(function) ? exists : exists.negate();
+        }
+        if ("begins_with".equals(function)) {
+            next();
+            expect("(");
+            final Operand operand = operand();
+            expect(",");
+            final Operand prefix = operand();
+            expect(")");
+            return item -> {
+                final JsonNode value = operand.value(item);
+                final JsonNode start = prefix.value(item);
+                return value != null && start != null && value.has("S") && start.has("S")
+                        && value.get("S").asText().startsWith(start.get("S").asText());
+            };
+        }
+        final Operand left = operand();
+        if (acceptKeyword("BETWEEN")) {
+            final Operand low = operand();
+            expectKeyword("AND");
+            final Operand high = operand();
+            return item -> {
+                final JsonNode value = left.value(item);
+                return value != null && compare(value, low.value(item)) >= 0 && compare(value, high.value(item)) <= 0;
+            };
+        }
+        final String comparator = next();
+        if (!COMPARATORS.contains(comparator)) {
+            throw InMemoryDynamoDB.validation("Expected a comparator, but was " + comparator);
+        }
+        final Operand right = operand();
+        return item -> {
+            final JsonNode leftValue = left.value(item);
+            final JsonNode rightValue = right.value(item);
+            if ("=".equals(comparator)) {
+                return equal(leftValue, rightValue);
+            }
+            if ("<>".equals(comparator)) {
+                return !equal(leftValue, rightValue);
+            }
+            //a missing attribute fails any ordering
+            if (leftValue == null || rightValue == null || !type(leftValue).equals(type(rightValue))) {
+                return false;
+            }
+            final int compared = compare(leftValue, rightValue);
+            switch (comparator) {
+                case "<":
+                    return compared < 0;
+                case "<=":
+                    return compared <= 0;
+                case ">":
+                    return compared > 0;
+                default:
+                    return compared >= 0;
+            }
+        };
+    }
+
+    private JsonNode setValue(ObjectNode item) {
+        final Operand left = setOperand();
+        if (accept("+") || peekIs("-")) {
+            final boolean subtract = accept("-");
+            final Operand right = setOperand();
+            final BigDecimal leftNumber = number(left.value(item));
+            final BigDecimal rightNumber = number(right.value(item));
+            final BigDecimal result = subtract ? leftNumber.subtract(rightNumber) : leftNumber.add(rightNumber);
+            return JsonNodeFactory.instance.objectNode().put("N", result.toPlainString());
+        }
+        final JsonNode value = left.value(item);
+        if (value == null) {
+            throw InMemoryDynamoDB.validation("The value to set does not exist");
+        }
+        return value;
+    }
+
+    private Operand setOperand() {
+        if ("if_not_exists".equalsIgnoreCase(peek())) {
+            next();
+            expect("(");
+            final List<String> path = path();
+            expect(",");
+            final Operand fallback = setOperand();
+            expect(")");
+            return item -> {
+                final JsonNode value = resolve(item, path);
+                return value != null ? value : fallback.value(item);
+            };
+        }
+        return operand();
+    }
+
+    private static BigDecimal number(JsonNode value) {
+        if (value == null || !value.has("N")) {
+            throw InMemoryDynamoDB.validation("Expected a number, but was " + value);
+        }
+        return new BigDecimal(value.get("N").asText());
+    }
+
+    private Operand operand() {
+        final String token = peek();
+        if (token.startsWith(":")) {
+            next();
+            final JsonNode value = values == null ? null : values.get(token);
+            if (value == null) {
+                throw InMemoryDynamoDB.validation("Value " + token + " is not defined in ExpressionAttributeValues");
+            }
+            return item -> value;
+        }
+        final List<String> path = path();
+        return item -> resolve(item, path);
+    }
+
+    private String topLevelPath() {
+        final List<String> path = path();
+        if (path.size() > 1) {
+            throw InMemoryDynamoDB.validation("Updating nested attributes is not supported");
+        }
+        return path.get(0);
+    }
+
+    private List<String> path() {
+        final List<String> path = new ArrayList<>();
+        do {
+            final String token = next();
+            if (token.startsWith("#")) {
+                final String name = names.get(token);
+                if (name == null) {
+                    throw InMemoryDynamoDB.validation("Name " + token + " is not defined in ExpressionAttributeNames");
+                }
+                path.add(name);
+            } else if (Character.isLetter(token.charAt(0)) || token.charAt(0) == '_') {
+                path.add(token);
+            } else {
+                throw InMemoryDynamoDB.validation("Expected an attribute name, but was " + token);
+            }
+        } while (accept("."));
+        return path;
+    }
+
+    private static JsonNode resolve(ObjectNode item, List<String> path) {
+        JsonNode value = item.get(path.get(0));
+        for (int i = 1; i < path.size() && value != null; i++) {
+            value = value.has("M") ? value.get("M").get(path.get(i)) : null;
+        }
+        return value;
+    }
+
+    private static List<String> tokenize(String expression) {
+        final List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            final char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '#' || c == ':') {
+                int end = i + 1;
+                while (end < expression.length() && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_')) {
+                    end++;
+                }
+                tokens.add(expression.substring(i, end));
+                i = end;
+            } else if ((c == '<' || c == '>') && i + 1 < expression.length() && (expression.charAt(i + 1) == '=' || expression.charAt(i + 1) == '>')) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static Map<String, String> toMap(JsonNode names) {
+        final Map<String, String> map = new HashMap<>();
+        final Iterator<Map.Entry<String, JsonNode>> fields = names.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            map.put(field.getKey(), field.getValue().asText());
+        }
+        return map;
+    }
+
+    private boolean atEnd() {
+        return position >= tokens.size();
+    }
+
+    private String peek() {
+        return atEnd() ? "" : tokens.get(position);
+    }
+
+    private boolean peekIs(String token) {
+        return token.equals(peek());
+    }
+
+    private String next() {
+        if (atEnd()) {
+            throw InMemoryDynamoDB.validation("Unexpected end of expression");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(String token) {
+        if (peekIs(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (keyword.equalsIgnoreCase(peek())) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw InMemoryDynamoDB.validation("Expected " + token + ", but was " + peek());
+        }
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw InMemoryDynamoDB.validation("Expected " + keyword + ", but was " + peek());
+        }
+    }
+
+    private void expectEnd() {
+        if (!atEnd()) {
+            throw InMemoryDynamoDB.validation("Unexpected " + peek());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operand {
+        JsonNode value(ObjectNode item);
+    }
+}
@@ -0,0 +1,270 @@
+package eu.luminis.breed.dynamodbmigration.inmemory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for DynamoDB, for fast repository tests and benchmarks without Docker. It serves the JSON
+ * protocol of the DynamoDB API on a random local port, so the clients of SDK 1 and 2 can be pointed at its
+ * {@link #getEndpoint() endpoint}, and keeps the tables in memory.
+ * <p>
+ * Only what the repositories use is supported: tables and global secondary indexes with a hash key, the item
+ * operations, scans and queries with paging and segments, batches, and the expressions of {@link Expressions}. The
+ * limits of DynamoDB on the size of a page and a batch are applied, but there are no throughput limits, so unprocessed
+ * keys and items are always empty.
+ */
+@Slf4j
+public final class InMemoryDynamoDB implements AutoCloseable {
+
+    private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+    private static final String ERROR_PREFIX = "com.amazonaws.dynamodb.v20120810#";
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    static {
+        //without it, the server waits on the delayed acknowledgements of the clients and a request takes about 40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Map<String, InMemoryTable> tables = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private InMemoryDynamoDB() throws IOException {
+        final AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "in-memory-dynamodb-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static InMemoryDynamoDB start() {
+        try {
+            final InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+            dynamoDB.server.start();
+            log.info("Started in-memory DynamoDB on {}", dynamoDB.getEndpoint());
+            return dynamoDB;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Creates a table with a string hash key and indexes with a string hash key and projection ALL.
+     *
+     * @param indexHashKeys the hash key per index name
+     */
+    public void createTable(String tableName, String hashKey, Map<String, String> indexHashKeys) {
+        final ObjectNode request = OBJECT_MAPPER.createObjectNode().put("TableName", tableName);
+        final Set<String> attributes = new HashSet<>(indexHashKeys.values());
+        attributes.add(hashKey);
+        final ArrayNode attributeDefinitions = request.putArray("AttributeDefinitions");
+        attributes.forEach(attribute -> attributeDefinitions.addObject().put("AttributeName", attribute).put("AttributeType", "S"));
+        request.putArray("KeySchema").addObject().put("AttributeName", hashKey).put("KeyType", "HASH");
+        final ArrayNode indexes = request.putArray("GlobalSecondaryIndexes");
+        indexHashKeys.forEach((indexName, indexHashKey) -> {
+            final ObjectNode index = indexes.addObject().put("IndexName", indexName);
+            index.putArray("KeySchema").addObject().put("AttributeName", indexHashKey).put("KeyType", "HASH");
+            index.putObject("Projection").put("ProjectionType", "ALL");
+        });
+        createTable(request);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    static ServiceException validation(String message) {
+        return new ServiceException("ValidationException", message);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            int status = 200;
+            JsonNode response;
+            try (InputStream body = exchange.getRequestBody()) {
+                response = dispatch(target == null ? "" : target.replace(TARGET_PREFIX, ""), OBJECT_MAPPER.readTree(body));
+            } catch (ServiceException e) {
+                status = 400;
+                response = OBJECT_MAPPER.createObjectNode()
+                        .put("__type", ERROR_PREFIX + e.getType())
+                        .put("message", e.getMessage());
+            } catch (Exception e) {
+                log.error("Unable to handle {}", target, e);
+                status = 500;
+                response = OBJECT_MAPPER.createObjectNode()
+                        .put("__type", ERROR_PREFIX + "InternalServerError")
+                        .put("message", String.valueOf(e.getMessage()));
+            }
+            final byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+            exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode dispatch(String operation, JsonNode request) {
+        switch (operation) {
+            case "CreateTable":
+                return createTable(request);
+            case "DescribeTable":
+                return OBJECT_MAPPER.createObjectNode().set("Table", table(request).describe());
+            case "ListTables":
+                return OBJECT_MAPPER.createObjectNode().set("TableNames", OBJECT_MAPPER.valueToTree(tables.keySet()));
+            case "DeleteTable":
+                final InMemoryTable deleted = table(request);
+                tables.remove(deleted.getName());
+                return OBJECT_MAPPER.createObjectNode().set("TableDescription", deleted.describe());
+            case "GetItem":
+                return table(request).getItem(request);
+            case "PutItem":
+                return table(request).putItem(request);
+            case "UpdateItem":
+                return table(request).updateItem(request);
+            case "DeleteItem":
+                return table(request).deleteItem(request);
+            case "Scan":
+                return table(request).scan(request);
+            case "Query":
+                return table(request).query(request);
+            case "BatchGetItem":
+                return batchGetItem(request);
+            case "BatchWriteItem":
+                return batchWriteItem(request);
+            default:
+                throw new ServiceException("UnknownOperationException", "Operation " + operation + " is not supported");
+        }
+    }
+
+    private JsonNode createTable(JsonNode request) {
+        final InMemoryTable table = new InMemoryTable(request);
+        if (tables.putIfAbsent(table.getName(), table) != null) {
+            throw new ServiceException("ResourceInUseException", "Table already exists: " + table.getName());
+        }
+        return OBJECT_MAPPER.createObjectNode().set("TableDescription", table.describe());
+    }
+
+    private JsonNode batchGetItem(JsonNode request) {
+        final ObjectNode responses = OBJECT_MAPPER.createObjectNode();
+        int keys = 0;
+        final Iterator<Map.Entry<String, JsonNode>> requestItems = request.path("RequestItems").fields();
+        while (requestItems.hasNext()) {
+            final Map.Entry<String, JsonNode> requestItem = requestItems.next();
+            final InMemoryTable table = table(requestItem.getKey());
+            final ArrayNode items = responses.putArray(requestItem.getKey());
+            final Set<String> distinctKeys = new HashSet<>();
+            //a get item request with the projection of the keys and attributes
+            final ObjectNode getItemRequest = requestItem.getValue().deepCopy();
+            for (JsonNode key : requestItem.getValue().path("Keys")) {
+                if (!distinctKeys.add(table.tableKey(key))) {
+                    throw validation("Provided list of item keys contains duplicates");
+                }
+                final JsonNode item = table.getItem(getItemRequest.set("Key", key)).get("Item");
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            keys += distinctKeys.size();
+        }
+        if (keys > MAX_BATCH_GET_KEYS) {
+            throw validation("Too many items requested for the BatchGetItem call");
+        }
+        final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.set("Responses", responses);
+        response.putObject("UnprocessedKeys");
+        return response;
+    }
+
+    private JsonNode batchWriteItem(JsonNode request) {
+        int writes = 0;
+        for (JsonNode tableWrites : request.path("RequestItems")) {
+            writes += tableWrites.size();
+        }
+        if (writes > MAX_BATCH_WRITE_ITEMS) {
+            throw validation("Too many items requested for the BatchWriteItem call");
+        }
+        final Iterator<Map.Entry<String, JsonNode>> requestItems = request.path("RequestItems").fields();
+        while (requestItems.hasNext()) {
+            final Map.Entry<String, JsonNode> requestItem = requestItems.next();
+            final InMemoryTable table = table(requestItem.getKey());
+            for (JsonNode write : requestItem.getValue()) {
+                if (write.has("PutRequest")) {
+                    table.putItem(write.get("PutRequest"));
+                } else {
+                    table.deleteItem(write.path("DeleteRequest"));
+                }
+            }
+        }
+        final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.putObject("UnprocessedItems");
+        return response;
+    }
+
+    private InMemoryTable table(JsonNode request) {
+        return table(request.path("TableName").asText());
+    }
+
+    private InMemoryTable table(String tableName) {
+        final InMemoryTable table = tables.get(tableName);
+        if (table == null) {
+            throw new ServiceException("ResourceNotFoundException", "Requested resource not found: Table: " + tableName + " not found");
+        }
+        return table;
+    }
+
+    /**
+     * An error of the DynamoDB API, like a ConditionalCheckFailedException, which the clients turn into the exception of
+     * the same name.
+     */
+    static final class ServiceException extends RuntimeException {
+
+        private final String type;
+
+        ServiceException(String type, String message) {
+            super(message);
+            this.type = type;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+}
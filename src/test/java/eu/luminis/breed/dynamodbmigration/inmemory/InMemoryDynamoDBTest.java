@@ -0,0 +1,152 @@
+package eu.luminis.breed.dynamodbmigration.inmemory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryDynamoDBTest {
+
+    private static InMemoryDynamoDB inMemoryDynamoDB;
+    private static DynamoDbClient dynamoDbClient;
+
+    @BeforeAll
+    static void start() {
+        inMemoryDynamoDB = InMemoryDynamoDB.start();
+        inMemoryDynamoDB.createTable("user", "id", Map.of("lastNameIndex", "lastName"));
+        dynamoDbClient = DynamoDbClient.builder()
+                .endpointOverride(URI.create(inMemoryDynamoDB.getEndpoint()))
+                .region(Region.EU_WEST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .build();
+    }
+
+    @AfterAll
+    static void stop() {
+        dynamoDbClient.close();
+        inMemoryDynamoDB.close();
+    }
+
+    @Test
+    void shouldOnlyUpdateWhenTheConditionHolds() {
+        final Map<String, AttributeValue> key = Map.of("id", s(UUID.randomUUID().toString()));
+        dynamoDbClient.putItem(builder -> builder.tableName("user").item(Map.of("id", key.get("id"), "lastModified", s("2021-02-01T12:00"))));
+
+        assertThatThrownBy(() -> update(key, "2021-01-01T12:00")).isInstanceOf(ConditionalCheckFailedException.class);
+        update(key, "2021-03-01T12:00");
+        assertThat(dynamoDbClient.getItem(builder -> builder.tableName("user").key(key)).item())
+                .containsEntry("firstName", s("second"))
+                .containsEntry("lastModified", s("2021-03-01T12:00"));
+    }
+
+    @Test
+    void shouldQueryTheIndexInPages() {
+        final String lastName = UUID.randomUUID().toString();
+        IntStream.range(0, 25).forEach(i -> dynamoDbClient.putItem(builder -> builder.tableName("user")
+                .item(Map.of("id", s(UUID.randomUUID().toString()), "lastName", s(lastName)))));
+
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        int pages = 0;
+        do {
+            final QueryResponse response = dynamoDbClient.query(QueryRequest.builder()
+                    .tableName("user")
+                    .indexName("lastNameIndex")
+                    .keyConditionExpression("#lastName = :lastName")
+                    .expressionAttributeNames(Map.of("#lastName", "lastName"))
+                    .expressionAttributeValues(Map.of(":lastName", s(lastName)))
+                    .exclusiveStartKey(lastEvaluatedKey)
+                    .limit(10)
+                    .build());
+            items.addAll(response.items());
+            lastEvaluatedKey = response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null;
+            pages++;
+        } while (lastEvaluatedKey != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(items).hasSize(25).extracting(item -> item.get("id")).doesNotHaveDuplicates();
+    }
+
+    //the enhanced client cannot be resolved everywhere, so its requests are replayed: mapped names, SET and REMOVE in one
+    //update, and the values it asks back
+    @Test
+    void shouldServeTheRequestsOfTheEnhancedClient() {
+        final String lastName = UUID.randomUUID().toString();
+        final Map<String, AttributeValue> key = Map.of("id", s(UUID.randomUUID().toString()));
+        dynamoDbClient.putItem(builder -> builder.tableName("user").item(Map.of("id", key.get("id"), "age", n("21"))));
+
+        assertThat(dynamoDbClient.updateItem(builder -> builder.tableName("user")
+                .key(key)
+                .updateExpression("SET #AMZN_MAPPED_firstName = :AMZN_MAPPED_firstName, #AMZN_MAPPED_lastName = :AMZN_MAPPED_lastName"
+                        + " REMOVE #AMZN_MAPPED_age")
+                .expressionAttributeNames(Map.of("#AMZN_MAPPED_firstName", "firstName", "#AMZN_MAPPED_lastName", "lastName",
+                        "#AMZN_MAPPED_age", "age"))
+                .expressionAttributeValues(Map.of(":AMZN_MAPPED_firstName", s("first"), ":AMZN_MAPPED_lastName", s(lastName)))
+                .returnValues(ReturnValue.ALL_NEW))
+                .attributes())
+                .isEqualTo(Map.of("id", key.get("id"), "firstName", s("first"), "lastName", s(lastName)));
+        assertThat(dynamoDbClient.query(builder -> builder.tableName("user")
+                .indexName("lastNameIndex")
+                .keyConditionExpression("#AMZN_MAPPED_lastName = :AMZN_MAPPED_lastName")
+                .projectionExpression("#AMZN_MAPPED_id,#AMZN_MAPPED_firstName")
+                .expressionAttributeNames(Map.of("#AMZN_MAPPED_lastName", "lastName", "#AMZN_MAPPED_id", "id",
+                        "#AMZN_MAPPED_firstName", "firstName"))
+                .expressionAttributeValues(Map.of(":AMZN_MAPPED_lastName", s(lastName))))
+                .items())
+                .containsExactly(Map.of("id", key.get("id"), "firstName", s("first")));
+        assertThat(dynamoDbClient.deleteItem(builder -> builder.tableName("user").key(key).returnValues(ReturnValue.ALL_OLD)).attributes())
+                .containsEntry("firstName", s("first"));
+    }
+
+    @Test
+    void shouldApplyTheLimitOfABatchGet() {
+        final List<Map<String, AttributeValue>> keys = IntStream.range(0, 101)
+                .mapToObj(i -> Map.of("id", s(UUID.randomUUID().toString())))
+                .collect(Collectors.toList());
+        assertThatThrownBy(() -> dynamoDbClient.batchGetItem(builder -> builder
+                .requestItems(Map.of("user", KeysAndAttributes.builder().keys(keys).build()))))
+                .isInstanceOf(DynamoDbException.class)
+                .hasMessageContaining("Too many items requested for the BatchGetItem call");
+        assertThat(dynamoDbClient.batchGetItem(builder -> builder
+                .requestItems(Map.of("user", KeysAndAttributes.builder().keys(keys.subList(0, 100)).build())))
+                .responses().get("user"))
+                .isEmpty();
+    }
+
+    private void update(Map<String, AttributeValue> key, String lastModified) {
+        dynamoDbClient.updateItem(builder -> builder.tableName("user")
+                .key(key)
+                .updateExpression("SET firstName = :firstName, lastModified = :lastModified")
+                .conditionExpression("attribute_not_exists(lastModified) OR lastModified <= :lastModified")
+                .expressionAttributeValues(Map.of(":firstName", s("second"), ":lastModified", s(lastModified))));
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(String value) {
+        return AttributeValue.builder().n(value).build();
+    }
+}
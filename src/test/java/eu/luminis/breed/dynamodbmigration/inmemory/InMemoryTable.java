@@ -0,0 +1,403 @@
+package eu.luminis.breed.dynamodbmigration.inmemory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * A table with a hash key and global secondary indexes with a hash key and projection ALL, like the user table. Items
+ * are never changed in place, a write replaces them, so reads do not need to lock. Writes lock the table, which makes
+ * the condition of a write and the write itself atomic.
+ */
+final class InMemoryTable {
+
+    //the maximum size of a page of a scan or query
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final String name;
+    private final String hashKey;
+    //index name to the hash key of the index
+    private final Map<String, String> indexHashKeys;
+    private final ObjectNode description;
+    private final ConcurrentSkipListMap<String, ObjectNode> items = new ConcurrentSkipListMap<>();
+    //index name to the items per hash key of the index
+    private final Map<String, ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectNode>>> indexes = new HashMap<>();
+
+    InMemoryTable(JsonNode request) {
+        this.name = request.path("TableName").asText();
+        this.hashKey = hashKey(request.path("KeySchema"));
+        this.indexHashKeys = new HashMap<>();
+        for (JsonNode index : request.path("GlobalSecondaryIndexes")) {
+            if (!"ALL".equals(index.path("Projection").path("ProjectionType").asText())) {
+                throw InMemoryDynamoDB.validation("Only indexes with projection ALL are supported");
+            }
+            indexHashKeys.put(index.path("IndexName").asText(), hashKey(index.path("KeySchema")));
+            indexes.put(index.path("IndexName").asText(), new ConcurrentHashMap<>());
+        }
+        this.description = NODES.objectNode()
+                .put("TableName", name)
+                .put("TableArn", "arn:aws:dynamodb:local:000000000000:table/" + name)
+                .put("TableStatus", "ACTIVE")
+                .put("CreationDateTime", Instant.now().getEpochSecond());
+        description.set("KeySchema", request.path("KeySchema"));
+        description.set("AttributeDefinitions", request.path("AttributeDefinitions"));
+        if (!indexHashKeys.isEmpty()) {
+            final ArrayNode indexDescriptions = description.putArray("GlobalSecondaryIndexes");
+            for (JsonNode index : request.path("GlobalSecondaryIndexes")) {
+                indexDescriptions.addObject()
+                        .put("IndexName", index.path("IndexName").asText())
+                        .put("IndexStatus", "ACTIVE")
+                        .setAll(Map.of("KeySchema", index.path("KeySchema"), "Projection", index.path("Projection")));
+            }
+        }
+    }
+
+    ObjectNode describe() {
+        return description.deepCopy()
+                .put("ItemCount", items.size());
+    }
+
+    ObjectNode getItem(JsonNode request) {
+        final ObjectNode item = items.get(tableKey(request.path("Key")));
+        final ObjectNode response = NODES.objectNode();
+        if (item != null) {
+            response.set("Item", project(item, request));
+        }
+        return response;
+    }
+
+    ObjectNode putItem(JsonNode request) {
+        final JsonNode item = request.path("Item");
+        final String key = key(item.get(hashKey));
+        synchronized (this) {
+            final ObjectNode existing = items.get(key);
+            checkCondition(request, existing);
+            store(key, (ObjectNode) item, existing);
+            return returnValues(request, existing, null);
+        }
+    }
+
+    ObjectNode updateItem(JsonNode request) {
+        final JsonNode keyAttributes = request.path("Key");
+        final String key = tableKey(keyAttributes);
+        synchronized (this) {
+            final ObjectNode existing = items.get(key);
+            checkCondition(request, existing);
+            final ObjectNode current = existing != null ? existing : NODES.objectNode().set(hashKey, keyAttributes.get(hashKey));
+            final ObjectNode updated = request.has("UpdateExpression")
+                    ? Expressions.update(request.get("UpdateExpression").asText(), request.get("ExpressionAttributeNames"), request.get("ExpressionAttributeValues"), current)
+                    : applyAttributeUpdates(request.path("AttributeUpdates"), current);
+            if (!Expressions.equal(updated.get(hashKey), current.get(hashKey))) {
+                throw InMemoryDynamoDB.validation("Cannot update attribute " + hashKey + ". This attribute is part of the key");
+            }
+            store(key, updated, existing);
+            return returnValues(request, existing, updated);
+        }
+    }
+
+    ObjectNode deleteItem(JsonNode request) {
+        final String key = tableKey(request.path("Key"));
+        synchronized (this) {
+            final ObjectNode existing = items.get(key);
+            checkCondition(request, existing);
+            if (existing != null) {
+                items.remove(key);
+                unindex(key, existing);
+            }
+            return returnValues(request, existing, null);
+        }
+    }
+
+    ObjectNode scan(JsonNode request) {
+        final int totalSegments = request.path("TotalSegments").asInt(1);
+        final int segment = request.path("Segment").asInt(0);
+        final JsonNode startKey = request.get("ExclusiveStartKey");
+        final NavigableMap<String, ObjectNode> range = startKey == null ? items : items.tailMap(tableKey(startKey), false);
+        return page(request, range.values().stream()
+                .filter(item -> totalSegments == 1 || Math.floorMod(key(item.get(hashKey)).hashCode(), totalSegments) == segment)
+                .iterator(), null);
+    }
+
+    ObjectNode query(JsonNode request) {
+        final String indexName = request.path("IndexName").asText(null);
+        final String keyAttribute = indexName == null ? hashKey : indexHashKeys.get(indexName);
+        if (keyAttribute == null) {
+            throw InMemoryDynamoDB.validation("The table does not have the specified index: " + indexName);
+        }
+        final JsonNode value = request.has("KeyConditionExpression")
+                ? Expressions.hashKeyValue(request.get("KeyConditionExpression").asText(), request.get("ExpressionAttributeNames"), request.get("ExpressionAttributeValues"), keyAttribute)
+                : keyConditionValue(request.path("KeyConditions"), keyAttribute);
+        NavigableMap<String, ObjectNode> range;
+        if (indexName == null) {
+            final ObjectNode item = items.get(key(value));
+            range = new ConcurrentSkipListMap<>(item == null ? Map.of() : Map.of(key(value), item));
+        } else {
+            range = indexes.get(indexName).getOrDefault(key(value), new ConcurrentSkipListMap<>());
+        }
+        final JsonNode startKey = request.get("ExclusiveStartKey");
+        if (startKey != null) {
+            range = request.path("ScanIndexForward").asBoolean(true)
+                    ? range.tailMap(tableKey(startKey), false)
+                    : range.headMap(tableKey(startKey), false);
+        }
+        if (!request.path("ScanIndexForward").asBoolean(true)) {
+            range = range.descendingMap();
+        }
+        return page(request, range.values().iterator(), indexName == null ? null : keyAttribute);
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    ObjectNode project(ObjectNode item, JsonNode request) {
+        final List<String> attributes;
+        if (request.has("ProjectionExpression")) {
+            attributes = Expressions.projection(request.get("ProjectionExpression").asText(), request.get("ExpressionAttributeNames"));
+        } else if (request.has("AttributesToGet")) {
+            attributes = new ArrayList<>();
+            request.get("AttributesToGet").forEach(attribute -> attributes.add(attribute.asText()));
+        } else {
+            return item;
+        }
+        final ObjectNode projected = NODES.objectNode();
+        attributes.stream()
+                .filter(item::has)
+                .forEach(attribute -> projected.set(attribute, item.get(attribute)));
+        return projected;
+    }
+
+    String tableKey(JsonNode keyAttributes) {
+        if (!keyAttributes.has(hashKey)) {
+            throw InMemoryDynamoDB.validation("The provided key element does not match the schema");
+        }
+        return key(keyAttributes.get(hashKey));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    private ObjectNode page(JsonNode request, Iterator<ObjectNode> candidates, String indexKey) {
+        final int limit = request.path("Limit").asInt(Integer.MAX_VALUE);
+        final Predicate<ObjectNode> filter = request.has("FilterExpression")
+                ? Expressions.condition(request.get("FilterExpression").asText(), request.get("ExpressionAttributeNames"), request.get("ExpressionAttributeValues"))
+                : item -> true;
+        final boolean countOnly = "COUNT".equals(request.path("Select").asText());
+        final ObjectNode response = NODES.objectNode();
+        final ArrayNode items = NODES.arrayNode();
+        int scanned = 0;
+        int size = 0;
+        ObjectNode last = null;
+        while (candidates.hasNext() && scanned < limit && size < PAGE_SIZE) {
+            last = candidates.next();
+            scanned++;
+            size += size(last);
+            if (filter.test(last)) {
+                items.add(project(last, request));
+            }
+        }
+        if (!countOnly) {
+            response.set("Items", items);
+        }
+        response.put("Count", items.size());
+        response.put("ScannedCount", scanned);
+        if (candidates.hasNext()) {
+            final ObjectNode lastEvaluatedKey = response.putObject("LastEvaluatedKey").set(hashKey, last.get(hashKey));
+            if (indexKey != null) {
+                lastEvaluatedKey.set(indexKey, last.get(indexKey));
+            }
+        }
+        return response;
+    }
+
+    private void store(String key, ObjectNode item, ObjectNode existing) {
+        items.put(key, item);
+        if (existing != null) {
+            unindex(key, existing);
+        }
+        indexHashKeys.forEach((indexName, indexKey) -> {
+            //items without the key of the index are not in the index
+            if (item.has(indexKey)) {
+                indexes.get(indexName)
+                        .computeIfAbsent(key(item.get(indexKey)), value -> new ConcurrentSkipListMap<>())
+                        .put(key, item);
+            }
+        });
+    }
+
+    private void unindex(String key, ObjectNode item) {
+        indexHashKeys.forEach((indexName, indexKey) -> {
+            if (item.has(indexKey)) {
+                final Map<String, ObjectNode> indexItems = indexes.get(indexName).get(key(item.get(indexKey)));
+                if (indexItems != null) {
+                    indexItems.remove(key, item);
+                }
+            }
+        });
+    }
+
+    private static void checkCondition(JsonNode request, ObjectNode existing) {
+        final ObjectNode item = existing != null ? existing : NODES.objectNode();
+        final boolean passed;
+        if (request.has("ConditionExpression")) {
+            passed = Expressions.condition(request.get("ConditionExpression").asText(), request.get("ExpressionAttributeNames"), request.get("ExpressionAttributeValues"))
+                    .test(item);
+        } else if (request.has("Expected")) {
+            passed = expected(request.get("Expected"), "OR".equals(request.path("ConditionalOperator").asText()), item);
+        } else {
+            passed = true;
+        }
+        if (!passed) {
+            throw new InMemoryDynamoDB.ServiceException("ConditionalCheckFailedException", "The conditional request failed");
+        }
+    }
+
+    //the legacy conditions of the Expected parameter
+    private static boolean expected(JsonNode expected, boolean or, ObjectNode item) {
+        final Iterator<Map.Entry<String, JsonNode>> conditions = expected.fields();
+        boolean passed = !or;
+        while (conditions.hasNext()) {
+            final Map.Entry<String, JsonNode> condition = conditions.next();
+            final JsonNode value = item.get(condition.getKey());
+            final JsonNode operator = condition.getValue();
+            final boolean result;
+            if (operator.has("ComparisonOperator")) {
+                result = compare(operator.get("ComparisonOperator").asText(), value, operator.path("AttributeValueList"));
+            } else if (!operator.path("Exists").asBoolean(true)) {
+                result = value == null;
+            } else {
+                result = Expressions.equal(value, operator.get("Value"));
+            }
+            passed = or ? passed || result : passed && result;
+        }
+        return passed;
+    }
+
+    private static boolean compare(String operator, JsonNode value, JsonNode arguments) {
+        switch (operator) {
+            case "NULL":
+                return value == null;
+            case "NOT_NULL":
+                return value != null;
+            case "EQ":
+                return Expressions.equal(value, arguments.get(0));
+            case "NE":
+                return !Expressions.equal(value, arguments.get(0));
+            case "LT":
+                return value != null && Expressions.compare(value, arguments.get(0)) < 0;
+            case "LE":
+                return value != null && Expressions.compare(value, arguments.get(0)) <= 0;
+            case "GT":
+                return value != null && Expressions.compare(value, arguments.get(0)) > 0;
+            case "GE":
+                return value != null && Expressions.compare(value, arguments.get(0)) >= 0;
+            default:
+                throw InMemoryDynamoDB.validation("Comparison operator " + operator + " is not supported");
+        }
+    }
+
+    private static JsonNode keyConditionValue(JsonNode keyConditions, String keyAttribute) {
+        final JsonNode condition = keyConditions.path(keyAttribute);
+        if (keyConditions.size() != 1 || !"EQ".equals(condition.path("ComparisonOperator").asText())) {
+            throw InMemoryDynamoDB.validation("Query condition missed key schema element: " + keyAttribute);
+        }
+        return condition.path("AttributeValueList").get(0);
+    }
+
+    //the legacy updates of the AttributeUpdates parameter
+    private static ObjectNode applyAttributeUpdates(JsonNode attributeUpdates, ObjectNode item) {
+        final ObjectNode updated = item.deepCopy();
+        final Iterator<Map.Entry<String, JsonNode>> updates = attributeUpdates.fields();
+        while (updates.hasNext()) {
+            final Map.Entry<String, JsonNode> update = updates.next();
+            final String action = update.getValue().path("Action").asText("PUT");
+            if ("PUT".equals(action)) {
+                updated.set(update.getKey(), update.getValue().get("Value"));
+            } else if ("DELETE".equals(action) && !update.getValue().has("Value")) {
+                updated.remove(update.getKey());
+            } else {
+                throw InMemoryDynamoDB.validation("Attribute update action " + action + " is not supported");
+            }
+        }
+        return updated;
+    }
+
+    private static ObjectNode returnValues(JsonNode request, ObjectNode existing, ObjectNode updated) {
+        final String returnValues = request.path("ReturnValues").asText("NONE");
+        final ObjectNode response = NODES.objectNode();
+        if (("ALL_OLD".equals(returnValues) || "UPDATED_OLD".equals(returnValues)) && existing != null) {
+            response.set("Attributes", existing);
+        } else if (("ALL_NEW".equals(returnValues) || "UPDATED_NEW".equals(returnValues)) && updated != null) {
+            response.set("Attributes", updated);
+        }
+        return response;
+    }
+
+    private static String hashKey(JsonNode keySchema) {
+        for (JsonNode key : keySchema) {
+            if (!"HASH".equals(key.path("KeyType").asText())) {
+                throw InMemoryDynamoDB.validation("Only hash keys are supported");
+            }
+        }
+        if (keySchema.size() != 1) {
+            throw InMemoryDynamoDB.validation("Expected a key schema with a hash key");
+        }
+        return keySchema.get(0).path("AttributeName").asText();
+    }
+
+    //the value of a key attribute, like the string of {"S": "value"}
+    private static String key(JsonNode value) {
+        if (value == null || value.size() != 1) {
+            throw InMemoryDynamoDB.validation("One or more parameter values were invalid: Missing the key");
+        }
+        return value.elements().next().asText();
+    }
+
+    private static int size(JsonNode item) {
+        int size = 0;
+        final Iterator<Map.Entry<String, JsonNode>> attributes = item.fields();
+        while (attributes.hasNext()) {
+            final Map.Entry<String, JsonNode> attribute = attributes.next();
+            size += attribute.getKey().length() + valueSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static int valueSize(JsonNode value) {
+        final Map.Entry<String, JsonNode> typed = value.fields().next();
+        switch (typed.getKey()) {
+            case "M":
+                return 3 + size(typed.getValue());
+            case "L":
+            case "SS":
+            case "NS":
+            case "BS":
+                int size = 3;
+                for (JsonNode element : typed.getValue()) {
+                    size += element.isObject() ? valueSize(element) : element.asText().length();
+                }
+                return size;
+            case "BOOL":
+            case "NULL":
+                return 1;
+            default:
+                return typed.getValue().asText().getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.EducationCodec;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
+
+/**
+ * Time per education of the map encoding of {@link EducationCodec} against the JSON string it replaced. main also runs
+ * the GC profiler for the allocations, and prints the size of both encodings as DynamoDB counts it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EducationEncodingBenchmark {
+
+    private Education education;
+    private AttributeValue map;
+    private AttributeValue json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        education = UserFixtures.education();
+        map = EducationCodec.encode(education);
+        json = encodeAsJson(education);
+    }
+
+    @Benchmark
+    public AttributeValue encodeMap() {
+        return EducationCodec.encode(education);
+    }
+
+    @Benchmark
+    public AttributeValue encodeJson() throws JsonProcessingException {
+        return encodeAsJson(education);
+    }
+
+    @Benchmark
+    public Education decodeMap() {
+        return EducationCodec.decode(map);
+    }
+
+    @Benchmark
+    public Education decodeJson() {
+        return EducationCodec.decode(json);
+    }
+
+    public static void main(String[] args) throws JsonProcessingException, RunnerException {
+        final Education education = UserFixtures.education();
+        System.out.printf("Education in DynamoDB: map %d bytes, JSON string %d bytes%n",
+                size(EducationCodec.encode(education)), size(encodeAsJson(education)));
+        new Runner(new OptionsBuilder()
+                .include(EducationEncodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    private static AttributeValue encodeAsJson(Education education) throws JsonProcessingException {
+        return AttributeValue.builder().s(OBJECT_MAPPER.writeValueAsString(education)).build();
+    }
+
+    //as DynamoDB counts item size: strings in UTF-8, about a byte per two digits of a number, and a map costs 3 bytes
+    //plus 1 byte and the name of every element
+    static long size(AttributeValue value) {
+        if (value.s() != null) {
+            return value.s().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (value.n() != null) {
+            return value.n().length() / 2 + 1;
+        }
+        if (value.hasM()) {
+            long size = 3;
+            for (Map.Entry<String, AttributeValue> element : value.m().entrySet()) {
+                size += 1 + element.getKey().getBytes(StandardCharsets.UTF_8).length + size(element.getValue());
+            }
+            return size;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,274 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import com.amazonaws.util.VersionInfoUtils;
+import eu.luminis.breed.dynamodbmigration.user.benchmark.LoadOptions.Operation;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.util.VersionInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
+
+/**
+ * Drives repositories with a mix of operations for a while, and records the latency of every operation in an
+ * HdrHistogram. Every repository first runs a warmup that is not recorded.
+ * <p>
+ * The load is a closed loop: an operation starts when the previous one of its worker is done. The latencies therefore
+ * leave out the time an operation would have waited behind a slow one, and should be compared between repositories
+ * rather than read as what a client with a fixed arrival rate sees.
+ */
+@Slf4j
+class LoadBenchmark {
+
+    private final LoadOptions options;
+    private final List<UUID> ids;
+    private final List<String> lastNames;
+    private final List<OperationResult> results = new ArrayList<>();
+    private final Instant startedAt = Instant.now();
+
+    LoadBenchmark(LoadOptions options, UserRepository seedRepository) {
+        this.options = options;
+        this.lastNames = IntStream.range(0, options.getLastNames())
+                .mapToObj(i -> "load-" + UUID.randomUUID())
+                .collect(Collectors.toList());
+        final List<User> users = IntStream.range(0, options.getUsers())
+                .mapToObj(i -> user(null, lastNames.get(i % lastNames.size())))
+                .collect(Collectors.toList());
+        this.ids = seedRepository.createOrUpdateUsers(users).stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    void run(UserRepository repository) {
+        final String implementation = repository.getClass().getSimpleName();
+        if (!implementation.matches(options.getImplementations())) {
+            return;
+        }
+        final Function<Operation, Runnable> calls = operation -> call(repository, operation);
+        runSync(calls, options.getWarmup());
+        record(implementation, runSync(calls, options.getDuration()));
+    }
+
+    void run(UserAsyncRepository repository) {
+        final String implementation = repository.getClass().getSimpleName();
+        if (!implementation.matches(options.getImplementations())) {
+            return;
+        }
+        final Function<Operation, Mono<?>> calls = operation -> call(repository, operation);
+        runAsync(calls, options.getWarmup());
+        record(implementation, runAsync(calls, options.getDuration()));
+    }
+
+    /**
+     * Writes the results of all repositories as JSON, in a file per run, and logs them.
+     *
+     * @return the file
+     */
+    Path report() throws IOException {
+        results.forEach(result -> log.info("{}", result));
+        final Report report = Report.of(startedAt.toString(), VersionInfoUtils.getVersion(), VersionInfo.SDK_VERSION,
+                System.getProperty("java.version"), LoadOptions.format(options.getMix()), options.getConcurrency(),
+                options.getWarmup().toString(), options.getDuration().toString(), results);
+        Files.createDirectories(options.getOutput());
+        final Path file = options.getOutput().resolve("load-" + startedAt.toEpochMilli() + ".json");
+        OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+        return file;
+    }
+
+    private Runnable call(UserRepository repository, Operation operation) {
+        switch (operation) {
+            case GET:
+                return () -> repository.getUserById(randomId());
+            case PUT:
+                return () -> repository.createOrUpdateUser(user(randomId(), randomLastName()));
+            case UPDATE:
+                return () -> repository.updateUser(partialUser());
+            case QUERY:
+                return () -> repository.findByLastName(randomLastName());
+            case BATCH_GET:
+                return () -> repository.findByIds(randomIds());
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private Mono<?> call(UserAsyncRepository repository, Operation operation) {
+        switch (operation) {
+            case GET:
+                return repository.getUserById(randomId());
+            case PUT:
+                return repository.createOrUpdateUser(user(randomId(), randomLastName()));
+            case UPDATE:
+                return repository.updateUser(partialUser());
+            case QUERY:
+                return repository.findByLastName(randomLastName()).then();
+            case BATCH_GET:
+                return repository.findByIds(randomIds()).then();
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private Map<Operation, OperationRecorder> runSync(Function<Operation, Runnable> calls, Duration duration) {
+        final Map<Operation, OperationRecorder> recorders = recorders();
+        final long deadline = System.nanoTime() + duration.toNanos();
+        final ExecutorService workers = Executors.newFixedThreadPool(options.getConcurrency());
+        for (int worker = 0; worker < options.getConcurrency(); worker++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    final Operation operation = options.nextOperation(ThreadLocalRandom.current());
+                    final Runnable call = calls.apply(operation);
+                    final long start = System.nanoTime();
+                    try {
+                        call.run();
+                        recorders.get(operation).succeeded(start);
+                    } catch (Exception e) {
+                        recorders.get(operation).failed();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            //a last operation may take until its timeout
+            workers.awaitTermination(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return recorders;
+    }
+
+    private Map<Operation, OperationRecorder> runAsync(Function<Operation, Mono<?>> calls, Duration duration) {
+        final Map<Operation, OperationRecorder> recorders = recorders();
+        final long deadline = System.nanoTime() + duration.toNanos();
+        Flux.range(0, options.getConcurrency())
+                .flatMap(worker -> Mono.defer(() -> {
+                    final Operation operation = options.nextOperation(ThreadLocalRandom.current());
+                    final long start = System.nanoTime();
+                    return Mono.defer(() -> calls.apply(operation))
+                            .then()
+                            .doOnSuccess(ignored -> recorders.get(operation).succeeded(start))
+                            .onErrorResume(e -> {
+                                recorders.get(operation).failed();
+                                return Mono.empty();
+                            });
+                }).repeat(() -> System.nanoTime() < deadline), options.getConcurrency())
+                .blockLast();
+        return recorders;
+    }
+
+    private void record(String implementation, Map<Operation, OperationRecorder> recorders) {
+        recorders.forEach((operation, recorder) -> {
+            final Histogram histogram = recorder.latencies.getIntervalHistogram();
+            if (histogram.getTotalCount() == 0 && recorder.errors.get() == 0) {
+                return;
+            }
+            final double seconds = options.getDuration().toNanos() / 1e9;
+            results.add(OperationResult.of(implementation, operation.name(), histogram.getTotalCount(), recorder.errors.get(),
+                    histogram.getTotalCount() / seconds,
+                    micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(90)),
+                    micros(histogram.getValueAtPercentile(99)), micros(histogram.getValueAtPercentile(99.9)),
+                    micros(histogram.getMaxValue())));
+        });
+    }
+
+    private Map<Operation, OperationRecorder> recorders() {
+        final Map<Operation, OperationRecorder> recorders = new EnumMap<>(Operation.class);
+        options.getMix().keySet().forEach(operation -> recorders.put(operation, new OperationRecorder()));
+        return recorders;
+    }
+
+    private User user(UUID id, String lastName) {
+        final User user = UserFixtures.user();
+        user.setId(id);
+        user.setLastName(lastName);
+        return user;
+    }
+
+    private User partialUser() {
+        return User.builder().id(randomId()).firstName("firstName" + ThreadLocalRandom.current().nextInt(1000)).build();
+    }
+
+    private UUID randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private List<UUID> randomIds() {
+        return ThreadLocalRandom.current().ints(options.getBatchSize(), 0, ids.size())
+                .distinct()
+                .mapToObj(ids::get)
+                .collect(Collectors.toList());
+    }
+
+    private String randomLastName() {
+        return lastNames.get(ThreadLocalRandom.current().nextInt(lastNames.size()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static final class OperationRecorder {
+        //wait-free to record from many threads, values in nanos
+        private final Recorder latencies = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+
+        private void succeeded(long start) {
+            latencies.recordValue(System.nanoTime() - start);
+        }
+
+        private void failed() {
+            errors.incrementAndGet();
+        }
+    }
+
+    @Value(staticConstructor = "of")
+    static class OperationResult {
+        String implementation;
+        String operation;
+        long count;
+        long errors;
+        double throughputPerSecond;
+        double p50Micros;
+        double p90Micros;
+        double p99Micros;
+        double p999Micros;
+        double maxMicros;
+    }
+
+    @Value(staticConstructor = "of")
+    static class Report {
+        String startedAt;
+        String sdk1Version;
+        String sdk2Version;
+        String javaVersion;
+        String mix;
+        int concurrency;
+        String warmup;
+        String duration;
+        List<OperationResult> results;
+    }
+}
@@ -0,0 +1,104 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * What a {@link LoadBenchmark} runs against every repository, read from the system properties under {@code load.}.
+ */
+@Value
+@Builder
+public class LoadOptions {
+
+    enum Operation {
+        GET, PUT, UPDATE, QUERY, BATCH_GET
+    }
+
+    /**
+     * Weight of every operation, for example {@code load.mix=get:60,put:10,update:10,query:10,batch-get:10}.
+     */
+    @Builder.Default
+    Map<Operation, Integer> mix = parseMix("get:40,put:15,update:15,query:15,batch-get:15");
+    /**
+     * Operations in flight at the same time, threads for a sync repository.
+     */
+    @Builder.Default
+    int concurrency = 16;
+    /**
+     * Time every repository runs before it is measured, so the JIT and the connection pools are warmed up.
+     */
+    @Builder.Default
+    Duration warmup = Duration.ofSeconds(5);
+    @Builder.Default
+    Duration duration = Duration.ofSeconds(30);
+    /**
+     * Users written before the run, that the operations read and overwrite.
+     */
+    @Builder.Default
+    int users = 1000;
+    /**
+     * Different last names of those users, so a query finds users / lastNames users.
+     */
+    @Builder.Default
+    int lastNames = 50;
+    @Builder.Default
+    int batchSize = 25;
+    /**
+     * Regular expression of the simple class names of the repositories to run.
+     */
+    @Builder.Default
+    String implementations = ".*";
+    @Builder.Default
+    Path output = Path.of("target", "load-benchmark");
+
+    public static LoadOptions fromSystemProperties() {
+        final LoadOptions defaults = LoadOptions.builder().build();
+        return LoadOptions.builder()
+                .mix(parseMix(System.getProperty("load.mix", format(defaults.getMix()))))
+                .concurrency(Integer.getInteger("load.concurrency", defaults.getConcurrency()))
+                .warmup(DurationStyle.detectAndParse(System.getProperty("load.warmup", defaults.getWarmup().toString())))
+                .duration(DurationStyle.detectAndParse(System.getProperty("load.duration", defaults.getDuration().toString())))
+                .users(Integer.getInteger("load.users", defaults.getUsers()))
+                .lastNames(Integer.getInteger("load.last-names", defaults.getLastNames()))
+                .batchSize(Integer.getInteger("load.batch-size", defaults.getBatchSize()))
+                .implementations(System.getProperty("load.implementations", defaults.getImplementations()))
+                .output(Path.of(System.getProperty("load.output", defaults.getOutput().toString())))
+                .build();
+    }
+
+    Operation nextOperation(Random random) {
+        int remaining = random.nextInt(mix.values().stream().mapToInt(Integer::intValue).sum());
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            remaining -= weight.getValue();
+            if (remaining < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Operation mix " + mix + " has no weight");
+    }
+
+    static Map<Operation, Integer> parseMix(String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        Arrays.stream(mix.split(","))
+                .map(weight -> weight.trim().split(":"))
+                .forEach(weight -> weights.put(Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+                        Integer.valueOf(weight[1].trim())));
+        return weights;
+    }
+
+    static String format(Map<Operation, Integer> mix) {
+        final StringBuilder formatted = new StringBuilder();
+        mix.forEach((operation, weight) -> formatted.append(formatted.length() == 0 ? "" : ",")
+                .append(operation.name().toLowerCase(Locale.ROOT).replace('_', '-')).append(':').append(weight));
+        return formatted.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import eu.luminis.breed.dynamodbmigration.TestUtil;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK1HighLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK1LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK2HighLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK2LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepository;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK1HighLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK1LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK2HighLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK2LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs a {@link LoadBenchmark} against all eight repositories and the local DynamoDB of the integration tests. Only runs
+ * when asked for, as it takes about (warmup + duration) * 8:
+ * {@code ./mvnw verify -Dload-benchmark=true -Dit.test=RepositoryLoadBenchmarkIT}, with the {@link LoadOptions} as
+ * further system properties, for example {@code -Dload.concurrency=32 -Dload.duration=1m}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "load-benchmark", matches = "true")
+class RepositoryLoadBenchmarkIT extends TestUtil {
+
+    @Test
+    void runLoadBenchmark() throws IOException {
+        final LoadOptions options = LoadOptions.fromSystemProperties();
+        final BatchGetOptions batchGetOptions = BatchGetOptions.defaults();
+        final BatchWriteOptions batchWriteOptions = BatchWriteOptions.defaults();
+        final List<UserRepository> repositories = List.of(
+                new UserRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions));
+        final List<UserAsyncRepository> asyncRepositories = List.of(
+                new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                new UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions));
+
+        final LoadBenchmark loadBenchmark = new LoadBenchmark(options, repositories.get(0));
+        repositories.forEach(loadBenchmark::run);
+        asyncRepositories.forEach(loadBenchmark::run);
+        final Path report = loadBenchmark.report();
+        log.info("Load benchmark results written to {}", report);
+        assertThat(report).exists();
+    }
+}
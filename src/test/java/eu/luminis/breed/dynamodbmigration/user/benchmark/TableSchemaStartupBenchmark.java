@@ -0,0 +1,36 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User;
+import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserTableSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to create the schema of the enhanced user in a new JVM, which is what the bean schema costs the startup of the
+ * application, against the static schema of {@link UserTableSchema}. Every fork measures one cold creation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class TableSchemaStartupBenchmark {
+
+    @Benchmark
+    public Object createBeanSchema() {
+        return TableSchema.fromBean(User.class);
+    }
+
+    @Benchmark
+    public Object createStaticSchema() {
+        return UserTableSchema.USER_SCHEMA;
+    }
+}
@@ -0,0 +1,38 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import eu.luminis.breed.dynamodbmigration.user.model.Gender;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+
+import java.util.UUID;
+
+/**
+ * Users as they are stored in practice, with every field filled, for the benchmarks.
+ */
+final class UserFixtures {
+
+    private UserFixtures() {
+    }
+
+    static User user() {
+        return User.builder()
+                .id(UUID.fromString("0f5d3a5e-7bde-4c3a-9a43-2d5e0a6c1b7e"))
+                .firstName("Ronald")
+                .lastName("Breed")
+                .age(38)
+                .address(new Address("Netherlands", "Utrecht", "Amersfoort", "Stationsplein", 42, "3818LE"))
+                .education(education())
+                .isAdmin(false)
+                .gender(Gender.MALE)
+                .build();
+    }
+
+    static Education education() {
+        return Education.builder()
+                .primarySchool(new Address("Netherlands", "Utrecht", "Amersfoort", "Hogeweg", 121, "3814CE"))
+                .secondarySchool(new Address("Netherlands", "Utrecht", "Amersfoort", "Hooglandseweg-Noord", 55, "3813VG"))
+                .university(new Address("Netherlands", "Gelderland", "Nijmegen", "Houtlaan", 4, "6525XZ"))
+                .build();
+    }
+}
@@ -0,0 +1,146 @@
+package eu.luminis.breed.dynamodbmigration.user.benchmark;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserTableSchema;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per user of every way this application maps a user to an item and back: the low-level mappers of SDK 1 and 2,
+ * the MapStruct mappers to and from the high-level users, the DynamoDBMapper model of SDK 1 and the bean and static
+ * schemas of the enhanced client of SDK 2. The high-level paths are the MapStruct mapper and the model or schema together.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test}, which adds the GC profiler for the allocations per user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMappingBenchmark {
+
+    private User user;
+    private Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> sdk1Item;
+    private Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> sdk2Item;
+    private eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.User dynamoDBMapperUser;
+    private eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User enhancedUser;
+    private Map<String, com.amazonaws.services.dynamodbv2.model.AttributeValue> dynamoDBMapperItem;
+    private Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> enhancedItem;
+    private DynamoDBMapperTableModel<eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.User> dynamoDBMapperModel;
+    private TableSchema<eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User> enhancedSchema;
+    private TableSchema<eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User> enhancedStaticSchema;
+
+    @Setup
+    public void setUp() {
+        user = UserFixtures.user();
+        sdk1Item = eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper.mapToItem(user, true);
+        sdk2Item = eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper.mapToItem(user, true);
+        dynamoDBMapperUser = eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.UserMapper.MAPPER.userToMapperUser(user);
+        enhancedUser = eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserMapper.MAPPER.userToEnhancedUser(user);
+        //the model does not need a client
+        dynamoDBMapperModel = new DynamoDBMapper(null).getTableModel(eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.User.class);
+        enhancedSchema = TableSchema.fromBean(eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.User.class);
+        enhancedStaticSchema = UserTableSchema.USER_SCHEMA;
+        //their own items, as they name the fields of an address differently than the low-level mappers
+        dynamoDBMapperItem = dynamoDBMapperModel.convert(dynamoDBMapperUser);
+        enhancedItem = enhancedSchema.itemToMap(enhancedUser, true);
+    }
+
+    @Benchmark
+    public Object encodeLowLevelSdk1() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper.mapToItem(user, true);
+    }
+
+    //the low-level users decode lazily, so every field is read to compare with the eager paths
+    @Benchmark
+    public void decodeLowLevelSdk1(Blackhole blackhole) {
+        readAll(eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v1.UserMapper.mapToUser(sdk1Item), blackhole);
+    }
+
+    @Benchmark
+    public Object encodeLowLevelSdk2() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper.mapToItem(user, true);
+    }
+
+    @Benchmark
+    public void decodeLowLevelSdk2(Blackhole blackhole) {
+        readAll(eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper.mapToUser(sdk2Item), blackhole);
+    }
+
+    @Benchmark
+    public Object mapToDynamoDBMapperUser() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.UserMapper.MAPPER.userToMapperUser(user);
+    }
+
+    @Benchmark
+    public Object mapFromDynamoDBMapperUser() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.highlevel.dynamodbmapper.UserMapper.MAPPER.mapperUserToUser(dynamoDBMapperUser);
+    }
+
+    @Benchmark
+    public Object mapToEnhancedUser() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserMapper.MAPPER.userToEnhancedUser(user);
+    }
+
+    @Benchmark
+    public Object mapFromEnhancedUser() {
+        return eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb.UserMapper.MAPPER.enhancedUserToUser(enhancedUser);
+    }
+
+    @Benchmark
+    public Object encodeDynamoDBMapperModel() {
+        return dynamoDBMapperModel.convert(dynamoDBMapperUser);
+    }
+
+    @Benchmark
+    public Object decodeDynamoDBMapperModel() {
+        return dynamoDBMapperModel.unconvert(dynamoDBMapperItem);
+    }
+
+    @Benchmark
+    public Object encodeEnhancedSchema() {
+        return enhancedSchema.itemToMap(enhancedUser, true);
+    }
+
+    @Benchmark
+    public Object decodeEnhancedSchema() {
+        return enhancedSchema.mapToItem(enhancedItem);
+    }
+
+    @Benchmark
+    public Object encodeEnhancedStaticSchema() {
+        return enhancedStaticSchema.itemToMap(enhancedUser, true);
+    }
+
+    @Benchmark
+    public Object decodeEnhancedStaticSchema() {
+        return enhancedStaticSchema.mapToItem(enhancedItem);
+    }
+
+    private static void readAll(User user, Blackhole blackhole) {
+        blackhole.consume(user.getId());
+        blackhole.consume(user.getFirstName());
+        blackhole.consume(user.getLastName());
+        blackhole.consume(user.getAge());
+        blackhole.consume(user.getAddress());
+        blackhole.consume(user.getEducation());
+        blackhole.consume(user.getIsAdmin());
+        blackhole.consume(user.getGender());
+    }
+}
@@ -0,0 +1,46 @@
+package eu.luminis.breed.dynamodbmigration.user.controller;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageTokenCodecTest {
+
+    private final PageTokenCodec pageTokenCodec = new PageTokenCodec("a secret of at least 16 bytes".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void shouldDecodeTheIdOfTheToken() {
+        final UUID id = UUID.randomUUID();
+        final String pageToken = pageTokenCodec.encode("lastName:Doe", id);
+        assertThat(pageToken).matches("[A-Za-z0-9_-]+");
+        assertThat(pageTokenCodec.decode("lastName:Doe", pageToken)).isEqualTo(id);
+    }
+
+    @Test
+    void shouldHaveNoTokenAfterTheLastPage() {
+        assertThat(pageTokenCodec.encode("scan", null)).isNull();
+        assertThat(pageTokenCodec.decode("scan", null)).isNull();
+        assertThat(pageTokenCodec.decode("scan", "")).isNull();
+    }
+
+    @Test
+    void shouldRejectChangedTokens() {
+        final String pageToken = pageTokenCodec.encode("lastName:Doe", UUID.randomUUID());
+        final byte[] changed = Base64.getUrlDecoder().decode(pageToken);
+        changed[5]++;
+        assertThatThrownBy(() -> pageTokenCodec.decode("lastName:Doe", Base64.getUrlEncoder().withoutPadding().encodeToString(changed)))
+                .isInstanceOf(UserException.class);
+        assertThatThrownBy(() -> pageTokenCodec.decode("lastName:Roe", pageToken))
+                .isInstanceOf(UserException.class);
+        assertThatThrownBy(() -> new PageTokenCodec("other secret bytes".getBytes(StandardCharsets.UTF_8)).decode("lastName:Doe", pageToken))
+                .isInstanceOf(UserException.class);
+        assertThatThrownBy(() -> pageTokenCodec.decode("lastName:Doe", "not a token"))
+                .isInstanceOf(UserException.class);
+    }
+}
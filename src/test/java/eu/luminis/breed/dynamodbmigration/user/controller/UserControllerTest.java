@@ -0,0 +1,88 @@
+package eu.luminis.breed.dynamodbmigration.user.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepositoryDynamoDBSDK1LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.async.UserAsyncRepositoryDynamoDBSDK1LowLevelImpl;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The invalid requests are rejected before DynamoDB is called, so the repositories point at an endpoint that is not there.
+ */
+class UserControllerTest {
+
+    private static final String NO_ENDPOINT = "http://localhost:1";
+
+    private final MockMvc mockMvc = mockMvc(1);
+
+    @Test
+    void shouldRejectAnInvalidSegmentCount() throws Exception {
+        final MockMvc tooManySegments = mockMvc(1_000_001);
+        tooManySegments.perform(get("/user/").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Total segments should be between 1 and")));
+        final MvcResult result = tooManySegments.perform(get("/user/async/").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        tooManySegments.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectUnknownFields() throws Exception {
+        final String id = UUID.randomUUID().toString();
+        mockMvc.perform(get("/user/" + id).param("fields", "firstName,password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Unknown fields [password]")));
+        mockMvc.perform(get("/user/async/" + id).param("fields", "password"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/user/async/").param("lastName", "Breed").param("fields", "password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectAnInvalidPageToken() throws Exception {
+        mockMvc.perform(get("/user/").param("pageSize", "10").param("pageToken", "not-a-token"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid page token"));
+        mockMvc.perform(get("/user/async/").param("pageSize", "10").param("pageToken", "not-a-token"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid page token"));
+    }
+
+    @Test
+    void shouldRejectAnInvalidPageSize() throws Exception {
+        mockMvc.perform(get("/user/").param("pageSize", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("but was 0")));
+        mockMvc.perform(get("/user/async/").param("pageSize", "1001"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static MockMvc mockMvc(int scanTotalSegments) {
+        final PageTokenCodec pageTokenCodec = new PageTokenCodec("a secret of at least 16 bytes".getBytes(StandardCharsets.UTF_8));
+        return MockMvcBuilders.standaloneSetup(
+                new UserController(List.of(new UserRepositoryDynamoDBSDK1LowLevelImpl("user", NO_ENDPOINT,
+                        BatchGetOptions.defaults(), BatchWriteOptions.defaults())), scanTotalSegments, new ObjectMapper(), pageTokenCodec, 1000),
+                new UserAsyncController(List.of(new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl("user", NO_ENDPOINT,
+                        BatchGetOptions.defaults(), BatchWriteOptions.defaults())), scanTotalSegments, pageTokenCodec, 1000))
+                .setControllerAdvice(new UserExceptionHandler())
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.highlevel.enhancedddb;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Gender;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserTableSchemaTest {
+
+    private final TableSchema<User> beanSchema = TableSchema.fromBean(User.class);
+
+    @Test
+    void shouldMapToTheItemOfTheBeanSchema() {
+        final User user = user();
+        final Map<String, AttributeValue> item = UserTableSchema.USER_SCHEMA.itemToMap(user, true);
+        assertThat(item).isEqualTo(beanSchema.itemToMap(user, true));
+        assertThat(UserTableSchema.USER_SCHEMA.mapToItem(item)).isEqualTo(user);
+        assertThat(UserTableSchema.USER_SCHEMA.mapToItem(beanSchema.itemToMap(user, true))).isEqualTo(user);
+    }
+
+    @Test
+    void shouldMapNullsLikeTheBeanSchema() {
+        final User user = User.builder().id(UUID.randomUUID()).lastName("Breed").build();
+        assertThat(UserTableSchema.USER_SCHEMA.itemToMap(user, false)).isEqualTo(beanSchema.itemToMap(user, false));
+        assertThat(UserTableSchema.USER_SCHEMA.itemToMap(user, true)).containsOnlyKeys("id", "lastName");
+    }
+
+    @Test
+    void shouldHaveTheKeysOfTheTable() {
+        assertThat(UserTableSchema.USER_SCHEMA.tableMetadata().primaryPartitionKey()).isEqualTo("id");
+        assertThat(UserTableSchema.USER_SCHEMA.tableMetadata().indexPartitionKey("lastNameIndex")).isEqualTo("lastName");
+    }
+
+    private static User user() {
+        final Education education = new Education();
+        education.setPrimarySchool(new eu.luminis.breed.dynamodbmigration.user.model.Address("Netherlands", "Utrecht", "Amersfoort", "Hogeweg", 121, "3814CE"));
+        education.setUniversity(new eu.luminis.breed.dynamodbmigration.user.model.Address("Netherlands", "Gelderland", "Nijmegen", "Houtlaan", 4, "6525XZ"));
+        return User.builder()
+                .id(UUID.randomUUID())
+                .firstName("Ronald")
+                .lastName("Breed")
+                .age(38)
+                .address(new Address("Netherlands", "Utrecht", "Stationsplein", 42, "3818LE", "Amersfoort"))
+                .education(education)
+                .isAdmin(false)
+                .gender(Gender.MALE)
+                .lastModified(LocalDateTime.of(2021, 3, 1, 12, 0))
+                .build();
+    }
+}
@@ -0,0 +1,31 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Education;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import static eu.luminis.breed.dynamodbmigration.user.util.ObjectMapperUtil.OBJECT_MAPPER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EducationCodecTest {
+
+    private final Education education = Education.builder()
+            .primarySchool(new Address("Netherlands", "Utrecht", "Amersfoort", "Schoolstraat", 1, "3811AA"))
+            .university(new Address("Netherlands", "Gelderland", "Nijmegen", "Houtlaan", 4, "6525XZ"))
+            .build();
+
+    @Test
+    void shouldEncodeTheSchoolsAsMaps() {
+        final AttributeValue attributeValue = EducationCodec.encode(education);
+        assertThat(attributeValue.m()).containsOnlyKeys("primarySchool", "university");
+        assertThat(attributeValue.m().get("university").m().get("city").s()).isEqualTo("Nijmegen");
+        assertThat(EducationCodec.decode(attributeValue)).isEqualTo(education);
+    }
+
+    @Test
+    void shouldDecodeTheJsonStringOfOlderItems() throws Exception {
+        final AttributeValue attributeValue = AttributeValue.builder().s(OBJECT_MAPPER.writeValueAsString(education)).build();
+        assertThat(EducationCodec.decode(attributeValue)).isEqualTo(education);
+    }
+}
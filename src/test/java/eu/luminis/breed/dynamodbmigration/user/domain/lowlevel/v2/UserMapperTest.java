@@ -0,0 +1,71 @@
+package eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2;
+
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.LazyUser;
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.UpdateExpression;
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.Gender;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserMapperTest {
+
+    @Test
+    void shouldUpdateTheFieldsThatAreNotNull() {
+        final UpdateExpression<AttributeValue> updateExpression = UserMapper.updateExpression(User.builder()
+                .id(UUID.randomUUID())
+                .lastName("Breed")
+                .address(Address.builder().city("Amersfoort").build())
+                .isAdmin(false)
+                .build());
+        assertThat(updateExpression.getExpression()).isEqualTo("SET lastName=:lastName, address=:address, isAdmin=:isAdmin, lastModified=:lastModified");
+        assertThat(updateExpression.getValues()).containsOnlyKeys(":lastName", ":address", ":isAdmin", ":lastModified");
+        assertThat(updateExpression.getValues().get(":address").m().get("city").s()).isEqualTo("Amersfoort");
+    }
+
+    @Test
+    void shouldReuseTheExpressionOfTheSameFields() {
+        final String expression = UserMapper.updateExpression(User.builder().firstName("Ronald").age(40).build()).getExpression();
+        assertThat(UserMapper.updateExpression(User.builder().firstName("Ron").age(41).build()).getExpression()).isSameAs(expression);
+    }
+
+    @Test
+    void shouldDecodeOnlyTheFieldsThatAreRead() {
+        final UUID id = UUID.randomUUID();
+        final User user = UserMapper.mapToUser(Map.of(
+                "id", AttributeValue.builder().s(id.toString()).build(),
+                "lastName", AttributeValue.builder().s("Breed").build(),
+                "age", AttributeValue.builder().n("not a number").build()));
+        assertThat(user.getId()).isEqualTo(id);
+        assertThat(user.getLastName()).isEqualTo("Breed");
+        assertThat(user.getFirstName()).isNull();
+        assertThatThrownBy(user::getAge).isInstanceOf(NumberFormatException.class);
+        user.setAge(40);
+        assertThat(user).isEqualTo(User.builder().id(id).lastName("Breed").age(40).build());
+    }
+
+    @Test
+    void shouldKeepTheFieldsOnceEverythingIsDecoded() {
+        final User expected = User.builder()
+                .id(UUID.randomUUID())
+                .firstName("Ronald")
+                .lastName("Breed")
+                .age(40)
+                .address(Address.builder().city("Amersfoort").build())
+                .isAdmin(false)
+                .build();
+        final User user = UserMapper.mapToUser(UserMapper.mapToItem(expected, true));
+        final long itemSize = ((LazyUser<?>) user).itemSize();
+        assertThat(user).isEqualTo(expected);
+        user.setGender(Gender.MALE);
+        assertThat(user.getAddress().getCity()).isEqualTo("Amersfoort");
+        assertThat(user.getGender()).isEqualTo(Gender.MALE);
+        assertThat(((LazyUser<?>) user).itemSize()).isEqualTo(itemSize);
+    }
+}
@@ -0,0 +1,69 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.domain.lowlevel.v2.UserMapper;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptivePageLimitTest {
+
+    private final AdaptivePageLimit pageLimit = new AdaptivePageLimit();
+
+    @Test
+    void shouldDoubleTheLimitWithEveryPage() {
+        assertThat(pageLimit.next()).isEqualTo(AdaptivePageLimit.INITIAL_LIMIT);
+        pageLimit.read(page(AdaptivePageLimit.INITIAL_LIMIT, "small"));
+        assertThat(pageLimit.next()).isEqualTo(2 * AdaptivePageLimit.INITIAL_LIMIT);
+        pageLimit.read(page(2 * AdaptivePageLimit.INITIAL_LIMIT, "small"));
+        assertThat(pageLimit.next()).isEqualTo(4 * AdaptivePageLimit.INITIAL_LIMIT);
+    }
+
+    @Test
+    void shouldNotReadMoreThanTheDemand() {
+        pageLimit.requested(40);
+        assertThat(pageLimit.next()).isEqualTo(40);
+        pageLimit.read(page(30, "small"));
+        assertThat(pageLimit.next()).isEqualTo(AdaptivePageLimit.MIN_LIMIT);
+        pageLimit.requested(150);
+        assertThat(pageLimit.next()).isEqualTo(160);
+        pageLimit.requested(Long.MAX_VALUE);
+        assertThat(pageLimit.next()).isEqualTo(2 * AdaptivePageLimit.INITIAL_LIMIT);
+    }
+
+    @Test
+    void shouldLeaveOutTheLimitWhenAPageIsFullAnyway() {
+        pageLimit.read(page(AdaptivePageLimit.INITIAL_LIMIT, String.join("", Collections.nCopies(10_000, "x"))));
+        assertThat(pageLimit.next()).isNull();
+    }
+
+    @Test
+    void shouldNotDecodeTheUsersThatAreStreamed() {
+        //the age and address can not be decoded, so reading them would throw
+        final Map<String, AttributeValue> item = Map.of(
+                "id", AttributeValue.builder().s(UUID.randomUUID().toString()).build(),
+                "age", AttributeValue.builder().n("not a number").build(),
+                "address", AttributeValue.builder().m(Map.of("number", AttributeValue.builder().n("not a number").build())).build());
+        final UserPage page = UserPage.of(List.of(UserMapper.mapToUser(item), UserMapper.mapToUser(item)), null);
+
+        final List<UUID> ids = LazyPages.stream(() -> pageLimit.read(page), previous -> null)
+                .flatMap(p -> p.getUsers().stream())
+                .map(User::getId)
+                .collect(Collectors.toList());
+
+        assertThat(ids).hasSize(2);
+        assertThat(AdaptivePageLimit.size(page.getUsers().get(0))).isEqualTo("id".length() + 36 + "age".length() + 12
+                + "address".length() + 3 + "number".length() + 12);
+    }
+
+    private static UserPage page(int size, String firstName) {
+        return UserPage.of(Collections.nCopies(size, User.builder().id(UUID.randomUUID()).firstName(firstName).build()), UUID.randomUUID());
+    }
+}
@@ -0,0 +1,37 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProjectionTest {
+
+    @Test
+    void shouldAlwaysProjectTheIdInTheOrderOfTheUser() {
+        final Projection projection = Projection.of(List.of("lastName", "firstName"));
+        assertThat(projection.getAttributes()).containsExactly("id", "firstName", "lastName");
+        assertThat(projection.getExpression()).isEqualTo("#id, #firstName, #lastName");
+        assertThat(projection.getExpressionAttributeNames()).isEqualTo(Map.of("#id", "id", "#firstName", "firstName", "#lastName", "lastName"));
+        assertThat(projection).isEqualTo(Projection.of(List.of("firstName", "id", "lastName")));
+    }
+
+    @Test
+    void shouldProjectAllWithoutFields() {
+        assertThat(Projection.of(null).isAll()).isTrue();
+        assertThat(Projection.of(List.of()).isAll()).isTrue();
+        assertThat(Projection.all().getExpression()).isNull();
+        assertThat(Projection.all().getExpressionAttributeNames()).isNull();
+    }
+
+    @Test
+    void shouldRejectUnknownFields() {
+        assertThatThrownBy(() -> Projection.of(List.of("firstName", "password")))
+                .isInstanceOf(UserException.class)
+                .hasMessageStartingWith("Unknown fields [password]");
+    }
+}
@@ -0,0 +1,46 @@
+package eu.luminis.breed.dynamodbmigration.user.repository;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static eu.luminis.breed.dynamodbmigration.user.repository.RepositoryImplementation.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryImplementationTest {
+
+    @Test
+    void shouldOnlyCreateTheSelectedImplementations() {
+        final List<RepositoryImplementation> created = new ArrayList<>();
+        final Map<RepositoryImplementation, Supplier<String>> factories = Map.of(
+                SDK1_LOW_LEVEL, () -> created(created, SDK1_LOW_LEVEL),
+                SDK1_HIGH_LEVEL, () -> created(created, SDK1_HIGH_LEVEL),
+                SDK2_LOW_LEVEL, () -> created(created, SDK2_LOW_LEVEL),
+                SDK2_HIGH_LEVEL, () -> created(created, SDK2_HIGH_LEVEL));
+
+        final List<String> repositories = create(select(List.of("sdk2-high-level", " sdk1-low-level")), factories)
+                .collect(Collectors.toList());
+
+        assertThat(repositories).containsExactly("sdk1-low-level", "sdk2-high-level");
+        assertThat(created).containsExactly(SDK1_LOW_LEVEL, SDK2_HIGH_LEVEL);
+    }
+
+    @Test
+    void shouldRejectUnknownAndMissingImplementations() {
+        assertThatThrownBy(() -> select(List.of("sdk3-low-level")))
+                .isInstanceOf(UserException.class)
+                .hasMessageContaining("sdk3-low-level");
+        assertThatThrownBy(() -> select(List.of())).isInstanceOf(UserException.class);
+    }
+
+    private static String created(List<RepositoryImplementation> created, RepositoryImplementation implementation) {
+        created.add(implementation);
+        return implementation.getName();
+    }
+}
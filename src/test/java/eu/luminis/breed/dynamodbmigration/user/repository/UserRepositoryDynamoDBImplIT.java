@@ -9,6 +9,8 @@ import eu.luminis.breed.dynamodbmigration.user.model.Address;
 import eu.luminis.breed.dynamodbmigration.user.model.Education;
 import eu.luminis.breed.dynamodbmigration.user.model.Gender;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
 import eu.luminis.breed.dynamodbmigration.user.util.TimeMachine;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -22,8 +24,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static eu.luminis.breed.dynamodbmigration.user.domain.UserFields.ADDRESS_FIELD;
@@ -77,6 +82,24 @@ class UserRepositoryDynamoDBImplIT extends TestUtil {
         TimeMachine.useSystemDefaultZoneClock();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldCreateOrUpdateUsers(UserRepository userRepository) {
+        final UUID existingId = createUser("firstName", "lastName");
+        final List<User> users = IntStream.range(0, 60)
+                .mapToObj(i -> User.builder().firstName("firstName" + i).lastName("lastName").build())
+                .collect(Collectors.toList());
+        users.add(User.builder().id(existingId).firstName("outdated").build());
+        users.add(User.builder().id(existingId).firstName("updated").build());
+        final List<User> writtenUsers = userRepository.createOrUpdateUsers(users);
+        assertThat(writtenUsers).hasSize(61).allSatisfy(user -> assertThat(user.getId()).isNotNull());
+        final List<User> foundUsers = userRepository.findByIds(writtenUsers.stream().map(User::getId).collect(Collectors.toList()));
+        assertThat(foundUsers).extracting(User::getFirstName)
+                .containsExactlyElementsOf(writtenUsers.stream().map(User::getFirstName).collect(Collectors.toList()))
+                .contains("updated")
+                .doesNotContain("outdated");
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldGetUserById(UserRepository userRepository) {
@@ -85,6 +108,36 @@ class UserRepositoryDynamoDBImplIT extends TestUtil {
         assertThat(userById).isNotEmpty();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldOnlyReadProjectedFields(UserRepository userRepository) {
+        final String lastName = UUID.randomUUID().toString();
+        final UUID id = createUser("firstName", lastName);
+        final Projection projection = Projection.of(List.of(FIRST_NAME_FIELD));
+        final User expected = User.builder().id(id).firstName("firstName").build();
+        assertThat(userRepository.getUserById(id, projection)).contains(expected);
+        assertThat(userRepository.findByIds(List.of(id), projection)).containsExactly(expected);
+        assertThat(userRepository.findByLastName(lastName, projection)).containsExactly(expected);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldFindPagesByLastName(UserRepository userRepository) {
+        final String lastName = UUID.randomUUID().toString();
+        final Set<UUID> ids = IntStream.range(0, 5)
+                .mapToObj(i -> createUser("firstName", lastName))
+                .collect(Collectors.toSet());
+        final List<UUID> pagedIds = new ArrayList<>();
+        UUID exclusiveStartId = null;
+        do {
+            final UserPage page = userRepository.findPageByLastName(lastName, 2, exclusiveStartId, Projection.all());
+            assertThat(page.getUsers()).hasSizeLessThanOrEqualTo(2);
+            page.getUsers().forEach(user -> pagedIds.add(user.getId()));
+            exclusiveStartId = page.getLastEvaluatedId();
+        } while (exclusiveStartId != null);
+        assertThat(pagedIds).containsExactlyInAnyOrderElementsOf(ids);
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldFindAll(UserRepository userRepository) {
@@ -97,6 +150,29 @@ class UserRepositoryDynamoDBImplIT extends TestUtil {
         assertThat(users.stream().filter(user -> firstName.equals(user.getFirstName()))).hasSize(25);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldFindAllInParallel(UserRepository userRepository) {
+        final String firstName = UUID.randomUUID().toString();
+        for (int i = 0; i < 25; i++) {
+            createUser(firstName, "lastname");
+        }
+        final List<User> users = userRepository.findAll(4);
+        assertThat(users.stream().filter(user -> firstName.equals(user.getFirstName()))).hasSize(25);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldStreamAll(UserRepository userRepository) {
+        final String firstName = UUID.randomUUID().toString();
+        for (int i = 0; i < 25; i++) {
+            createUser(firstName, "lastname");
+        }
+        try (Stream<User> users = userRepository.streamAll()) {
+            assertThat(users.filter(user -> firstName.equals(user.getFirstName()))).hasSize(25);
+        }
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldFindByIds(UserRepository userRepository) {
@@ -108,6 +184,19 @@ class UserRepositoryDynamoDBImplIT extends TestUtil {
         assertThat(users).hasSize(50);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldFindByIdsInRequestOrderWithoutDuplicates(UserRepository userRepository) {
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            ids.add(createUser());
+        }
+        final List<UUID> idsWithDuplicates = new ArrayList<>(ids);
+        idsWithDuplicates.addAll(ids.subList(0, 10));
+        final List<User> users = userRepository.findByIds(idsWithDuplicates);
+        assertThat(users).extracting(User::getId).containsExactlyElementsOf(ids);
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldFindByLastName(UserRepository userRepository) {
@@ -202,11 +291,18 @@ class UserRepositoryDynamoDBImplIT extends TestUtil {
     static class RepositoryProvider implements ArgumentsProvider {
         @Override
         public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
+            final BatchGetOptions batchGetOptions = BatchGetOptions.builder()
+                    .concurrency(2)
+                    .keepRequestOrder(true)
+                    .build();
+            final BatchWriteOptions batchWriteOptions = BatchWriteOptions.builder()
+                    .concurrency(2)
+                    .build();
             return Stream.of(
-                    new UserRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint),
-                    new UserRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint),
-                    new UserRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint),
-                    new UserRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint)
+                    new UserRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                    new UserRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                    new UserRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions),
+                    new UserRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint, batchGetOptions, batchWriteOptions)
             ).map(Arguments::of);
         }
     }
@@ -0,0 +1,48 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockingSchedulerTest {
+
+    private final BlockingScheduler blockingScheduler = new BlockingScheduler(BlockingSchedulerOptions.builder()
+            .threads(1)
+            .queueSize(1)
+            .build());
+
+    @AfterEach
+    void close() {
+        blockingScheduler.close();
+    }
+
+    @Test
+    void shouldRunBlockingCallsOnItsThreads() {
+        StepVerifier
+                .create(Mono.fromCallable(() -> Thread.currentThread().getName()).subscribeOn(blockingScheduler.scheduler()))
+                .assertNext(thread -> assertThat(thread).startsWith(BlockingScheduler.NAME))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRejectCallsWhenSaturated() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Mono<Boolean> blockingCall = Mono.fromCallable(() -> {
+            release.await();
+            return true;
+        }).subscribeOn(blockingScheduler.scheduler());
+        //one call runs, one is queued
+        blockingCall.subscribe();
+        blockingCall.subscribe();
+        StepVerifier
+                .create(blockingCall)
+                .verifyErrorSatisfies(e -> assertThat(e).hasRootCauseInstanceOf(RejectedExecutionException.class));
+        release.countDown();
+    }
+}
@@ -0,0 +1,53 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoalescingUserAsyncRepositoryTest {
+
+    private final UserAsyncRepository delegate = mock(UserAsyncRepository.class);
+    private final UserAsyncRepository userAsyncRepository = new CoalescingUserAsyncRepository(delegate);
+
+    @Test
+    void shouldShareConcurrentReads() {
+        final UUID id = UUID.randomUUID();
+        //answered only when the test says so, so that reads are in flight at the same time
+        final Sinks.One<User> answer = Sinks.one();
+        when(delegate.getUserById(id)).thenReturn(answer.asMono());
+        final Mono<User> first = userAsyncRepository.getUserById(id);
+        final Mono<User> second = userAsyncRepository.getUserById(id);
+        verify(delegate, never()).getUserById(id);
+        final Mono<List<User>> users = Flux.merge(first, second, userAsyncRepository.getUserById(id)).collectList().cache();
+        users.subscribe();
+        answer.tryEmitValue(User.builder().id(id).build());
+        assertThat(users.block()).hasSize(3).allSatisfy(user -> assertThat(user.getId()).isEqualTo(id));
+        verify(delegate, times(1)).getUserById(id);
+        userAsyncRepository.getUserById(id).subscribe();
+        verify(delegate, times(2)).getUserById(id);
+    }
+
+    @Test
+    void shouldNotShareReadsThatStartedBeforeAWrite() {
+        final UUID id = UUID.randomUUID();
+        when(delegate.getUserById(id)).thenReturn(Mono.never());
+        when(delegate.updateUser(any(User.class))).thenReturn(Mono.empty());
+        userAsyncRepository.getUserById(id).subscribe();
+        userAsyncRepository.updateUser(User.builder().id(id).build()).block();
+        userAsyncRepository.getUserById(id).subscribe();
+        verify(delegate, times(2)).getUserById(id);
+    }
+}
@@ -0,0 +1,121 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.async;
+
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelinedPaginationTest {
+
+    private static final int LAST_PAGE = 9;
+
+    //numbers of the pages in the order they were requested
+    private final List<Integer> requestedPages = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void shouldEmitAllPagesInOrder() {
+        StepVerifier.create(paginate(Duration.ofMillis(1), 2))
+                .expectNext(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)
+                .verifyComplete();
+        assertThat(requestedPages).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    @Test
+    void shouldRequestTheNextPageBeforeHandlingAPage() {
+        final List<List<Integer>> requestedWhileHandling = new ArrayList<>();
+        paginate(Duration.ZERO, 1)
+                .doOnNext(page -> requestedWhileHandling.add(List.copyOf(requestedPages)))
+                .take(2)
+                .blockLast();
+        assertThat(requestedWhileHandling).containsExactly(List.of(0, 1), List.of(0, 1, 2));
+    }
+
+    @Test
+    void shouldReadAtMostPrefetchPagesAhead() {
+        StepVerifier.create(paginate(Duration.ZERO, 3), 1)
+                .expectNext(0)
+                .thenCancel()
+                .verify();
+        assertThat(requestedPages).containsExactly(0, 1, 2, 3);
+    }
+
+    @Test
+    void shouldCompleteWhenPagesArriveOnManyThreads() {
+        for (int run = 0; run < 500; run++) {
+            StepVerifier.create(PipelinedPagination.paginate(Mono.just(0),
+                    page -> page < 99,
+                    page -> Mono.fromCallable(() -> page + 1).subscribeOn(Schedulers.parallel()),
+                    1)
+                    .publishOn(Schedulers.single()))
+                    .expectNextCount(100)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    void shouldFailWithTheFailedPage() {
+        StepVerifier.create(PipelinedPagination.paginate(Mono.just(0),
+                page -> true,
+                page -> page < 2 ? Mono.just(page + 1) : Mono.error(new IllegalStateException("throttled")),
+                2))
+                .expectNext(0, 1, 2)
+                .verifyErrorMessage("throttled");
+    }
+
+    @Test
+    void shouldChooseTheLimitsByTheDemand() {
+        final List<Integer> limits = Collections.synchronizedList(new ArrayList<>());
+        final Flux<User> users = PipelinedPagination.users((limit, exclusiveStartId) -> {
+            limits.add(limit);
+            return Mono.just(UserPage.of(Collections.nCopies(limit, User.builder().id(UUID.randomUUID()).build()), UUID.randomUUID()));
+        }, 2);
+        StepVerifier.create(users, 30)
+                .expectNextCount(30)
+                .thenCancel()
+                .verify();
+        //the first page only as large as asked for, after that the minimum while nothing more is asked for
+        assertThat(limits).containsExactly(30, 25, 25);
+    }
+
+    @Test
+    void shouldOnlyChooseTheLimitsByABoundedDemand() {
+        final List<Integer> limits = Collections.synchronizedList(new ArrayList<>());
+        final Flux<User> users = PipelinedPagination.users((limit, exclusiveStartId) -> {
+            limits.add(limit);
+            return Mono.just(UserPage.of(Collections.nCopies(limit, User.builder().id(UUID.randomUUID()).build()), UUID.randomUUID()));
+        }, 2);
+        assertThat(users.limitRequest(30).collectList().block()).hasSize(30);
+        assertThat(limits).containsExactly(30, 25, 25);
+        limits.clear();
+        //take asks for everything when its subscriber asks for at least as many users as it takes, so the pages only grow
+        assertThat(users.take(30).collectList().block()).hasSize(30);
+        assertThat(limits).startsWith(100);
+    }
+
+    private Flux<Integer> paginate(Duration latency, int prefetch) {
+        return PipelinedPagination.paginate(page(0, latency),
+                page -> page < LAST_PAGE,
+                page -> page(page + 1, latency),
+                prefetch);
+    }
+
+    private Mono<Integer> page(int page, Duration latency) {
+        final Mono<Integer> response = Mono.fromCallable(() -> {
+            requestedPages.add(page);
+            return page;
+        });
+        return latency.isZero() ? response : response.delayElement(latency);
+    }
+}
@@ -7,17 +7,24 @@ import eu.luminis.breed.dynamodbmigration.TestUtil;
 import eu.luminis.breed.dynamodbmigration.user.model.Address;
 import eu.luminis.breed.dynamodbmigration.user.model.Education;
 import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserPage;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchGetOptions;
+import eu.luminis.breed.dynamodbmigration.user.repository.batch.BatchWriteOptions;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
+import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -62,6 +69,21 @@ class UserAsyncRepositoryDynamoDBImplIT extends TestUtil {
                 .verifyComplete();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldCreateOrUpdateUsers(UserAsyncRepository userRepository) {
+        StepVerifier
+                .create(userRepository.createOrUpdateUsers(Flux.range(0, 60)
+                        .map(i -> User.builder().firstName("firstName" + i).lastName("lastName").build()))
+                        .collectList())
+                .assertNext(users -> assertThat(users).hasSize(60).allSatisfy(user -> {
+                    final GetItemResult item = amazonDynamoDBClient.getItem(new GetItemRequest(tableName, Map.of(ID_FIELD,
+                            new AttributeValue(user.getId().toString()))));
+                    assertThat(item.getItem().get(FIRST_NAME_FIELD).getS()).isEqualTo(user.getFirstName());
+                }))
+                .verifyComplete();
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldGetUserById(UserAsyncRepository userRepository) {
@@ -75,6 +97,40 @@ class UserAsyncRepositoryDynamoDBImplIT extends TestUtil {
                 .verifyComplete();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldFindPagesByLastName(UserAsyncRepository userRepository) {
+        final String lastName = UUID.randomUUID().toString();
+        final Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(createUser("firstName", lastName));
+        }
+        final List<UUID> pagedIds = new ArrayList<>();
+        UUID exclusiveStartId = null;
+        do {
+            final UserPage page = userRepository.findPageByLastName(lastName, 2, exclusiveStartId, Projection.all()).block();
+            assertThat(page.getUsers()).hasSizeLessThanOrEqualTo(2);
+            page.getUsers().forEach(user -> pagedIds.add(user.getId()));
+            exclusiveStartId = page.getLastEvaluatedId();
+        } while (exclusiveStartId != null);
+        assertThat(pagedIds).containsExactlyInAnyOrderElementsOf(ids);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldOnlyReadProjectedFields(UserAsyncRepository userRepository) {
+        final String lastName = UUID.randomUUID().toString();
+        final UUID id = createUser("firstName", lastName);
+        final Projection projection = Projection.of(List.of(FIRST_NAME_FIELD));
+        final User expected = User.builder().id(id).firstName("firstName").build();
+        StepVerifier
+                .create(Flux.concat(userRepository.getUserById(id, projection),
+                        userRepository.findByIds(List.of(id), projection),
+                        userRepository.findByLastName(lastName, projection)))
+                .expectNext(expected, expected, expected)
+                .verifyComplete();
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldFindAll(UserAsyncRepository userRepository) {
@@ -93,6 +149,24 @@ class UserAsyncRepositoryDynamoDBImplIT extends TestUtil {
                 .verifyComplete();
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(RepositoryProvider.class)
+    void shouldFindAllInParallel(UserAsyncRepository userRepository) {
+        final String firstName = UUID.randomUUID().toString();
+        for (int i = 0; i < 50; i++) {
+            createUser(firstName, "lastname");
+        }
+        StepVerifier
+                .create(userRepository.findAll(4))
+                .recordWith(ArrayList::new)
+                .thenConsumeWhile(x -> true)
+                .consumeRecordedWith(users -> {
+                    assertThat(users.stream()
+                            .filter(user -> firstName.equals(user.getFirstName()))).hasSize(50);
+                })
+                .verifyComplete();
+    }
+
     @ParameterizedTest
     @ArgumentsSource(RepositoryProvider.class)
     void shouldFindByIds(UserAsyncRepository userRepository) {
@@ -180,10 +254,10 @@ class UserAsyncRepositoryDynamoDBImplIT extends TestUtil {
         @Override
         public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
             return Stream.of(
-                    new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint),
-                    new UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint),
-                    new UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint),
-                    new UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint)
+                    new UserAsyncRepositoryDynamoDBSDK1LowLevelImpl(tableName, endpoint, BatchGetOptions.defaults(), BatchWriteOptions.defaults()),
+                    new UserAsyncRepositoryDynamoDBSDK1HighLevelImpl(tableName, endpoint, BatchGetOptions.defaults(), BatchWriteOptions.defaults()),
+                    new UserAsyncRepositoryDynamoDBSDK2LowLevelImpl(tableName, endpoint, BatchGetOptions.defaults(), BatchWriteOptions.defaults()),
+                    new UserAsyncRepositoryDynamoDBSDK2HighLevelImpl(tableName, endpoint, BatchGetOptions.defaults(), BatchWriteOptions.defaults())
             ).map(Arguments::of);
         }
     }
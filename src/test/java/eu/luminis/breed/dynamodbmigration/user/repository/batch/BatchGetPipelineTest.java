@@ -0,0 +1,118 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchGetPipelineTest {
+
+    private final BatchGetPipeline batchGetPipeline = new BatchGetPipeline("test", BatchGetOptions.defaults(), new RetryBackoff(Duration.ZERO, Duration.ZERO, 2));
+    private final Set<Integer> requestedKeys = ConcurrentHashMap.newKeySet();
+
+    @Test
+    void shouldRetryUnprocessedKeys() {
+        final List<List<Integer>> calls = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> items = batchGetPipeline.execute(keys(150), Function.identity(), keys -> {
+            calls.add(keys);
+            return throttleNewKeys(keys);
+        });
+        assertThat(items).containsExactlyInAnyOrderElementsOf(keys(150));
+        assertThat(calls).extracting(List::size).containsExactlyInAnyOrder(100, 50, 50, 25);
+    }
+
+    @Test
+    void shouldFailWhenRetriesAreExhausted() {
+        assertThatThrownBy(() -> batchGetPipeline.execute(keys(10), Function.identity(), keys -> BatchGetResult.of(List.of(), keys)))
+                .isInstanceOf(UserException.class)
+                .hasMessage("10 keys were still unprocessed after 2 retries");
+    }
+
+    @Test
+    void shouldDispatchDistinctKeysConcurrentlyInRequestOrder() {
+        final BatchGetPipeline orderedPipeline = new BatchGetPipeline("test", BatchGetOptions.builder()
+                .concurrency(4)
+                .keepRequestOrder(true)
+                .build());
+        final List<Integer> keys = new ArrayList<>(keys(1000));
+        Collections.shuffle(keys);
+        final List<Integer> keysWithDuplicates = new ArrayList<>(keys);
+        keysWithDuplicates.addAll(keys.subList(0, 100));
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final List<Integer> items = orderedPipeline.execute(keysWithDuplicates, Function.identity(), batch -> {
+            threads.add(Thread.currentThread().getName());
+            final List<Integer> reversed = new ArrayList<>(batch);
+            Collections.reverse(reversed);
+            return BatchGetResult.of(reversed, List.of());
+        });
+        assertThat(items).containsExactlyElementsOf(keys);
+        assertThat(threads).hasSizeBetween(1, 4);
+    }
+
+    @Test
+    void shouldRetryUnprocessedKeysAsync() {
+        StepVerifier
+                .create(batchGetPipeline.executeAsync(keys(150), Function.identity(), keys -> Mono.fromCallable(() -> throttleNewKeys(keys))).collectList())
+                .assertNext(items -> assertThat(items).containsExactlyInAnyOrderElementsOf(keys(150)))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldEmitInRequestOrderAsync() {
+        final BatchGetPipeline orderedPipeline = new BatchGetPipeline("test", BatchGetOptions.builder()
+                .concurrency(4)
+                .keepRequestOrder(true)
+                .build());
+        final List<Integer> keys = new ArrayList<>(keys(1000));
+        Collections.shuffle(keys);
+        StepVerifier
+                .create(orderedPipeline.executeAsync(keys, Function.identity(), batch -> {
+                    final List<Integer> reversed = new ArrayList<>(batch);
+                    Collections.reverse(reversed);
+                    //later batches finish first
+                    return Mono.just(BatchGetResult.of(reversed, List.<Integer>of()))
+                            .delayElement(Duration.ofMillis((1000 - keys.indexOf(batch.get(0))) / 10));
+                }).collectList())
+                .assertNext(items -> assertThat(items).containsExactlyElementsOf(keys))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldPacePages() {
+        StepVerifier
+                .create(batchGetPipeline.pacePages(Flux.range(1, 3)))
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+        StepVerifier
+                .create(batchGetPipeline.pacePages(Flux.range(1, 4)))
+                .expectNext(1, 2, 3)
+                .verifyError(UserException.class);
+    }
+
+    private static List<Integer> keys(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    //only processes half of the keys that are requested for the first time, like a throttled table would
+    private BatchGetResult<Integer, Integer> throttleNewKeys(List<Integer> keys) {
+        if (!requestedKeys.addAll(keys)) {
+            return BatchGetResult.of(keys, List.of());
+        }
+        final int processed = keys.size() / 2;
+        return BatchGetResult.of(keys.subList(0, processed), keys.subList(processed, keys.size()));
+    }
+}
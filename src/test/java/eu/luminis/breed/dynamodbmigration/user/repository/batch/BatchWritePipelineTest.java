@@ -0,0 +1,89 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.batch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchWritePipelineTest {
+
+    private final BatchWritePipeline batchWritePipeline = new BatchWritePipeline("test", BatchWriteOptions.defaults(), new RetryBackoff(Duration.ZERO, Duration.ZERO, 2));
+    private final Set<Integer> requestedItems = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> writtenItems = ConcurrentHashMap.newKeySet();
+
+    @Test
+    void shouldRetryUnprocessedItems() {
+        final List<List<Integer>> calls = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> items = batchWritePipeline.execute(items(30), Function.identity(), batch -> {
+            calls.add(batch);
+            return throttleNewItems(batch);
+        });
+        assertThat(items).containsExactlyElementsOf(items(30));
+        assertThat(writtenItems).containsExactlyInAnyOrderElementsOf(items(30));
+        assertThat(calls).extracting(List::size).containsExactlyInAnyOrder(25, 13, 5, 3);
+    }
+
+    @Test
+    void shouldWriteLastItemPerKey() {
+        final List<String> items = List.of("a1", "b1", "a2", "c1", "b2");
+        final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        assertThat(batchWritePipeline.execute(items, item -> item.charAt(0), batch -> {
+            calls.add(batch);
+            return List.of();
+        })).containsExactly("a2", "b2", "c1");
+        assertThat(calls).containsExactly(List.of("a2", "b2", "c1"));
+    }
+
+    @Test
+    void shouldFailWhenRetriesAreExhausted() {
+        assertThatThrownBy(() -> batchWritePipeline.execute(items(10), Function.identity(), batch -> batch))
+                .isInstanceOf(UserException.class)
+                .hasMessage("10 items were still unprocessed after 2 retries");
+    }
+
+    @Test
+    void shouldRetryUnprocessedItemsAsync() {
+        StepVerifier
+                .create(batchWritePipeline.executeAsync(Flux.fromIterable(items(30)), Function.identity(),
+                        batch -> Mono.fromCallable(() -> throttleNewItems(batch))).collectList())
+                .assertNext(items -> assertThat(items).containsExactlyInAnyOrderElementsOf(items(30)))
+                .verifyComplete();
+        assertThat(writtenItems).containsExactlyInAnyOrderElementsOf(items(30));
+    }
+
+    @Test
+    void shouldFailWhenRetriesAreExhaustedAsync() {
+        StepVerifier
+                .create(batchWritePipeline.executeAsync(Flux.fromIterable(items(10)), Function.identity(), Mono::just))
+                .verifyErrorMessage("10 items were still unprocessed after 2 retries");
+    }
+
+    private static List<Integer> items(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    //only writes half of the items that are requested for the first time, like a throttled table would
+    private List<Integer> throttleNewItems(List<Integer> batch) {
+        if (!requestedItems.addAll(batch)) {
+            writtenItems.addAll(batch);
+            return List.of();
+        }
+        final int processed = batch.size() / 2;
+        writtenItems.addAll(batch.subList(0, processed));
+        return batch.subList(processed, batch.size());
+    }
+}
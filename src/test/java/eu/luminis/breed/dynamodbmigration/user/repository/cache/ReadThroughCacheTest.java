@@ -0,0 +1,109 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.cache;
+
+import eu.luminis.breed.dynamodbmigration.user.model.Address;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadThroughCacheTest {
+
+    private final UserRepository delegate = mock(UserRepository.class);
+    private final UserRepository userRepository = new ReadThroughCache(UserCacheOptions.builder()
+            .enabled(true)
+            .negativeTtl(Duration.ofMillis(50))
+            .build()).decorate(delegate);
+
+    @Test
+    void shouldReadUserOnlyOnce() {
+        final User user = User.builder().id(UUID.randomUUID()).firstName("first").build();
+        when(delegate.getUserById(user.getId())).thenReturn(Optional.of(user));
+        assertThat(userRepository.getUserById(user.getId())).contains(user);
+        assertThat(userRepository.getUserById(user.getId())).contains(user);
+        verify(delegate, times(1)).getUserById(user.getId());
+    }
+
+    @Test
+    void shouldInvalidateOnWrites() {
+        final UUID id = UUID.randomUUID();
+        final User updatedUser = User.builder().id(id).firstName("second").build();
+        when(delegate.getUserById(id))
+                .thenReturn(Optional.of(User.builder().id(id).firstName("first").build()))
+                .thenReturn(Optional.of(updatedUser))
+                .thenReturn(Optional.empty());
+        userRepository.getUserById(id);
+        userRepository.updateUser(updatedUser);
+        assertThat(userRepository.getUserById(id)).hasValueSatisfying(u -> assertThat(u.getFirstName()).isEqualTo("second"));
+        userRepository.deleteUser(id);
+        assertThat(userRepository.getUserById(id)).isEmpty();
+        verify(delegate, times(3)).getUserById(id);
+    }
+
+    @Test
+    void shouldInvalidateWhenAWriteFails() {
+        final User user = User.builder().id(UUID.randomUUID()).firstName("first").build();
+        when(delegate.getUserById(user.getId()))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(user));
+        when(delegate.createOrUpdateUsers(List.of(user, User.builder().build()))).thenThrow(new IllegalStateException("throttled"));
+        assertThat(userRepository.getUserById(user.getId())).isEmpty();
+        assertThatThrownBy(() -> userRepository.createOrUpdateUsers(List.of(user, User.builder().build())))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(userRepository.getUserById(user.getId())).contains(user);
+    }
+
+    @Test
+    void shouldRememberMissingUsersShorter() throws InterruptedException {
+        final UUID id = UUID.randomUUID();
+        when(delegate.getUserById(id)).thenReturn(Optional.empty());
+        assertThat(userRepository.getUserById(id)).isEmpty();
+        assertThat(userRepository.getUserById(id)).isEmpty();
+        verify(delegate, times(1)).getUserById(id);
+        Thread.sleep(100);
+        assertThat(userRepository.getUserById(id)).isEmpty();
+        verify(delegate, times(2)).getUserById(id);
+    }
+
+    @Test
+    void shouldNotCacheAFailedRead() {
+        final User user = User.builder().id(UUID.randomUUID()).firstName("first").build();
+        when(delegate.getUserById(user.getId())).thenThrow(new IllegalStateException("throttled")).thenReturn(Optional.of(user));
+        assertThatThrownBy(() -> userRepository.getUserById(user.getId())).isInstanceOf(IllegalStateException.class);
+        assertThat(userRepository.getUserById(user.getId())).contains(user);
+        verify(delegate, times(2)).getUserById(user.getId());
+    }
+
+    @Test
+    void shouldGiveEveryReadItsOwnCopy() {
+        final User user = User.builder()
+                .id(UUID.randomUUID())
+                .firstName("first")
+                .address(Address.builder().city("Amersfoort").build())
+                .build();
+        when(delegate.getUserById(user.getId())).thenReturn(Optional.of(user));
+        final User read = userRepository.getUserById(user.getId()).orElseThrow();
+        read.setFirstName("changed");
+        read.getAddress().setCity("changed");
+        assertThat(userRepository.getUserById(user.getId())).hasValueSatisfying(cached -> {
+            assertThat(cached.getFirstName()).isEqualTo("first");
+            assertThat(cached.getAddress().getCity()).isEqualTo("Amersfoort");
+        });
+        verify(delegate, times(1)).getUserById(user.getId());
+    }
+
+    @Test
+    void shouldNotDecorateWhenDisabled() {
+        assertThat(new ReadThroughCache(UserCacheOptions.defaults()).decorate(delegate)).isSameAs(delegate);
+    }
+}
@@ -0,0 +1,79 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.microbatch;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PointReadQueueTest {
+
+    private final List<List<UUID>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void shouldReadIdsOfTheSameWindowTogether() {
+        final PointReadQueue pointReadQueue = queue(Duration.ofMillis(20), 100);
+        final UUID missingId = UUID.randomUUID();
+        final List<UUID> ids = ids(3);
+        final List<CompletableFuture<Optional<User>>> users = ids.stream().map(pointReadQueue::get).collect(Collectors.toList());
+        final CompletableFuture<Optional<User>> missingUser = pointReadQueue.get(missingId);
+        final CompletableFuture<Optional<User>> sameUser = pointReadQueue.get(ids.get(0));
+        assertThat(users).extracting(CompletableFuture::join).extracting(Optional::get).extracting(User::getId).containsExactlyElementsOf(ids);
+        assertThat(missingUser.join()).isEmpty();
+        assertThat(sameUser.join()).map(User::getId).contains(ids.get(0));
+        assertThat(batches).hasSize(1).first().asList().hasSize(4);
+    }
+
+    @Test
+    void shouldSendFullBatchesWithoutWaiting() {
+        final PointReadQueue pointReadQueue = queue(Duration.ofMinutes(1), 10);
+        final List<CompletableFuture<Optional<User>>> users = ids(25).stream().map(pointReadQueue::get).collect(Collectors.toList());
+        assertThat(users.subList(0, 20)).allSatisfy(user -> assertThat(user.join()).isPresent());
+        assertThat(users.subList(20, 25)).noneMatch(CompletableFuture::isDone);
+        assertThat(batches).extracting(List::size).containsExactly(10, 10);
+    }
+
+    @Test
+    void shouldFailAllReadsOfAFailedBatch() {
+        final PointReadQueue pointReadQueue = new PointReadQueue("test", options(Duration.ofMillis(1), 100),
+                ids -> CompletableFuture.failedFuture(UserException.error("failed")));
+        assertThatThrownBy(() -> pointReadQueue.get(UUID.randomUUID()).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(UserException.class);
+    }
+
+    private PointReadQueue queue(Duration maxWait, int maxBatchSize) {
+        //only finds the ids that were made by this test
+        return new PointReadQueue("test", options(maxWait, maxBatchSize), ids -> {
+            batches.add(ids);
+            return CompletableFuture.completedFuture(ids.stream()
+                    .filter(id -> id.getMostSignificantBits() == 0)
+                    .map(id -> User.builder().id(id).build())
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    private static MicroBatchOptions options(Duration maxWait, int maxBatchSize) {
+        return MicroBatchOptions.builder()
+                .enabled(true)
+                .maxWait(maxWait)
+                .maxBatchSize(maxBatchSize)
+                .build();
+    }
+
+    private static List<UUID> ids(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new UUID(0, i + 1)).collect(Collectors.toList());
+    }
+}
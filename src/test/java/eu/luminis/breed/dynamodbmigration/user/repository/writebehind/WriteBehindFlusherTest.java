@@ -0,0 +1,182 @@
+package eu.luminis.breed.dynamodbmigration.user.repository.writebehind;
+
+import eu.luminis.breed.dynamodbmigration.user.exception.UserException;
+import eu.luminis.breed.dynamodbmigration.user.model.User;
+import eu.luminis.breed.dynamodbmigration.user.repository.Projection;
+import eu.luminis.breed.dynamodbmigration.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class WriteBehindFlusherTest {
+
+    //long enough to never flush by itself during a test
+    private static final Duration NEVER = Duration.ofMinutes(1);
+
+    private final UserRepository delegate = mock(UserRepository.class);
+
+    @Test
+    void shouldMergeUpdatesOfAUser() {
+        final WriteBehindFlusher writeBehindFlusher = flusher(NEVER, true);
+        final UserRepository userRepository = writeBehindFlusher.decorate(delegate);
+        final UUID id = UUID.randomUUID();
+        userRepository.updateUser(User.builder().id(id).firstName("first").build());
+        userRepository.updateUser(User.builder().id(id).age(21).build());
+        userRepository.updateUser(User.builder().id(id).firstName("second").build());
+        verifyNoInteractions(delegate);
+        writeBehindFlusher.close();
+        verify(delegate).updateUser(User.builder().id(id).firstName("second").age(21).build());
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFlushPutsTogether() {
+        final WriteBehindFlusher writeBehindFlusher = flusher(NEVER, true);
+        final UserRepository userRepository = writeBehindFlusher.decorate(delegate);
+        final User first = userRepository.createOrUpdateUser(User.builder().firstName("first").lastName("lastName").build());
+        userRepository.createOrUpdateUser(User.builder().firstName("second").build());
+        userRepository.updateUser(User.builder().id(first.getId()).lastName("updated").build());
+        writeBehindFlusher.close();
+        final ArgumentCaptor<List<User>> users = ArgumentCaptor.forClass(List.class);
+        verify(delegate).createOrUpdateUsers(users.capture());
+        verifyNoMoreInteractions(delegate);
+        assertThat(users.getValue())
+                .extracting(User::getFirstName, User::getLastName)
+                .containsExactlyInAnyOrder(tuple("first", "updated"), tuple("second", null));
+    }
+
+    @Test
+    void shouldFlushPendingWritesBeforeReadingThem() {
+        final UserRepository userRepository = flusher(NEVER, false).decorate(delegate);
+        final User user = User.builder().id(UUID.randomUUID()).firstName("first").build();
+        userRepository.updateUser(user);
+        userRepository.getUserById(user.getId());
+        userRepository.getUserById(user.getId());
+        final InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).updateUser(user);
+        inOrder.verify(delegate, times(2)).getUserById(eq(user.getId()), any(Projection.class));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void shouldFlushAfterWindow() {
+        final UserRepository userRepository = flusher(Duration.ofMillis(10), false).decorate(delegate);
+        userRepository.updateUser(User.builder().id(UUID.randomUUID()).firstName("first").build());
+        verify(delegate, timeout(1000)).updateUser(any(User.class));
+    }
+
+    @Test
+    void shouldDropPendingWritesOnShutdownWhenConfigured() {
+        final WriteBehindFlusher writeBehindFlusher = flusher(NEVER, false);
+        writeBehindFlusher.decorate(delegate).updateUser(User.builder().id(UUID.randomUUID()).firstName("first").build());
+        writeBehindFlusher.close();
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void shouldRetryAFailedFlush() {
+        final WriteBehindFlusher writeBehindFlusher = flusher(NEVER, true);
+        final UserRepository userRepository = writeBehindFlusher.decorate(delegate);
+        final UUID id = UUID.randomUUID();
+        doThrow(new IllegalStateException("throttled")).doNothing().when(delegate).updateUser(any(User.class));
+        userRepository.updateUser(User.builder().id(id).firstName("first").build());
+        assertThatThrownBy(() -> userRepository.getUserById(id)).isInstanceOf(UserException.class);
+        userRepository.updateUser(User.builder().id(id).age(21).build());
+        writeBehindFlusher.close();
+        final ArgumentCaptor<User> users = ArgumentCaptor.forClass(User.class);
+        verify(delegate, times(2)).updateUser(users.capture());
+        assertThat(users.getAllValues()).containsExactly(
+                User.builder().id(id).firstName("first").build(),
+                User.builder().id(id).firstName("first").age(21).build());
+    }
+
+    @Test
+    void shouldDropAWriteAfterTheLastAttempt() {
+        final List<User> dropped = new ArrayList<>();
+        final WriteBehindFlusher writeBehindFlusher = new WriteBehindFlusher(options(NEVER, true).maxFlushAttempts(3).build(),
+                (user, replace, cause) -> dropped.add(user));
+        final User user = User.builder().id(UUID.randomUUID()).firstName("first").build();
+        doThrow(new IllegalStateException("throttled")).when(delegate).updateUser(any(User.class));
+        writeBehindFlusher.decorate(delegate).updateUser(user);
+        writeBehindFlusher.close();
+        verify(delegate, times(3)).updateUser(user);
+        assertThat(dropped).containsExactly(user);
+    }
+
+    @Test
+    void shouldNotWaitForTheFlushOfOtherUsers() throws Exception {
+        final UserRepository userRepository = flusher(NEVER, false).decorate(delegate);
+        final UUID slowId = UUID.randomUUID();
+        final UUID id = UUID.randomUUID();
+        final CountDownLatch slowUpdateStarted = new CountDownLatch(1);
+        final CountDownLatch slowUpdateReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            slowUpdateStarted.countDown();
+            slowUpdateReleased.await();
+            return null;
+        }).when(delegate).updateUser(argThat(user -> slowId.equals(user.getId())));
+        userRepository.updateUser(User.builder().id(slowId).firstName("slow").build());
+        final CompletableFuture<Optional<User>> slowRead = CompletableFuture.supplyAsync(() -> userRepository.getUserById(slowId));
+        slowUpdateStarted.await();
+        userRepository.updateUser(User.builder().id(id).firstName("first").build());
+        userRepository.getUserById(id);
+        assertThat(slowRead).isNotDone();
+        slowUpdateReleased.countDown();
+        slowRead.get(5, TimeUnit.SECONDS);
+        final InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).updateUser(User.builder().id(id).firstName("first").build());
+        inOrder.verify(delegate).getUserById(eq(id), any(Projection.class));
+        inOrder.verify(delegate).getUserById(eq(slowId), any(Projection.class));
+    }
+
+    @Test
+    void shouldRejectAnAdvancedUpdateWithoutId() {
+        final UserRepository userRepository = flusher(NEVER, false).decorate(delegate);
+        assertThatThrownBy(() -> userRepository.updateUserAdvanced(User.builder().firstName("first").build()))
+                .isInstanceOf(UserException.class);
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void shouldNotDecorateWhenDisabled() {
+        assertThat(new WriteBehindFlusher(WriteBehindOptions.defaults()).decorate(delegate)).isSameAs(delegate);
+    }
+
+    private static WriteBehindFlusher flusher(Duration window, boolean flushOnShutdown) {
+        return new WriteBehindFlusher(options(window, flushOnShutdown).build());
+    }
+
+    private static WriteBehindOptions.WriteBehindOptionsBuilder options(Duration window, boolean flushOnShutdown) {
+        return WriteBehindOptions.builder()
+                .enabled(true)
+                .window(window)
+                .maxStaleness(NEVER)
+                .flushOnShutdown(flushOnShutdown);
+    }
+}